@@ -0,0 +1,30 @@
+package org.towerhawk.controller;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.towerhawk.monitor.check.filter.CheckFilter;
+
+import java.util.List;
+
+/**
+ * CheckFilterParams plus the same parameters prefixed with app to filter the apps the
+ * checks belong to.
+ */
+@Getter
+@Setter
+public class AppCheckFilterParams extends CheckFilterParams {
+
+	private List<Integer> appPriority;
+	private Integer appPriorityLte;
+	private Integer appPriorityGte;
+	private List<String> appTags;
+	private List<String> appNotTags;
+	private List<String> appType;
+	private List<String> appNotType;
+	private List<String> appId;
+	private List<String> appNotId;
+
+	public CheckFilter toAppFilter() {
+		return new CheckFilter(appPriority, appPriorityLte, appPriorityGte, appTags, appNotTags, appType, appNotType, appId, appNotId);
+	}
+}
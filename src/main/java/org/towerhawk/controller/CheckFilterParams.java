@@ -0,0 +1,30 @@
+package org.towerhawk.controller;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.towerhawk.monitor.check.filter.CheckFilter;
+
+import java.util.List;
+
+/**
+ * The request parameters that filter checks, bound by Spring from the query string of
+ * every endpoint that takes them so they are only declared once.
+ */
+@Getter
+@Setter
+public class CheckFilterParams {
+
+	private List<Integer> priority;
+	private Integer priorityLte;
+	private Integer priorityGte;
+	private List<String> tags;
+	private List<String> notTags;
+	private List<String> type;
+	private List<String> notType;
+	private List<String> id;
+	private List<String> notId;
+
+	public CheckFilter toCheckFilter() {
+		return new CheckFilter(priority, priorityLte, priorityGte, tags, notTags, type, notType, id, notId);
+	}
+}
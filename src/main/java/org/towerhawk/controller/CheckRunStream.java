@@ -0,0 +1,120 @@
+package org.towerhawk.controller;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.towerhawk.monitor.app.App;
+import org.towerhawk.monitor.check.Check;
+import org.towerhawk.monitor.check.run.CheckRun;
+import org.towerhawk.monitor.check.run.CheckRunListener;
+import org.towerhawk.monitor.check.run.CheckRunSelector;
+import org.towerhawk.spring.config.Configuration;
+
+import java.io.IOException;
+import java.util.Collection;
+
+/**
+ * Writes each CheckRun of a run to the response as soon as it completes, followed by the
+ * rolled up CheckRun of the whole run. Events are written as newline delimited JSON or,
+ * if the client asked for text/event-stream, as server-sent events.
+ */
+@Slf4j
+public class CheckRunStream implements CheckRunListener {
+
+	public static final MediaType APPLICATION_NDJSON = MediaType.parseMediaType("application/x-ndjson");
+
+	private final ResponseBodyEmitter emitter;
+	private final boolean serverSentEvents;
+	private final Check root;
+	private final Collection<CheckRunSelector.Field> fields;
+	private final Configuration configuration;
+	private volatile boolean closed = false;
+
+	/**
+	 * @param serverSentEvents Whether to write server-sent events instead of NDJSON
+	 * @param root             The check whose CheckRun is the result of the whole run. It
+	 *                         is only written by complete().
+	 * @param fields           The fields of each CheckRun to write
+	 * @param configuration    Used for the default fields
+	 */
+	public CheckRunStream(boolean serverSentEvents, Check root, Collection<CheckRunSelector.Field> fields, Configuration configuration) {
+		this.serverSentEvents = serverSentEvents;
+		this.root = root;
+		this.fields = fields;
+		this.configuration = configuration;
+		emitter = serverSentEvents ? new SseEmitter() : new ResponseBodyEmitter();
+		emitter.onTimeout(() -> closed = true);
+		emitter.onCompletion(() -> closed = true);
+	}
+
+	public ResponseEntity<ResponseBodyEmitter> getResponseEntity() {
+		MediaType mediaType = serverSentEvents ? MediaType.TEXT_EVENT_STREAM : APPLICATION_NDJSON;
+		return ResponseEntity.ok().contentType(mediaType).body(emitter);
+	}
+
+	@Override
+	public void onCheckRun(CheckRun checkRun) {
+		Check check = checkRun.getCheck();
+		if (check != root) {
+			send(check instanceof App ? "app" : "check", checkRun);
+		}
+	}
+
+	/**
+	 * Writes checkRun and ends the response, unless the client already went away or the
+	 * emitter timed out, in which case the emitter must not be completed again.
+	 */
+	public synchronized void complete(CheckRun checkRun) {
+		send("result", checkRun);
+		if (!closed) {
+			closed = true;
+			emitter.complete();
+		}
+	}
+
+	public synchronized void completeWithError(Throwable t) {
+		log.error("Unable to complete streamed run", t);
+		if (!closed) {
+			closed = true;
+			emitter.completeWithError(t);
+		}
+	}
+
+	private synchronized void send(String event, CheckRun checkRun) {
+		if (closed) {
+			return;
+		}
+		Event data = new Event(event, checkRun.getCheck(), new CheckRunSelector(checkRun, fields, configuration));
+		try {
+			if (serverSentEvents) {
+				emitter.send(SseEmitter.event().name(event).data(data, MediaType.APPLICATION_JSON));
+			} else {
+				emitter.send(data, MediaType.APPLICATION_JSON);
+				emitter.send("\n", MediaType.TEXT_PLAIN);
+			}
+		} catch (IOException | IllegalStateException e) {
+			// the client went away so stop writing, the run itself carries on
+			log.debug("Unable to write {} to stream", checkRun.getCheck().getFullName(), e);
+			closed = true;
+		}
+	}
+
+	@Getter
+	public static class Event {
+
+		private final String event;
+		private final String app;
+		private final String id;
+		private final CheckRun checkRun;
+
+		private Event(String event, Check check, CheckRun checkRun) {
+			this.event = event;
+			this.app = check instanceof App || check.getApp() == null ? null : check.getApp().getId();
+			this.id = check.getId();
+			this.checkRun = checkRun;
+		}
+	}
+}
@@ -1,19 +1,26 @@
 package org.towerhawk.controller;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.towerhawk.controller.exception.ServiceOverloadedException;
+import org.towerhawk.monitor.MonitorService;
 import org.towerhawk.monitor.app.App;
 import org.towerhawk.monitor.check.Check;
-import org.towerhawk.monitor.check.filter.CheckFilter;
 import org.towerhawk.monitor.check.run.CheckRun;
 import org.towerhawk.monitor.check.run.CheckRunSelector;
 import org.towerhawk.monitor.check.run.Status;
 import org.towerhawk.monitor.check.run.concurrent.ConcurrentCheckRunner;
+import org.towerhawk.monitor.check.run.concurrent.OverloadGuard;
 import org.towerhawk.monitor.check.run.context.DefaultRunContext;
 import org.towerhawk.spring.config.Configuration;
 
@@ -23,6 +30,9 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Supplier;
 
 @Slf4j
 @RestController
@@ -33,6 +43,7 @@ public class CheckRunnerController {
 	private final ConcurrentCheckRunner checkCheckRunner;
 	private final ConcurrentCheckRunner appCheckRunner;
 	private final ConcurrentCheckRunner monitorCheckRunner;
+	private final OverloadGuard overloadGuard;
 	private final Collection<Check> monitorCheck;
 
 	@Inject
@@ -41,51 +52,50 @@ public class CheckRunnerController {
 		Configuration configuration,
 		ConcurrentCheckRunner checkCheckRunner,
 		ConcurrentCheckRunner appCheckRunner,
-		ConcurrentCheckRunner monitorCheckRunner
+		ConcurrentCheckRunner monitorCheckRunner,
+		OverloadGuard overloadGuard
 	) {
 		this.monitorServiceWrapper = monitorServiceWrapper;
 		this.configuration = configuration;
 		this.checkCheckRunner = checkCheckRunner;
 		this.appCheckRunner = appCheckRunner;
 		this.monitorCheckRunner = monitorCheckRunner;
+		this.overloadGuard = overloadGuard;
 		monitorCheck = Collections.singletonList(monitorServiceWrapper.getMonitorService());
 	}
 
 	@RequestMapping(path = "/app", method = {RequestMethod.POST, RequestMethod.GET})
-	public ResponseEntity<CheckRun> runApps(
-		@RequestParam(required = false) List<Integer> priority,
-		@RequestParam(required = false) Integer priorityLte,
-		@RequestParam(required = false) Integer priorityGte,
-		@RequestParam(required = false) List<String> tags,
-		@RequestParam(required = false) List<String> notTags,
-		@RequestParam(required = false) List<String> type,
-		@RequestParam(required = false) List<String> notType,
-		@RequestParam(required = false) List<String> id,
-		@RequestParam(required = false) List<String> notId,
+	public CompletionStage<ResponseEntity<CheckRun>> runApps(
+		CheckFilterParams filterParams,
 		@RequestParam(required = false) List<CheckRunSelector.Field> fields,
 		HttpServletRequest request
 	) {
-		CheckFilter checkFilter = new CheckFilter(priority, priorityLte, priorityGte, tags, notTags, type, notType, id, notId);
 		DefaultRunContext checkContext = monitorServiceWrapper.getContext(request);
-		checkContext.putContext(monitorServiceWrapper.getMonitorService().predicateKey(), checkFilter);
-		CheckRun checkRun = monitorCheckRunner.runChecks(monitorCheck, checkContext).get(0);
-		return getCheckRunResponseEntity(checkRun, fields);
+		checkContext.putContext(monitorServiceWrapper.getMonitorService().predicateKey(), filterParams.toCheckFilter());
+		if (!checkContext.shouldRun()) {
+			return getLatestCheckRunResponseEntity(monitorServiceWrapper.getMonitorService().getLatestCheckRun(checkContext), fields);
+		}
+		return admitMonitorService(checkContext)
+			.thenApply(checkRuns -> getCheckRunResponseEntity(checkRuns.get(0), fields));
 	}
 
 	@RequestMapping(path = "/app/{appId}", method = {RequestMethod.POST, RequestMethod.GET})
-	public ResponseEntity<CheckRun> runApp(
+	public CompletionStage<ResponseEntity<CheckRun>> runApp(
 		@PathVariable String appId,
 		@RequestParam(required = false) List<CheckRunSelector.Field> fields,
 		HttpServletRequest request
 	) {
 		App app = monitorServiceWrapper.getApp(appId);
 		DefaultRunContext checkContext = monitorServiceWrapper.getContext(request);
-		CheckRun checkRun = appCheckRunner.runChecks(Arrays.asList(app), checkContext).get(0);
-		return getCheckRunResponseEntity(checkRun, fields);
+		if (!checkContext.shouldRun()) {
+			return getLatestCheckRunResponseEntity(app.getLatestCheckRun(checkContext), fields);
+		}
+		return admit(() -> appCheckRunner.runChecksAsync(Arrays.asList(app), checkContext), app, () -> app.getLatestCheckRun(checkContext))
+			.thenApply(checkRuns -> getCheckRunResponseEntity(checkRuns.get(0), fields));
 	}
 
 	@RequestMapping(path = "/app/{appId}/{checkId}", method = {RequestMethod.POST, RequestMethod.GET})
-	public ResponseEntity<CheckRun> runCheck(
+	public CompletionStage<ResponseEntity<CheckRun>> runCheck(
 		@PathVariable String appId,
 		@PathVariable String checkId,
 		@RequestParam(required = false) List<CheckRunSelector.Field> fields,
@@ -93,40 +103,50 @@ public class CheckRunnerController {
 	) {
 		Check check = monitorServiceWrapper.getCheck(appId, checkId);
 		DefaultRunContext checkContext = monitorServiceWrapper.getContext(request);
-		CheckRun checkRun = checkCheckRunner.runChecks(Arrays.asList(check), checkContext).get(0);
-		return getCheckRunResponseEntity(checkRun, fields);
+		if (!checkContext.shouldRun()) {
+			return getLatestCheckRunResponseEntity(check.getLastCheckRun(), fields);
+		}
+		return admit(() -> checkCheckRunner.runChecksAsync(Arrays.asList(check), checkContext), check, check::getLastCheckRun)
+			.thenApply(checkRuns -> getCheckRunResponseEntity(checkRuns.get(0), fields));
 	}
 
 	@RequestMapping(path = "/check", method = {RequestMethod.POST, RequestMethod.GET})
-	public ResponseEntity<CheckRun> runChecks(
-		@RequestParam(required = false) List<Integer> priority,
-		@RequestParam(required = false) Integer priorityLte,
-		@RequestParam(required = false) Integer priorityGte,
-		@RequestParam(required = false) List<String> tags,
-		@RequestParam(required = false) List<String> notTags,
-		@RequestParam(required = false) List<String> type,
-		@RequestParam(required = false) List<String> notType,
-		@RequestParam(required = false) List<String> id,
-		@RequestParam(required = false) List<String> notId,
-		@RequestParam(required = false) List<Integer> appPriority,
-		@RequestParam(required = false) Integer appPriorityLte,
-		@RequestParam(required = false) Integer appPriorityGte,
-		@RequestParam(required = false) List<String> appTags,
-		@RequestParam(required = false) List<String> appNotTags,
-		@RequestParam(required = false) List<String> appType,
-		@RequestParam(required = false) List<String> appNotType,
-		@RequestParam(required = false) List<String> appId,
-		@RequestParam(required = false) List<String> appNotId,
+	public CompletionStage<ResponseEntity<CheckRun>> runChecks(
+		AppCheckFilterParams filterParams,
+		@RequestParam(required = false) List<CheckRunSelector.Field> fields,
+		HttpServletRequest request
+	) {
+		DefaultRunContext checkContext = monitorServiceWrapper.getContext(request);
+		checkContext.putContext(monitorServiceWrapper.getMonitorService().appPredicateKey(), filterParams.toCheckFilter());
+		checkContext.putContext(monitorServiceWrapper.getMonitorService().predicateKey(), filterParams.toAppFilter());
+		if (!checkContext.shouldRun()) {
+			return getLatestCheckRunResponseEntity(monitorServiceWrapper.getMonitorService().getLatestCheckRun(checkContext), fields);
+		}
+		return admitMonitorService(checkContext)
+			.thenApply(checkRuns -> getCheckRunResponseEntity(checkRuns.get(0), fields));
+	}
+
+	@RequestMapping(path = "/stream/app", method = {RequestMethod.POST, RequestMethod.GET})
+	public ResponseEntity<ResponseBodyEmitter> streamApps(
+		CheckFilterParams filterParams,
+		@RequestParam(required = false) List<CheckRunSelector.Field> fields,
+		HttpServletRequest request
+	) {
+		DefaultRunContext checkContext = monitorServiceWrapper.getContext(request);
+		checkContext.putContext(monitorServiceWrapper.getMonitorService().predicateKey(), filterParams.toCheckFilter());
+		return streamMonitorService(checkContext, fields, request);
+	}
+
+	@RequestMapping(path = "/stream/check", method = {RequestMethod.POST, RequestMethod.GET})
+	public ResponseEntity<ResponseBodyEmitter> streamChecks(
+		AppCheckFilterParams filterParams,
 		@RequestParam(required = false) List<CheckRunSelector.Field> fields,
 		HttpServletRequest request
 	) {
-		CheckFilter checkFilter = new CheckFilter(priority, priorityLte, priorityGte, tags, notTags, type, notType, id, notId);
-		CheckFilter appFilter = new CheckFilter(appPriority, appPriorityLte, appPriorityGte, appTags, appNotTags, appType, appNotType, appId, appNotId);
 		DefaultRunContext checkContext = monitorServiceWrapper.getContext(request);
-		checkContext.putContext(monitorServiceWrapper.getMonitorService().appPredicateKey(), checkFilter);
-		checkContext.putContext(monitorServiceWrapper.getMonitorService().predicateKey(), appFilter);
-		CheckRun checkRun = monitorCheckRunner.runChecks(monitorCheck, checkContext).get(0);
-		return getCheckRunResponseEntity(checkRun, fields);
+		checkContext.putContext(monitorServiceWrapper.getMonitorService().appPredicateKey(), filterParams.toCheckFilter());
+		checkContext.putContext(monitorServiceWrapper.getMonitorService().predicateKey(), filterParams.toAppFilter());
+		return streamMonitorService(checkContext, fields, request);
 	}
 
 	@RequestMapping("/apps")
@@ -139,6 +159,78 @@ public class CheckRunnerController {
 		return monitorServiceWrapper.getApp(appId).getCheckNames();
 	}
 
+	/**
+	 * GET requests never run checks so they are answered straight from the latest
+	 * published CheckRuns without going through a CheckRunner.
+	 */
+	private CompletionStage<ResponseEntity<CheckRun>> getLatestCheckRunResponseEntity(CheckRun checkRun, Collection<CheckRunSelector.Field> fields) {
+		return CompletableFuture.completedFuture(getCheckRunResponseEntity(checkRun, fields));
+	}
+
+	/**
+	 * Runs the MonitorService and writes every check and app CheckRun to the response
+	 * as it completes instead of waiting for the whole run to finish.
+	 */
+	private ResponseEntity<ResponseBodyEmitter> streamMonitorService(
+		DefaultRunContext checkContext,
+		Collection<CheckRunSelector.Field> fields,
+		HttpServletRequest request
+	) {
+		MonitorService monitorService = monitorServiceWrapper.getMonitorService();
+		String accept = request.getHeader(HttpHeaders.ACCEPT);
+		boolean serverSentEvents = accept != null && accept.contains(MediaType.TEXT_EVENT_STREAM_VALUE);
+		CheckRunStream stream = new CheckRunStream(serverSentEvents, monitorService, fields, configuration);
+		if (!checkContext.shouldRun()) {
+			stream.complete(monitorService.getLatestCheckRun(checkContext));
+		} else {
+			checkContext.setCheckRunListener(stream);
+			admitMonitorService(checkContext).whenComplete((checkRuns, t) -> {
+				if (t != null) {
+					stream.completeWithError(t);
+				} else {
+					stream.complete(checkRuns.get(0));
+				}
+			});
+		}
+		return stream.getResponseEntity();
+	}
+
+	private CompletionStage<List<CheckRun>> admitMonitorService(DefaultRunContext checkContext) {
+		MonitorService monitorService = monitorServiceWrapper.getMonitorService();
+		return admit(() -> monitorCheckRunner.runChecksAsync(monitorCheck, checkContext), monitorService,
+			() -> monitorService.getLatestCheckRun(checkContext));
+	}
+
+	/**
+	 * Only lets a request that runs checks through if towerhawk is not already handling
+	 * too many of them. Otherwise the request is answered with the cached CheckRun of
+	 * root marked as stale, and a ServiceOverloadedException is only thrown if root has
+	 * never run.
+	 *
+	 * @param cached Supplies the cached CheckRun of root
+	 */
+	private CompletionStage<List<CheckRun>> admit(Supplier<CompletionStage<List<CheckRun>>> run, Check root, Supplier<CheckRun> cached) {
+		if (!overloadGuard.tryAcquireRequest()) {
+			if (!root.hasRun()) {
+				throw new ServiceOverloadedException("Too many requests are running checks", overloadGuard.getRetryAfterSeconds());
+			}
+			return CompletableFuture.completedFuture(Collections.singletonList(overloadGuard.staleResponse(cached.get())));
+		}
+		try {
+			return run.get().whenComplete((r, t) -> overloadGuard.releaseRequest());
+		} catch (RuntimeException e) {
+			overloadGuard.releaseRequest();
+			throw e;
+		}
+	}
+
+	@ExceptionHandler(ServiceOverloadedException.class)
+	public ResponseEntity<String> handleOverloaded(ServiceOverloadedException e) {
+		return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+			.header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+			.body(e.getMessage());
+	}
+
 	private ResponseEntity<CheckRun> getCheckRunResponseEntity(CheckRun checkRun, Collection<CheckRunSelector.Field> fields) {
 		int responseCode = getResponseCode(checkRun.getStatus());
 		checkRun = new CheckRunSelector(checkRun, fields, configuration);
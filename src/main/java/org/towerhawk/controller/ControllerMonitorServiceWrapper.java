@@ -1,6 +1,7 @@
 package org.towerhawk.controller;
 
 import lombok.Getter;
+import org.towerhawk.controller.exception.BadRequestException;
 import org.towerhawk.controller.exception.ResourceNotFoundException;
 import org.towerhawk.monitor.MonitorService;
 import org.towerhawk.monitor.app.App;
@@ -42,9 +43,58 @@ public class ControllerMonitorServiceWrapper {
 	public DefaultRunContext getContext(HttpServletRequest request) {
 		DefaultRunContext checkContext = new DefaultRunContext();
 		checkContext.setShouldrun(shouldRun(request));
+		checkContext.setDeadline(getDeadline(request));
+		checkContext.setBudgetDeadline(getBudgetDeadline(request));
 		return checkContext;
 	}
 
+	/**
+	 * Callers can pass budgetMs to get whatever has finished by then. Checks still
+	 * running are reported with their last CheckRun and keep running in the background.
+	 *
+	 * @return the budget deadline of the request in milliseconds since the epoch, or 0
+	 * if budgetMs was not passed
+	 */
+	public long getBudgetDeadline(HttpServletRequest request) {
+		String budgetMs = request.getParameter("budgetMs");
+		if (budgetMs == null || budgetMs.isEmpty()) {
+			return 0;
+		}
+		try {
+			long budget = Long.parseLong(budgetMs);
+			if (budget <= 0) {
+				throw new BadRequestException("budgetMs must be greater than 0");
+			}
+			return System.currentTimeMillis() + budget;
+		} catch (NumberFormatException e) {
+			throw new BadRequestException("budgetMs must be a number", e);
+		}
+	}
+
+	/**
+	 * Callers can pass timeoutMs to say how long they are willing to wait. Checks that
+	 * would still be running past that are cut short and ones that cannot start in time
+	 * are not started at all.
+	 *
+	 * @return the deadline of the request in milliseconds since the epoch, or 0 if
+	 * timeoutMs was not passed
+	 */
+	public long getDeadline(HttpServletRequest request) {
+		String timeoutMs = request.getParameter("timeoutMs");
+		if (timeoutMs == null || timeoutMs.isEmpty()) {
+			return 0;
+		}
+		try {
+			long timeout = Long.parseLong(timeoutMs);
+			if (timeout <= 0) {
+				throw new BadRequestException("timeoutMs must be greater than 0");
+			}
+			return System.currentTimeMillis() + timeout;
+		} catch (NumberFormatException e) {
+			throw new BadRequestException("timeoutMs must be a number", e);
+		}
+	}
+
 	public boolean shouldRun(HttpServletRequest request) {
 		return !"GET".equals(request.getMethod());
 	}
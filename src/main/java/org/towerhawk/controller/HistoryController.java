@@ -0,0 +1,209 @@
+package org.towerhawk.controller;
+
+import com.fasterxml.jackson.annotation.JsonUnwrapped;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import lombok.Getter;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.towerhawk.controller.exception.BadRequestException;
+import org.towerhawk.controller.exception.ResourceNotFoundException;
+import org.towerhawk.monitor.app.App;
+import org.towerhawk.monitor.check.Check;
+import org.towerhawk.monitor.check.filter.CheckFilter;
+import org.towerhawk.monitor.check.run.Status;
+import org.towerhawk.monitor.history.HistoryQuery;
+import org.towerhawk.monitor.history.HistoryRecord;
+import org.towerhawk.monitor.history.HistoryStore;
+import org.towerhawk.monitor.rollup.RollupEngine;
+import org.towerhawk.monitor.rollup.RollupResult;
+import org.towerhawk.spring.config.HistoryConfiguration;
+
+import javax.inject.Inject;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+@RestController
+@RequestMapping(path = "/history")
+public class HistoryController {
+
+	private static final long DEFAULT_RANGE_MS = TimeUnit.DAYS.toMillis(1);
+
+	private final ControllerMonitorServiceWrapper monitorServiceWrapper;
+	private final RollupEngine rollupEngine;
+	private final HistoryStore historyStore;
+	private final HistoryConfiguration historyConfiguration;
+	// every record has to be on its own line
+	private final ObjectWriter lineWriter;
+
+	@Inject
+	public HistoryController(
+		ControllerMonitorServiceWrapper monitorServiceWrapper,
+		RollupEngine rollupEngine,
+		HistoryStore historyStore,
+		HistoryConfiguration historyConfiguration,
+		ObjectMapper objectMapper
+	) {
+		this.monitorServiceWrapper = monitorServiceWrapper;
+		this.rollupEngine = rollupEngine;
+		this.historyStore = historyStore;
+		this.historyConfiguration = historyConfiguration;
+		lineWriter = objectMapper.writer().without(SerializationFeature.INDENT_OUTPUT);
+	}
+
+	/**
+	 * Streams the runs of a check as newline delimited JSON, oldest first. Without the
+	 * history store only the recent runs the check keeps itself are available.
+	 * If more than limit runs match only the newest ones are returned.
+	 *
+	 * @param from       Epoch millis, defaults to a day before to
+	 * @param to         Epoch millis, defaults to now
+	 * @param status     Only return runs with these statuses
+	 * @param limit      How many runs to return at most
+	 * @param downsample Downsample the durations to this many runs with
+	 *                   Largest-Triangle-Three-Buckets
+	 */
+	@RequestMapping(path = "/{appId}/{checkId}", method = RequestMethod.GET)
+	public ResponseEntity<StreamingResponseBody> checkHistory(
+		@PathVariable String appId,
+		@PathVariable String checkId,
+		@RequestParam(required = false) Long from,
+		@RequestParam(required = false) Long to,
+		@RequestParam(required = false) List<Status> status,
+		@RequestParam(required = false) Integer limit,
+		@RequestParam(required = false) Integer downsample
+	) {
+		Check check = monitorServiceWrapper.getCheck(appId, checkId);
+		return stream(Collections.singletonList(check), getQuery(from, to, status, limit, downsample));
+	}
+
+	/**
+	 * Same as checkHistory() for every check matching the filters, one check after
+	 * another. limit and downsample apply to each check.
+	 */
+	@RequestMapping(method = RequestMethod.GET)
+	public ResponseEntity<StreamingResponseBody> history(
+		AppCheckFilterParams filterParams,
+		@RequestParam(required = false) Long from,
+		@RequestParam(required = false) Long to,
+		@RequestParam(required = false) List<Status> status,
+		@RequestParam(required = false) Integer limit,
+		@RequestParam(required = false) Integer downsample
+	) {
+		HistoryQuery query = getQuery(from, to, status, limit, downsample);
+		CheckFilter checkFilter = filterParams.toCheckFilter();
+		CheckFilter appFilter = filterParams.toAppFilter();
+		List<Check> checks = new ArrayList<>();
+		monitorServiceWrapper.getMonitorService().getChecks().values().stream().filter(appFilter::filter).forEach(app ->
+			checks.addAll(((App) app).getChecks().values().stream().filter(checkFilter::filter).collect(Collectors.toList())));
+		return stream(checks, query);
+	}
+
+	/**
+	 * @param from       Epoch millis, defaults to a day before to
+	 * @param to         Epoch millis, defaults to now
+	 * @param maxBuckets The finest resolution that covers the range in at most this many
+	 *                   buckets is used
+	 */
+	@RequestMapping(path = "/{appId}/{checkId}/rollup", method = RequestMethod.GET)
+	public RollupResult rollup(
+		@PathVariable String appId,
+		@PathVariable String checkId,
+		@RequestParam(required = false) Long from,
+		@RequestParam(required = false) Long to,
+		@RequestParam(required = false) Integer maxBuckets
+	) {
+		if (!rollupEngine.isEnabled()) {
+			throw new ResourceNotFoundException("Rollups are not enabled");
+		}
+		Check check = monitorServiceWrapper.getCheck(appId, checkId);
+		long toEpochMs = to == null ? System.currentTimeMillis() : to;
+		long fromEpochMs = from == null ? toEpochMs - DEFAULT_RANGE_MS : from;
+		if (fromEpochMs >= toEpochMs) {
+			throw new BadRequestException("from must be before to");
+		}
+		if (maxBuckets != null && maxBuckets <= 0) {
+			throw new BadRequestException("maxBuckets must be greater than 0");
+		}
+		RollupResult result = maxBuckets == null
+			? rollupEngine.query(check.getFullName(), fromEpochMs, toEpochMs)
+			: rollupEngine.query(check.getFullName(), fromEpochMs, toEpochMs, maxBuckets);
+		if (result == null) {
+			throw new ResourceNotFoundException("No rollups for " + check.getFullName() + " yet");
+		}
+		return result;
+	}
+
+	private HistoryQuery getQuery(Long from, Long to, List<Status> status, Integer limit, Integer downsample) {
+		long toEpochMs = to == null ? System.currentTimeMillis() : to;
+		long fromEpochMs = from == null ? toEpochMs - DEFAULT_RANGE_MS : from;
+		if (fromEpochMs >= toEpochMs) {
+			throw new BadRequestException("from must be before to");
+		}
+		if (limit != null && limit <= 0) {
+			throw new BadRequestException("limit must be greater than 0");
+		}
+		if (downsample != null && downsample < 3) {
+			throw new BadRequestException("downsample must be at least 3");
+		}
+		return new HistoryQuery(fromEpochMs, toEpochMs, status,
+			limit == null ? historyConfiguration.getDefaultQueryLimit() : limit,
+			downsample == null ? 0 : downsample,
+			historyConfiguration.getMaxDownsampleRecords());
+	}
+
+	/**
+	 * Each check is only read once the response is being written, and records are
+	 * written as they are read, so a query only holds a page of records at a time unless
+	 * it downsamples.
+	 */
+	private ResponseEntity<StreamingResponseBody> stream(List<Check> checks, HistoryQuery query) {
+		StreamingResponseBody body = out -> {
+			try {
+				for (Check check : checks) {
+					query.run(check, historyStore, record -> {
+						try {
+							out.write(toLine(check, record));
+							out.write('\n');
+						} catch (IOException e) {
+							throw new UncheckedIOException(e);
+						}
+					});
+					out.flush();
+				}
+			} catch (UncheckedIOException e) {
+				throw e.getCause();
+			}
+		};
+		return ResponseEntity.ok().contentType(CheckRunStream.APPLICATION_NDJSON).body(body);
+	}
+
+	private byte[] toLine(Check check, HistoryRecord record) throws JsonProcessingException {
+		return lineWriter.writeValueAsBytes(new HistoryLine(check.getFullName(), record));
+	}
+
+	@Getter
+	static class HistoryLine {
+
+		private final String check;
+		@JsonUnwrapped
+		private final HistoryRecord record;
+
+		HistoryLine(String check, HistoryRecord record) {
+			this.check = check;
+			this.record = record;
+		}
+	}
+}
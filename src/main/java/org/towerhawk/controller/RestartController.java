@@ -9,6 +9,7 @@ import org.springframework.web.bind.annotation.RestController;
 import org.towerhawk.monitor.app.App;
 import org.towerhawk.monitor.check.Check;
 import org.towerhawk.monitor.check.filter.CheckFilter;
+import org.towerhawk.monitor.journal.StateJournal;
 import org.towerhawk.spring.config.Configuration;
 
 import javax.inject.Inject;
@@ -24,11 +25,13 @@ public class RestartController {
 
 	private final ControllerMonitorServiceWrapper monitorServiceWrapper;
 	private final Configuration configuration;
+	private final StateJournal stateJournal;
 
 	@Inject
-	public RestartController(ControllerMonitorServiceWrapper monitorServiceWrapper, Configuration configuration) {
+	public RestartController(ControllerMonitorServiceWrapper monitorServiceWrapper, Configuration configuration, StateJournal stateJournal) {
 		this.monitorServiceWrapper = monitorServiceWrapper;
 		this.configuration = configuration;
+		this.stateJournal = stateJournal;
 	}
 
 	@RequestMapping(path = "/app/restart", method = {RequestMethod.POST, RequestMethod.GET})
@@ -48,7 +51,7 @@ public class RestartController {
 		CheckFilter checkFilter = new CheckFilter(priority, priorityLte, priorityGte, tags, notTags, type, notType, id, notId);
 		List<Check> checks = monitorServiceWrapper.getMonitorService().getChecks().values().stream().filter(checkFilter::filter).collect(Collectors.toList());
 		if (monitorServiceWrapper.shouldRun(request)) {
-			checks.forEach(c -> c.setRestarting(restarting));
+			checks.forEach(c -> setRestarting(c, restarting));
 		}
 		return checks.stream().collect(Collectors.toMap(Check::getId, Check::isRestarting));
 	}
@@ -61,7 +64,7 @@ public class RestartController {
 	) {
 		App app = monitorServiceWrapper.getApp(appId);
 		if (monitorServiceWrapper.shouldRun(request)) {
-			app.setRestarting(restarting);
+			setRestarting(app, restarting);
 		}
 		return app.isRestarting();
 	}
@@ -75,7 +78,7 @@ public class RestartController {
 	) {
 		Check check = monitorServiceWrapper.getCheck(appId, checkId);
 		if (monitorServiceWrapper.shouldRun(request)) {
-			check.setRestarting(restarting);
+			setRestarting(check, restarting);
 		}
 		return check.isRestarting();
 	}
@@ -110,7 +113,7 @@ public class RestartController {
 		for (Check app : apps) {
 			List<Check> checks = ((App) app).getChecks().values().stream().filter(checkFilter::filter).collect(Collectors.toList());
 			if (monitorServiceWrapper.shouldRun(request)) {
-				checks.forEach(c -> c.setRestarting(restarting));
+				checks.forEach(c -> setRestarting(c, restarting));
 			}
 			Map<String, Boolean> checksRestarting = checks.stream().collect(Collectors.toMap(Check::getId, Check::isRestarting));
 			if (!checksRestarting.isEmpty()) {
@@ -119,4 +122,9 @@ public class RestartController {
 		}
 		return returnMap;
 	}
+
+	private void setRestarting(Check check, boolean restarting) {
+		check.setRestarting(restarting);
+		stateJournal.onRestartingChanged(check);
+	}
 }
@@ -0,0 +1,115 @@
+package org.towerhawk.controller;
+
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.towerhawk.monitor.check.run.concurrent.AdaptiveConcurrencyLimiter;
+import org.towerhawk.monitor.check.run.concurrent.ConcurrentCheckInterruptor;
+import org.towerhawk.monitor.check.run.concurrent.LongestExpectedFirstOrdering;
+import org.towerhawk.monitor.check.run.concurrent.OverloadGuard;
+import org.towerhawk.monitor.check.run.concurrent.PriorityThreadPoolExecutor;
+import org.towerhawk.monitor.check.run.concurrent.TargetBulkhead;
+import org.towerhawk.monitor.check.run.schedule.CheckScheduler;
+import org.towerhawk.monitor.history.HistoryStore;
+import org.towerhawk.monitor.journal.StateJournal;
+import org.towerhawk.monitor.rollup.RollupEngine;
+
+import javax.inject.Inject;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+
+@RestController
+@RequestMapping(path = "/stats")
+public class StatsController {
+
+	private final ConcurrentCheckInterruptor interruptor;
+	private final TargetBulkhead targetBulkhead;
+	private final CheckScheduler checkScheduler;
+	private final ExecutorService checkRunService;
+	private final AdaptiveConcurrencyLimiter adaptiveConcurrencyLimiter;
+	private final OverloadGuard overloadGuard;
+	private final LongestExpectedFirstOrdering checkOrdering;
+	private final HistoryStore historyStore;
+	private final StateJournal stateJournal;
+	private final RollupEngine rollupEngine;
+
+	@Inject
+	public StatsController(
+		ConcurrentCheckInterruptor interruptor,
+		TargetBulkhead targetBulkhead,
+		CheckScheduler checkScheduler,
+		ExecutorService checkRunService,
+		AdaptiveConcurrencyLimiter adaptiveConcurrencyLimiter,
+		OverloadGuard overloadGuard,
+		LongestExpectedFirstOrdering checkOrdering,
+		HistoryStore historyStore,
+		StateJournal stateJournal,
+		RollupEngine rollupEngine
+	) {
+		this.interruptor = interruptor;
+		this.targetBulkhead = targetBulkhead;
+		this.checkScheduler = checkScheduler;
+		this.checkRunService = checkRunService;
+		this.adaptiveConcurrencyLimiter = adaptiveConcurrencyLimiter;
+		this.overloadGuard = overloadGuard;
+		this.checkOrdering = checkOrdering;
+		this.historyStore = historyStore;
+		this.stateJournal = stateJournal;
+		this.rollupEngine = rollupEngine;
+	}
+
+	@RequestMapping(path = "/interruptor")
+	public Map<String, Object> interruptorStats() {
+		return interruptor.getStats();
+	}
+
+	@RequestMapping(path = "/bulkhead")
+	public Map<String, Object> bulkheadStats() {
+		return targetBulkhead.getStats();
+	}
+
+	@RequestMapping(path = "/scheduler")
+	public Map<String, Object> schedulerStats() {
+		return checkScheduler.getStats();
+	}
+
+	@RequestMapping(path = "/limiter")
+	public Map<String, Object> limiterStats() {
+		return adaptiveConcurrencyLimiter.getStats();
+	}
+
+	@RequestMapping(path = "/overload")
+	public Map<String, Object> overloadStats() {
+		return overloadGuard.getStats();
+	}
+
+	@RequestMapping(path = "/ordering")
+	public Map<String, Object> orderingStats() {
+		return checkOrdering.getStats();
+	}
+
+	@RequestMapping(path = "/history")
+	public Map<String, Object> historyStats() {
+		return historyStore.getStats();
+	}
+
+	@RequestMapping(path = "/journal")
+	public Map<String, Object> journalStats() {
+		return stateJournal.getStats();
+	}
+
+	@RequestMapping(path = "/rollup")
+	public Map<String, Object> rollupStats() {
+		return rollupEngine.getStats();
+	}
+
+	@RequestMapping(path = "/executor")
+	public Map<String, Object> executorStats() {
+		if (checkRunService instanceof PriorityThreadPoolExecutor) {
+			return ((PriorityThreadPoolExecutor) checkRunService).getStats();
+		}
+		Map<String, Object> stats = new LinkedHashMap<>();
+		stats.put("type", checkRunService.getClass().getName());
+		return stats;
+	}
+}
@@ -5,11 +5,16 @@ import lombok.extern.slf4j.Slf4j;
 import org.towerhawk.monitor.active.Enabled;
 import org.towerhawk.monitor.app.App;
 import org.towerhawk.monitor.check.Check;
+import org.towerhawk.monitor.check.run.CheckRun;
+import org.towerhawk.monitor.check.run.CheckRunListener;
 import org.towerhawk.monitor.check.run.CheckRunner;
 import org.towerhawk.monitor.check.run.concurrent.AsynchronousCheckRunner;
 import org.towerhawk.monitor.check.run.context.DefaultRunContext;
 import org.towerhawk.monitor.check.run.context.RunContext;
+import org.towerhawk.monitor.history.HistoryStore;
+import org.towerhawk.monitor.journal.StateJournal;
 import org.towerhawk.monitor.reader.CheckDeserializer;
+import org.towerhawk.monitor.rollup.RollupEngine;
 import org.towerhawk.monitor.reader.CheckRefresher;
 import org.towerhawk.spring.config.Configuration;
 
@@ -24,20 +29,37 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 @Slf4j
 @Named
 public class MonitorService extends App {
 
 	private final CheckRunner checkCheckRunner;
+	private final StateJournal stateJournal;
 	private final RunContext runContext = new DefaultRunContext();
+	private final List<CheckRunListener> savedCheckRunListeners = new CopyOnWriteArrayList<>();
 	@Getter
 	private ZonedDateTime lastRefresh = ZonedDateTime.ofInstant(Instant.EPOCH, ZoneId.systemDefault());
 
 	@Inject
 	public MonitorService(Configuration configuration,
 												AsynchronousCheckRunner checkCheckRunner,
-												AsynchronousCheckRunner appCheckRunner) {
+												AsynchronousCheckRunner appCheckRunner,
+												HistoryStore historyStore,
+												StateJournal stateJournal,
+												RollupEngine rollupEngine) {
+		if (historyStore.isEnabled()) {
+			addSavedCheckRunListener(historyStore);
+		}
+		if (stateJournal.isEnabled()) {
+			addSavedCheckRunListener(stateJournal);
+		}
+		if (rollupEngine.isEnabled()) {
+			addSavedCheckRunListener(rollupEngine);
+		}
+		this.stateJournal = stateJournal;
 		setConfiguration(configuration);
 		setCheckRunner(appCheckRunner);
 		this.checkCheckRunner = checkCheckRunner;
@@ -77,6 +99,29 @@ public class MonitorService extends App {
 		return true;
 	}
 
+	/**
+	 * Registers a listener that is called with every CheckRun saved by any check or app,
+	 * on the thread that completed the run. Listeners must not block.
+	 */
+	public void addSavedCheckRunListener(CheckRunListener listener) {
+		savedCheckRunListeners.add(listener);
+	}
+
+	public boolean removeSavedCheckRunListener(CheckRunListener listener) {
+		return savedCheckRunListeners.remove(listener);
+	}
+
+	@Override
+	protected void onCheckRunSaved(CheckRun checkRun) {
+		for (CheckRunListener listener : savedCheckRunListeners) {
+			try {
+				listener.onCheckRun(checkRun);
+			} catch (Exception e) {
+				log.warn("CheckRunListener failed for {}", checkRun.getCheck().getFullName(), e);
+			}
+		}
+	}
+
 	public App getApp(String appId) {
 		return (App) getChecks().get(appId);
 	}
@@ -104,6 +149,18 @@ public class MonitorService extends App {
 		return super.predicateKey();
 	}
 
+	/**
+	 * Apps that were not defined before, which on startup is all of them, take over the
+	 * state their checks were journaled with so that they do not all run right away.
+	 */
+	private void restoreState(App app) {
+		if (!stateJournal.isEnabled()) {
+			return;
+		}
+		stateJournal.restore(app);
+		app.getChecks().values().forEach(stateJournal::restore);
+	}
+
 	private void postProcess(CheckDeserializer checkDeserializer) {
 		Collection<Check> appsToClose = new ArrayList<>(getChecks().size());
 		//initialize all checks first
@@ -113,6 +170,8 @@ public class MonitorService extends App {
 			app.init(previousApp, getConfiguration(), this, id);
 			if (previousApp != null) {
 				appsToClose.add(previousApp);
+			} else {
+				restoreState(app);
 			}
 		});
 		//then close old checks
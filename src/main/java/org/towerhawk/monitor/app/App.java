@@ -12,15 +12,21 @@ import org.towerhawk.monitor.check.run.CheckRun;
 import org.towerhawk.monitor.check.run.CheckRunAggregator;
 import org.towerhawk.monitor.check.run.CheckRunner;
 import org.towerhawk.monitor.check.run.DefaultCheckRunAggregator;
+import org.towerhawk.monitor.check.run.concurrent.AsynchronousCheckRunner;
+import org.towerhawk.monitor.check.run.context.DependencyCompletionManager;
 import org.towerhawk.monitor.check.run.context.RunContext;
 import org.towerhawk.spring.config.Configuration;
 
 import java.io.IOException;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 import java.util.stream.Collectors;
 
 @Slf4j
@@ -32,11 +38,20 @@ public class App extends AbstractCheck {
 	@Getter(AccessLevel.NONE)
 	@Setter(AccessLevel.NONE)
 	protected CheckRunAggregator aggregator = new DefaultCheckRunAggregator();
+	@Getter(AccessLevel.NONE)
+	@Setter(AccessLevel.NONE)
+	protected DependencyCompletionManager completionManager = null;
 	protected Map<String, Check> checks = null;
 	protected Long defaultCacheMs;
 	protected Long defaultTimeoutMs;
+	protected Long defaultStaleWhileRevalidateMs;
 	protected Byte defaultPriority;
 	protected Duration defaultAllowedFailureDuration;
+	/**
+	 * How long a run of this App waits on its checks before aggregating what has finished
+	 * and reporting the rest with their last CheckRun. 0 waits for every check.
+	 */
+	protected long slaMs = 0;
 	protected CheckRunner checkRunner;
 
 	public App() {
@@ -62,6 +77,115 @@ public class App extends AbstractCheck {
 
 	@Override
 	protected void doRun(CheckRun.Builder builder, RunContext runContext) {
+		Collection<Check> checksToRun = getChecksToRun(runContext);
+		RunContext context = applySla(runContext.duplicate().setSaveCheckRun(true));
+		List<CheckRun> checkRuns;
+		if (completionManager == null) {
+			checkRuns = checkRunner.runChecks(checksToRun, context);
+		} else {
+			Map<Check, CheckRun> completed = new LinkedHashMap<>();
+			for (List<Check> wave : completionManager.getWaves(checksToRun)) {
+				completed.putAll(skipFailedDependents(wave, completed, context));
+				checkRunner.runChecks(wave, context.duplicate()).forEach(c -> completed.put(c.getCheck(), c));
+			}
+			checkRuns = new ArrayList<>(completed.values());
+			Collections.sort(checkRuns);
+		}
+		aggregateChecks(builder, checkRuns);
+	}
+
+	@Override
+	protected CompletionStage<Void> doRunAsync(CheckRun.Builder builder, RunContext runContext) {
+		if (!(checkRunner instanceof AsynchronousCheckRunner)) {
+			return super.doRunAsync(builder, runContext);
+		}
+		Collection<Check> checksToRun = getChecksToRun(runContext);
+		RunContext context = applySla(runContext.duplicate().setSaveCheckRun(true));
+		AsynchronousCheckRunner asyncRunner = (AsynchronousCheckRunner) checkRunner;
+		// aggregate as a continuation so no thread is held while the checks run
+		if (completionManager == null) {
+			return asyncRunner.runChecksAsync(checksToRun, context)
+				.thenAccept(checkRuns -> aggregateChecks(builder, checkRuns));
+		}
+		List<List<Check>> waves = completionManager.getWaves(checksToRun);
+		return runWaves(asyncRunner, waves, 0, context, new LinkedHashMap<>())
+			.thenAccept(completed -> {
+				List<CheckRun> checkRuns = new ArrayList<>(completed.values());
+				Collections.sort(checkRuns);
+				aggregateChecks(builder, checkRuns);
+			});
+	}
+
+	/**
+	 * Moves the budget deadline of context up to slaMs from now if that is earlier.
+	 */
+	private RunContext applySla(RunContext context) {
+		if (slaMs > 0) {
+			long slaDeadline = System.currentTimeMillis() + slaMs;
+			long budgetDeadline = context.getBudgetDeadline();
+			if (budgetDeadline <= 0 || slaDeadline < budgetDeadline) {
+				context.setBudgetDeadline(slaDeadline);
+			}
+		}
+		return context;
+	}
+
+	/**
+	 * Runs each wave once the one before it has completed. Waves are chained as
+	 * continuations so no thread waits on the earlier waves.
+	 */
+	private CompletionStage<Map<Check, CheckRun>> runWaves(
+		AsynchronousCheckRunner asyncRunner,
+		List<List<Check>> waves,
+		int wave,
+		RunContext context,
+		Map<Check, CheckRun> completed
+	) {
+		if (wave >= waves.size()) {
+			return CompletableFuture.completedFuture(completed);
+		}
+		List<Check> checksToRun = waves.get(wave);
+		completed.putAll(skipFailedDependents(checksToRun, completed, context));
+		return asyncRunner.runChecksAsync(checksToRun, context.duplicate()).thenCompose(checkRuns -> {
+			checkRuns.forEach(c -> completed.put(c.getCheck(), c));
+			return runWaves(asyncRunner, waves, wave + 1, context, completed);
+		});
+	}
+
+	/**
+	 * Removes the checks whose dependencies failed from wave. Their upstream failure
+	 * CheckRuns are saved like the CheckRun of a run that completed.
+	 *
+	 * @return The upstream failure CheckRuns of the checks that were removed
+	 */
+	private Map<Check, CheckRun> skipFailedDependents(List<Check> wave, Map<Check, CheckRun> completed, RunContext context) {
+		Map<Check, CheckRun> skipped = new LinkedHashMap<>();
+		for (Check check : wave) {
+			CheckRun upstreamFailure = completionManager.getUpstreamFailure(check, completed);
+			if (upstreamFailure != null) {
+				skipped.put(check, upstreamFailure);
+				if (context.saveCheckRun()) {
+					check.saveCheckRun(upstreamFailure);
+				}
+				if (context.getCheckRunListener() != null) {
+					context.getCheckRunListener().onCheckRun(upstreamFailure);
+				}
+			}
+		}
+		wave.removeAll(skipped.keySet());
+		return skipped;
+	}
+
+	/**
+	 * The aggregate of a run depends on which checks its RunContext selects and on its
+	 * deadline and listener, so it is never handed to a caller with another context.
+	 */
+	@Override
+	protected boolean sharesInFlightRun() {
+		return false;
+	}
+
+	protected Collection<Check> getChecksToRun(RunContext runContext) {
 		Object mapPredicate = runContext.getContext().get(predicateKey());
 		Collection<Check> checksToRun;
 		if (mapPredicate instanceof CheckFilter) {
@@ -73,9 +197,37 @@ public class App extends AbstractCheck {
 		} else {
 			checksToRun = getChecks().values();
 		}
-		RunContext context = runContext.duplicate().setSaveCheckRun(true);
-		List<CheckRun> checkRuns = checkRunner.runChecks(checksToRun, context);
+		return checksToRun;
+	}
+
+	/**
+	 * Builds a CheckRun for this App from the most recently published CheckRun of each
+	 * check. Nothing is run or submitted to an executor and no locks are taken, so this
+	 * is safe to call as often as needed. The result is not saved.
+	 *
+	 * @param runContext Used to filter the checks the same way run() would
+	 * @return A new CheckRun aggregating the latest CheckRun of each check
+	 */
+	public CheckRun getLatestCheckRun(RunContext runContext) {
+		RunContext context = runContext.duplicate();
+		Object mapPredicate = context.getContext().remove(predicateKey());
+		Collection<Check> checksToRead = getChecks().values();
+		if (mapPredicate instanceof CheckFilter) {
+			checksToRead = checksToRead.stream().filter(((CheckFilter) mapPredicate)::filter).collect(Collectors.toList());
+		}
+		List<CheckRun> checkRuns = new ArrayList<>(checksToRead.size());
+		for (Check check : checksToRead) {
+			if (check instanceof App) {
+				checkRuns.add(((App) check).getLatestCheckRun(context));
+			} else {
+				checkRuns.add(check.getLastCheckRun());
+			}
+		}
+		Collections.sort(checkRuns);
+		CheckRun.Builder builder = CheckRun.builder(this).unknownIsCritical(isUnknownIsCritical());
 		aggregateChecks(builder, checkRuns);
+		builder.failingSince(getFailingSince());
+		return builder.build();
 	}
 
 	protected void aggregateChecks(CheckRun.Builder builder, List<CheckRun> checkRuns) {
@@ -94,6 +246,9 @@ public class App extends AbstractCheck {
 		if (defaultTimeoutMs == null) {
 			defaultTimeoutMs = configuration.getDefaultTimeoutMs();
 		}
+		if (defaultStaleWhileRevalidateMs == null) {
+			defaultStaleWhileRevalidateMs = configuration.getDefaultStaleWhileRevalidateMs();
+		}
 		if (defaultPriority == null) {
 			defaultPriority = configuration.getDefaultPriority();
 		}
@@ -104,8 +259,14 @@ public class App extends AbstractCheck {
 		App previousApp = (App) check;
 		getChecks().forEach((checkId, c) -> c.init(previousApp == null ? null : previousApp.getCheck(checkId), configuration, this, checkId));
 		checks = Collections.unmodifiableMap(getChecks());
+		if (DependencyCompletionManager.hasDependencies(getChecks().values())) {
+			completionManager = new DependencyCompletionManager();
+			completionManager.registerChecks(getId(), getChecks());
+		}
 		//an App should never be cached so override any cache settings
 		setCacheMs(0L);
+		//its checks serve stale runs themselves so the App always aggregates fresh
+		setStaleWhileRevalidateMs(0L);
 		fullName = "app:" + getId();
 		if (isActive()) {
 			log.info("Initialized {}", getFullName());
@@ -7,6 +7,7 @@ import org.towerhawk.monitor.app.App;
 import org.towerhawk.monitor.check.run.CheckRun;
 import org.towerhawk.monitor.check.run.Status;
 import org.towerhawk.monitor.check.run.context.RunContext;
+import org.towerhawk.monitor.journal.CheckState;
 import org.towerhawk.serde.resolver.CheckTypeResolver;
 import org.towerhawk.spring.config.Configuration;
 
@@ -16,6 +17,8 @@ import java.time.ZonedDateTime;
 import java.util.Collection;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 
 @JsonIgnoreProperties(ignoreUnknown = true)
 @JsonTypeInfo(use = JsonTypeInfo.Id.CUSTOM, include = JsonTypeInfo.As.PROPERTY, property = "type", visible = true)
@@ -36,16 +39,28 @@ public interface Check extends Comparable<Check>, Closeable {
 
 	/**
 	 * This is where the real work happens. A CheckRun is returned containing information
-	 * about how the check went. This can be a synchronized method to ensure that multiple
-	 * runs don't happen concurrently. Logic should be in place in this method to see if
-	 * a check can run (see canRun()) and if this method gets called concurrently
-	 * the second invocation can return the results of the first invocation.
+	 * about how the check went. Multiple runs should not happen concurrently. Logic should
+	 * be in place in this method to see if a check can run (see canRun()) and if this
+	 * method gets called concurrently the second invocation should return the results
+	 * of the first invocation once it completes.
 	 *
 	 * @param runContext
 	 * @return The CheckRun representing the results of this run().
 	 */
 	CheckRun run(RunContext runContext);
 
+	/**
+	 * The non-blocking form of run(). Checks that aggregate other checks, like an App,
+	 * can return before their children have finished and complete the returned stage
+	 * once they have. The default implementation simply calls run().
+	 *
+	 * @param runContext
+	 * @return A CompletionStage that is completed with the CheckRun of this run.
+	 */
+	default CompletionStage<CheckRun> runAsync(RunContext runContext) {
+		return CompletableFuture.completedFuture(run(runContext));
+	}
+
 	/**
 	 * This determines whether the check is active right now or not. This allows different
 	 * strategies to be implemented like daily or weekly schedules. This can also be used
@@ -153,6 +168,21 @@ public interface Check extends Comparable<Check>, Closeable {
 	 */
 	List<CheckRun> getRecentCheckRuns();
 
+	/**
+	 * @return true once this check has completed a run, or restored one, so that
+	 * getLastCheckRun() is more than the placeholder it starts out with
+	 */
+	default boolean hasRun() {
+		return !getRecentCheckRuns().isEmpty();
+	}
+
+	/**
+	 * Saves a CheckRun that was decided for this check without running it, like when a
+	 * check it depends on failed, the same way the CheckRun of a completed run is saved.
+	 */
+	default void saveCheckRun(CheckRun checkRun) {
+	}
+
 	/**
 	 * Determines if this check is currently running.
 	 *
@@ -167,6 +197,77 @@ public interface Check extends Comparable<Check>, Closeable {
 	 */
 	boolean isCached();
 
+	/**
+	 * Determines how much longer the most recent CheckRun will be cached for.
+	 *
+	 * @return milliseconds until the cache expires. A value less than or equal to zero
+	 * means the check is not cached.
+	 */
+	long getCachedForMs();
+
+	/**
+	 * An estimate of how long the next run of this check will take, used to start the
+	 * longest checks first so that they do not hold up everything else.
+	 *
+	 * @return expected duration in milliseconds, or a negative value if unknown
+	 */
+	default long getExpectedDurationMs() {
+		return -1;
+	}
+
+	/**
+	 * Determines if the cache of this check has expired recently enough that the most
+	 * recent CheckRun can still be served, flagged as stale, while the check is rerun in
+	 * the background.
+	 *
+	 * @return true if a stale CheckRun can be served instead of waiting on a run
+	 */
+	default boolean canServeStale() {
+		return false;
+	}
+
+	/**
+	 * The host this check talks to. Checks against the same target share a limit on how
+	 * many of them can run at the same time.
+	 *
+	 * @return the target or null if this check does not talk to a specific host
+	 */
+	default String getTarget() {
+		return null;
+	}
+
+	/**
+	 * How long a run can take before a second, hedged attempt is started next to it. This
+	 * cuts the tail latency of checks that are occasionally much slower than usual.
+	 *
+	 * @return delay in milliseconds, or a negative value to never hedge
+	 */
+	default long getHedgeDelayMs() {
+		return -1;
+	}
+
+	/**
+	 * Starts a second attempt of the run that is currently in flight. Whichever attempt
+	 * finishes first with success completes the in flight run.
+	 *
+	 * @param runContext The context the in flight run was started with
+	 * @return The CompletionStage of the in flight run, or null if nothing was hedged
+	 */
+	default CompletionStage<CheckRun> hedge(RunContext runContext) {
+		return null;
+	}
+
+	/**
+	 * Takes over the state this check had in a previous process so that it does not have
+	 * to run again right after a restart. Only a check that has not run yet should do so.
+	 *
+	 * @param state The state that was journaled for this check
+	 * @return true if the state was restored, false otherwise
+	 */
+	default boolean restoreState(CheckState state) {
+		return false;
+	}
+
 	/**
 	 * Returns any checks that need to be run before this check. If all checks listed here
 	 * are successful then this check can be run
@@ -199,6 +300,20 @@ public interface Check extends Comparable<Check>, Closeable {
 		return isActive() && !isRunning() && !isCached();
 	}
 
+	/**
+	 * Same as canRun() except that a RunContext with refreshCache() set to true allows
+	 * the check to run even if it is still cached.
+	 *
+	 * @param runContext The context this check would be run with
+	 * @return true if the check can run, false otherwise.
+	 */
+	default boolean canRun(RunContext runContext) {
+		if (runContext.refreshCache()) {
+			return isActive() && !isRunning();
+		}
+		return canRun();
+	}
+
 	/**
 	 * Similar to a @PostConstruct. This method should be called by the deserialization
 	 * framework to allow checks to initialize any state they need to, like caching a
@@ -6,7 +6,6 @@ import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.NonNull;
 import lombok.Setter;
-import lombok.Synchronized;
 import lombok.extern.slf4j.Slf4j;
 import org.towerhawk.monitor.active.Active;
 import org.towerhawk.monitor.active.Enabled;
@@ -16,6 +15,7 @@ import org.towerhawk.monitor.check.run.CheckRun;
 import org.towerhawk.monitor.check.run.Status;
 import org.towerhawk.monitor.check.run.context.RunContext;
 import org.towerhawk.monitor.check.threshold.Threshold;
+import org.towerhawk.monitor.journal.CheckState;
 import org.towerhawk.spring.config.Configuration;
 
 import java.io.BufferedReader;
@@ -26,11 +26,16 @@ import java.time.Duration;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
 import java.util.stream.Collectors;
 
 @Slf4j
@@ -52,6 +57,12 @@ public abstract class AbstractCheck implements Check {
 	private Long cacheMs = null;
 	@Setter
 	private Long timeoutMs = null;
+	/**
+	 * How long after cacheMs has passed the last CheckRun can still be served, flagged as
+	 * stale, while the check is rerun in the background
+	 */
+	@Setter
+	private Long staleWhileRevalidateMs = null;
 	@Setter
 	private Byte priority = null;
 	@Setter
@@ -60,11 +71,44 @@ public abstract class AbstractCheck implements Check {
 	@Setter
 	private boolean restarting = false;
 	private Set<String> tags = new LinkedHashSet<>();
+	/**
+	 * Ids of other checks in the same app that need to succeed before this check is run
+	 */
+	@Setter
+	private List<String> dependsOn = null;
+	@JsonIgnore
+	@Getter(AccessLevel.NONE)
+	private Collection<Check> dependencies = Collections.emptyList();
 	@Setter(AccessLevel.PROTECTED)
 	private Active active = new Enabled();
 	@JsonIgnore
 	private RecentCheckRun recentCheckRuns = new RecentCheckRun();
-	private boolean running = false;
+	private volatile boolean running = false;
+	@Getter(AccessLevel.NONE)
+	private final Object runLock = new Object();
+	@Getter(AccessLevel.NONE)
+	private CompletableFuture<CheckRun> inFlightRun = null;
+	@Getter(AccessLevel.NONE)
+	private volatile long runDeadline = 0;
+	// the builder of the first attempt of the run in flight, hedged attempts start with it
+	private CheckRun.Builder runStartBuilder = null;
+	// attempts of the in flight run that have not completed yet, guarded by runLock
+	@Getter(AccessLevel.NONE)
+	private int pendingAttempts = 0;
+	@Getter(AccessLevel.NONE)
+	private boolean hedgeStarted = false;
+	@Getter(AccessLevel.NONE)
+	private boolean completing = false;
+	/**
+	 * Opt in to hedged runs, see HedgePolicy
+	 */
+	@Setter
+	private HedgePolicy hedge = null;
+	/**
+	 * Opt in to serving the failing CheckRun while a check keeps failing, see CircuitBreaker
+	 */
+	@Setter
+	private CircuitBreaker circuitBreaker = null;
 	@Setter
 	@Getter(AccessLevel.PROTECTED)
 	private boolean unknownIsCritical = true;
@@ -95,12 +139,34 @@ public abstract class AbstractCheck implements Check {
 		return initialized && active.isActive();
 	}
 
+	/**
+	 * @return Whether a concurrent caller can be handed the run that is already in flight,
+	 * whatever RunContext that run was started with
+	 */
+	protected boolean sharesInFlightRun() {
+		return true;
+	}
+
+	/**
+	 * Hedging is opt in per type since both attempts of a hedged run call doRun() on the
+	 * same instance at the same time. Types return true if that is safe, and init()
+	 * rejects a hedge policy on any other type.
+	 */
+	protected boolean supportsHedging() {
+		return false;
+	}
+
 	@Override
 	@JsonIgnore
 	public CheckRun getLastCheckRun() {
 		return recentCheckRuns.getLastRun();
 	}
 
+	@Override
+	public boolean hasRun() {
+		return runEndTimestamp != 0;
+	}
+
 	@Override
 	public List<CheckRun> getRecentCheckRuns() {
 		return recentCheckRuns.getRecentCheckRuns();
@@ -111,16 +177,103 @@ public abstract class AbstractCheck implements Check {
 		return cachedFor() > 0;
 	}
 
+	@Override
+	@JsonIgnore
+	public long getCachedForMs() {
+		return cachedFor();
+	}
+
+	@Override
+	@JsonIgnore
+	public long getHedgeDelayMs() {
+		if (hedge == null) {
+			return -1;
+		}
+		long percentileMs;
+		synchronized (runLock) {
+			percentileMs = recentCheckRuns.getDurationPercentileMs(hedge.getPercentile(), hedge.getMinSamples());
+		}
+		if (percentileMs < 0) {
+			return -1;
+		}
+		return Math.max(percentileMs, hedge.getMinDelayMs());
+	}
+
+	/**
+	 * @return true while the circuit breaker of this check is open and the check should
+	 * not be run
+	 */
+	@JsonIgnore
+	public boolean isCircuitOpen() {
+		if (circuitBreaker == null) {
+			return false;
+		}
+		synchronized (runLock) {
+			return circuitBreaker.isOpen(System.currentTimeMillis());
+		}
+	}
+
+	@Override
+	public boolean canRun() {
+		return !isCircuitOpen() && Check.super.canRun();
+	}
+
+	/**
+	 * @return true if the circuit breaker of this check opened during the current
+	 * outage, so this run is a probe of whether the target is back
+	 */
+	protected boolean isCircuitProbing() {
+		if (circuitBreaker == null) {
+			return false;
+		}
+		synchronized (runLock) {
+			return circuitBreaker.isProbing();
+		}
+	}
+
+	/**
+	 * Refreshing the cache does not bypass an open circuit breaker, since the whole point
+	 * is not to wait on a target that is known to be down.
+	 */
+	@Override
+	public boolean canRun(RunContext runContext) {
+		return !isCircuitOpen() && Check.super.canRun(runContext);
+	}
+
+	@Override
+	@JsonIgnore
+	public long getExpectedDurationMs() {
+		synchronized (runLock) {
+			return recentCheckRuns.getMeanDurationMs();
+		}
+	}
+
+	@Override
+	@JsonIgnore
+	public boolean canServeStale() {
+		if (staleWhileRevalidateMs <= 0 || runEndTimestamp == 0 || !isActive()) {
+			return false;
+		}
+		long cachedForMs = cachedFor();
+		return cachedForMs <= 0 && cachedForMs + staleWhileRevalidateMs > 0;
+	}
+
 	protected final long cachedFor() {
 		return getCacheMs() - (System.currentTimeMillis() - runEndTimestamp);
 	}
 
+	/**
+	 * @return milliseconds until the current run has to finish, which is the earlier of
+	 * this check's timeout and the deadline of the RunContext it was started with. Never
+	 * less than 1 since a timeout of 0 means to wait forever for sockets and connections.
+	 * @throws IllegalStateException if throwException is set and no time is left
+	 */
 	protected int getMsRemaining(boolean throwException) {
-		long timeRemaining = getTimeoutMs() - (System.currentTimeMillis() - runStartTimestamp);
-		if (timeRemaining < 0 && throwException) {
+		long timeRemaining = runDeadline - System.currentTimeMillis();
+		if (timeRemaining <= 0 && throwException) {
 			throw new IllegalStateException("Check is timed out");
 		}
-		return (int) timeRemaining;
+		return (int) Math.max(1, Math.min(Integer.MAX_VALUE, timeRemaining));
 	}
 
 	protected final ZonedDateTime setFailingSince(long epochMillis) {
@@ -158,42 +311,156 @@ public abstract class AbstractCheck implements Check {
 	}
 
 	@Override
-	@Synchronized
 	public final CheckRun run(RunContext runContext) {
-		CheckRun checkRun;
-		if (!runContext.shouldRun() || !canRun()) {
-			if (running) {
-				log.debug("Check {} is already running", getFullName());
-			} else if (!initialized) {
-				log.warn("Trying to run check {} but it is not initialized", getFullName());
-			} else if (!isActive()) {
-				log.debug("Check {} is not active", getFullName());
-				CheckRun lastRun = getLastCheckRun();
-				if (lastRun.getStatus() != Status.SUCCEEDED) {
-					CheckRun.Builder copyRunBuilder = CheckRun.builder(lastRun);
-					copyRunBuilder.succeeded();
-					copyRunBuilder.addContext("inactive", "Check is not active and was failing");
-					recentCheckRuns.addCheckRun(copyRunBuilder.build());
+		// runAsync() never completes exceptionally so this only waits
+		return runAsync(runContext).toCompletableFuture().join();
+	}
+
+	/**
+	 * Concurrent callers of a check that is already running subscribe to the run that
+	 * is in flight instead of waiting on a lock, so they all get the fresh CheckRun as
+	 * soon as it completes. Checks that return false from sharesInFlightRun() are run
+	 * again with the caller's RunContext once the run in flight completes instead. The
+	 * lock is only held while starting and recording a run, never while the check
+	 * itself is running.
+	 */
+	@Override
+	public final CompletionStage<CheckRun> runAsync(RunContext runContext) {
+		CheckRun.Builder builder;
+		CompletableFuture<CheckRun> pendingRun;
+		synchronized (runLock) {
+			if (inFlightRun != null && runContext.shouldRun()) {
+				if (sharesInFlightRun()) {
+					log.debug("Check {} is already running, subscribing to the in flight run", getFullName());
+					return inFlightRun;
+				}
+				log.debug("Check {} is already running, running again once it completes", getFullName());
+				return inFlightRun.thenCompose(checkRun -> runAsync(runContext));
+			}
+			if (!runContext.shouldRun() || !canRun(runContext)) {
+				if (running) {
+					log.debug("Check {} is already running", getFullName());
+				} else if (!initialized) {
+					log.warn("Trying to run check {} but it is not initialized", getFullName());
+				} else if (!isActive()) {
+					log.debug("Check {} is not active", getFullName());
+					CheckRun lastRun = getLastCheckRun();
+					if (lastRun.getStatus() != Status.SUCCEEDED) {
+						CheckRun.Builder copyRunBuilder = CheckRun.builder(lastRun);
+						copyRunBuilder.succeeded();
+						copyRunBuilder.addContext("inactive", "Check is not active and was failing");
+						recentCheckRuns.addCheckRun(copyRunBuilder.build());
+					}
+				} else if (isCached()) {
+					log.debug("Check {} is cached for {} more ms", getFullName(), cachedFor());
 				}
-			} else if (isCached()) {
-				log.debug("Check {} is cached for {} more ms", getFullName(), cachedFor());
+				return CompletableFuture.completedFuture(getLastCheckRun());
 			}
-			return getLastCheckRun();
+			if (runContext.getRemainingMs() <= 0) {
+				log.info("Not starting {} since the deadline of the run has passed", getFullName());
+				return CompletableFuture.completedFuture(CheckRun.builder(this).timedOut(true).unknown()
+					.message("Deadline passed before " + getFullName() + " could start").build());
+			}
+			log.debug("Starting run() for {}", getFullName());
+			running = true;
+			builder = CheckRun.builder(this).unknownIsCritical(isUnknownIsCritical());
+			runStartTimestamp = builder.startTime();
+			runStartBuilder = builder;
+			runDeadline = runStartTimestamp + Math.min(getTimeoutMs(), runContext.getRemainingMs());
+			pendingRun = new CompletableFuture<>();
+			inFlightRun = pendingRun;
+			pendingAttempts = 1;
+			hedgeStarted = false;
+			completing = false;
+		}
+		// Synchronous checks are already complete so this runs on the current thread
+		startAttempt(builder, runContext).whenComplete((v, t) -> completeAttempt(builder, runContext, t, pendingRun));
+		return pendingRun;
+	}
+
+	/**
+	 * Starts a second attempt of the run that is in flight on the calling thread. The
+	 * first attempt to succeed decides the CheckRun, and if neither does the last one to
+	 * complete does. The losing attempt is left to finish within the deadline of the run
+	 * and its result is dropped.
+	 */
+	@Override
+	public CompletionStage<CheckRun> hedge(RunContext runContext) {
+		CheckRun.Builder builder;
+		CompletableFuture<CheckRun> pendingRun;
+		synchronized (runLock) {
+			if (inFlightRun == null || hedgeStarted || completing) {
+				return null;
+			}
+			hedgeStarted = true;
+			pendingAttempts++;
+			pendingRun = inFlightRun;
+			// the duration of the run counts from when the first attempt started
+			builder = CheckRun.builder(this).unknownIsCritical(isUnknownIsCritical()).addContext("hedged", true)
+				.startTime(runStartBuilder);
 		}
-		log.debug("Starting run() for {}", getFullName());
-		running = true;
-		CheckRun.Builder builder = CheckRun.builder(this).unknownIsCritical(isUnknownIsCritical());
-		runStartTimestamp = builder.startTime();
+		log.info("Check {} is slower than usual, starting a hedged attempt", getFullName());
+		// doRun() may put things like open sockets in the context, so attempts never share one
+		startAttempt(builder, runContext.duplicate()).whenComplete((v, t) -> completeAttempt(builder, runContext, t, pendingRun));
+		return pendingRun;
+	}
+
+	private CompletionStage<Void> startAttempt(CheckRun.Builder builder, RunContext runContext) {
 		try {
-			doRun(builder, runContext);
-		} catch (InterruptedException e) {
-			builder.timedOut(true).unknown().error(e);
-			log.warn("Check {} got interrupted", getFullName());
+			return doRunAsync(builder, runContext);
 		} catch (Exception e) {
-			builder.error(e).critical();
-			log.error("doRun() for check {} threw an exception", getFullName(), e);
-		} finally {
+			CompletableFuture<Void> failed = new CompletableFuture<>();
+			failed.completeExceptionally(e);
+			return failed;
+		}
+	}
+
+	private void completeAttempt(CheckRun.Builder builder, RunContext runContext, Throwable throwable, CompletableFuture<CheckRun> pendingRun) {
+		synchronized (runLock) {
+			if (inFlightRun != pendingRun || completing) {
+				// another attempt already decided this run
+				return;
+			}
+			pendingAttempts--;
+			boolean succeeded = throwable == null && builder.getStatus() == Status.SUCCEEDED;
+			if (!succeeded && pendingAttempts > 0) {
+				// give the attempt that is still running a chance to succeed
+				return;
+			}
+			completing = true;
+		}
+		CheckRun checkRun;
+		try {
+			checkRun = completeRun(builder, runContext, throwable);
+		} catch (RuntimeException e) {
+			log.error("Unable to record the run of check {}", getFullName(), e);
+			synchronized (runLock) {
+				running = false;
+				inFlightRun = null;
+				runStartBuilder = null;
+			}
+			checkRun = getLastCheckRun();
+		}
+		// complete outside of the lock since subscribers continue on this thread
+		pendingRun.complete(checkRun);
+	}
+
+	private CheckRun completeRun(CheckRun.Builder builder, RunContext runContext, Throwable throwable) {
+		if (throwable instanceof CompletionException && throwable.getCause() != null) {
+			throwable = throwable.getCause();
+		}
+		if (throwable instanceof InterruptedException || throwable instanceof CancellationException) {
+			builder.timedOut(true).unknown().error(throwable);
+			log.warn("Check {} got interrupted", getFullName());
+		} else if (throwable != null) {
+			builder.error(throwable).critical();
+			log.error("doRun() for check {} threw an exception", getFullName(), throwable);
+		}
+		CheckRun checkRun;
+		synchronized (runLock) {
 			runEndTimestamp = builder.endTime();
+			// warnings mean the target answered so they never open the circuit breaker
+			boolean failed = builder.getStatus() == Status.CRITICAL || builder.getStatus() == Status.UNKNOWN;
 			if (builder.getStatus() == Status.SUCCEEDED) {
 				clearFailingSince();
 				setRestarting(false);
@@ -201,16 +468,61 @@ public abstract class AbstractCheck implements Check {
 				maybeSuppressFailure(builder, setFailingSince(runStartTimestamp));
 			}
 			builder.failingSince(getFailingSince());
+			recordCircuitBreaker(builder, failed);
 			checkRun = builder.build();
 			if (runContext.saveCheckRun()) {
 				recentCheckRuns.addCheckRun(checkRun);
 			}
 			running = false;
+			inFlightRun = null;
+			runStartBuilder = null;
 			log.debug("Ending run() for {}", getFullName());
 		}
+		if (runContext.saveCheckRun()) {
+			onCheckRunSaved(checkRun);
+		}
 		return checkRun;
 	}
 
+	@Override
+	public void saveCheckRun(CheckRun checkRun) {
+		synchronized (runLock) {
+			recentCheckRuns.addCheckRun(checkRun);
+		}
+		onCheckRunSaved(checkRun);
+	}
+
+	/**
+	 * Called outside of any lock with every CheckRun that was saved to the recent runs of
+	 * a check. The default passes it up to the App the check belongs to so that whatever
+	 * sits at the top, like the MonitorService, sees the runs of every check.
+	 */
+	protected void onCheckRunSaved(CheckRun checkRun) {
+		if (app != null && app != this) {
+			app.onCheckRunSaved(checkRun);
+		}
+	}
+
+	private void recordCircuitBreaker(CheckRun.Builder builder, boolean failed) {
+		if (circuitBreaker == null) {
+			return;
+		}
+		if (!failed) {
+			circuitBreaker.recordSuccess();
+			return;
+		}
+		if (builder.getStatus() == Status.SUCCEEDED) {
+			// allowedFailureDuration or a restart suppressed the failure, so it is not reported yet
+			return;
+		}
+		long openUntil = circuitBreaker.recordFailure(getFailingSince().toInstant().toEpochMilli(), runEndTimestamp);
+		if (openUntil > 0) {
+			log.warn("Check {} failed {} times in a row, not running it again until {}", getFullName(),
+				circuitBreaker.getConsecutiveFailures(), Instant.ofEpochMilli(openUntil));
+			builder.addContext("circuitOpenUntil", ZonedDateTime.ofInstant(Instant.ofEpochMilli(openUntil), ZoneId.systemDefault()));
+		}
+	}
+
 	@Override
 	public void init(Check check, @NonNull Configuration configuration, @NonNull App app, @NonNull String id) {
 		if (!initialized) {
@@ -227,11 +539,20 @@ public abstract class AbstractCheck implements Check {
 			if (timeoutMs == null) {
 				timeoutMs = app.getDefaultTimeoutMs();
 			}
+			if (staleWhileRevalidateMs == null) {
+				staleWhileRevalidateMs = app.getDefaultStaleWhileRevalidateMs();
+			}
 			if (timeoutMs < 0) {
 				RuntimeException e = new IllegalStateException("timeoutMs cannot be less than 0.");
 				log.error("timeoutMs is set to {}", timeoutMs, e);
 				throw e;
 			}
+			if (hedge != null && !supportsHedging()) {
+				RuntimeException e = new IllegalStateException("Check " + fullName + " of type " + getClass().getSimpleName()
+					+ " cannot be hedged since its runs cannot overlap");
+				log.error("hedge is set for {}", fullName, e);
+				throw e;
+			}
 			if (timeoutMs > configuration.getHardTimeoutMsLimit()) {
 				timeoutMs = configuration.getHardTimeoutMsLimit();
 			}
@@ -244,6 +565,7 @@ public abstract class AbstractCheck implements Check {
 			if (alias == null) {
 				alias = id;
 			}
+			resolveDependencies(app);
 			String defaultCheckRunMessage;
 			if (!active.isActive()) {
 				defaultCheckRunMessage = "Check is not active";
@@ -267,6 +589,9 @@ public abstract class AbstractCheck implements Check {
 				AbstractCheck abstractCheck = (AbstractCheck) check;
 				runEndTimestamp = abstractCheck.runEndTimestamp;
 				runStartTimestamp = abstractCheck.runStartTimestamp;
+				if (circuitBreaker != null && abstractCheck.circuitBreaker != null) {
+					circuitBreaker.copyState(abstractCheck.circuitBreaker);
+				}
 			}
 			tags = Collections.unmodifiableSet(tags);
 			initialized = true;
@@ -274,15 +599,57 @@ public abstract class AbstractCheck implements Check {
 		}
 	}
 
+	/**
+	 * Restores failingSince, restarting and the last run of a previous process. The
+	 * run timestamps are restored as well so the check stays cached as long as it would
+	 * have without the restart.
+	 */
+	@Override
+	public boolean restoreState(CheckState state) {
+		synchronized (runLock) {
+			if (!initialized || running || runEndTimestamp != 0) {
+				return false;
+			}
+			restarting = state.isRestarting();
+			if (state.hasRun()) {
+				clearFailingSince();
+				setFailingSince(state.getFailingSince());
+				runStartTimestamp = state.getRunStartEpochMs();
+				runEndTimestamp = state.getRunEndEpochMs();
+				recentCheckRuns.addCheckRun(state.toCheckRun(this));
+			}
+		}
+		log.debug("Restored the state of check {}", getFullName());
+		return true;
+	}
+
 	protected Status extension(CheckRun.Builder builder, RunContext context) {
 		// checks can extend other checks to get information
 		// or objects through the context
 		return Status.SUCCEEDED;
 	}
 
+	private void resolveDependencies(App app) {
+		if (dependsOn == null || dependsOn.isEmpty()) {
+			return;
+		}
+		if (app == this) {
+			throw new IllegalStateException("Check " + id + " declares dependsOn but is not part of an app");
+		}
+		List<Check> resolved = new ArrayList<>(dependsOn.size());
+		for (String dependency : dependsOn) {
+			Check dependencyCheck = app.getCheck(dependency);
+			if (dependencyCheck == null || dependencyCheck == this) {
+				throw new IllegalStateException("Check " + getFullName() + " depends on unknown check " + dependency);
+			}
+			resolved.add(dependencyCheck);
+		}
+		dependencies = Collections.unmodifiableList(resolved);
+	}
+
 	@Override
 	public Collection<Check> runAfterSuccess() {
-		return null;
+		return dependencies;
 	}
 
 	@Override
@@ -331,4 +698,24 @@ public abstract class AbstractCheck implements Check {
 	 */
 	protected abstract void doRun(CheckRun.Builder builder, RunContext context) throws InterruptedException;
 
+	/**
+	 * Checks that wait on other work, like an App waiting on its checks, can override
+	 * this to return before that work is done. The returned stage must complete once
+	 * the builder has been fully populated. The default implementation calls doRun()
+	 * on the current thread.
+	 *
+	 * @param builder
+	 * @return a CompletionStage that completes when the run is done
+	 */
+	protected CompletionStage<Void> doRunAsync(CheckRun.Builder builder, RunContext context) {
+		CompletableFuture<Void> future = new CompletableFuture<>();
+		try {
+			doRun(builder, context);
+			future.complete(null);
+		} catch (Exception e) {
+			future.completeExceptionally(e);
+		}
+		return future;
+	}
+
 }
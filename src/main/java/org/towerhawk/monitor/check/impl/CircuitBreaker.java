@@ -0,0 +1,91 @@
+package org.towerhawk.monitor.check.impl;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Stops running a check that keeps failing. Failures are counted per failingSince of the
+ * check, so only runs of the same outage count towards opening the circuit. Once
+ * failureThreshold of them have failed the circuit opens and the failing CheckRun is
+ * served without running the check. The check is probed again after a backoff that grows
+ * exponentially with every further failure, and a successful probe closes the circuit.
+ * Not thread safe, the owning check guards it with its run lock.
+ */
+@Getter
+@Setter
+public class CircuitBreaker {
+
+	/**
+	 * How many runs in a row need to fail before the circuit opens
+	 */
+	private int failureThreshold = 3;
+	private long initialBackoffMs = 5000;
+	private long maxBackoffMs = 300000;
+	private double backoffMultiplier = 2;
+	@JsonIgnore
+	@Setter(AccessLevel.NONE)
+	private int consecutiveFailures = 0;
+	/**
+	 * The failingSince of the outage consecutiveFailures belong to, 0 if there is none
+	 */
+	@JsonIgnore
+	@Setter(AccessLevel.NONE)
+	private long failingSinceMs = 0;
+	/**
+	 * Epoch millisecond until which the check is not run, 0 while the circuit is closed
+	 */
+	@JsonIgnore
+	@Setter(AccessLevel.NONE)
+	private long openUntil = 0;
+
+	public boolean isOpen(long nowMs) {
+		return openUntil > nowMs;
+	}
+
+	/**
+	 * @return true if the circuit opened during the current outage, so the next run of
+	 * the check is a probe
+	 */
+	public boolean isProbing() {
+		return openUntil != 0;
+	}
+
+	public void recordSuccess() {
+		consecutiveFailures = 0;
+		failingSinceMs = 0;
+		openUntil = 0;
+	}
+
+	/**
+	 * @param failingSinceMs When the check started failing
+	 * @param nowMs          When the failed run ended
+	 * @return The epoch millisecond the circuit is open until, or 0 if it stays closed
+	 */
+	public long recordFailure(long failingSinceMs, long nowMs) {
+		if (failingSinceMs != this.failingSinceMs) {
+			// a new outage, earlier failures were recovered from
+			consecutiveFailures = 0;
+			openUntil = 0;
+			this.failingSinceMs = failingSinceMs;
+		}
+		consecutiveFailures++;
+		int opened = consecutiveFailures - Math.max(failureThreshold, 1);
+		if (opened < 0) {
+			return 0;
+		}
+		double backoffMs = initialBackoffMs * Math.pow(backoffMultiplier, Math.min(opened, 62));
+		openUntil = nowMs + (long) Math.min(backoffMs, maxBackoffMs);
+		return openUntil;
+	}
+
+	/**
+	 * Keeps the state of the breaker of a check that is being replaced on a reload
+	 */
+	public void copyState(CircuitBreaker previous) {
+		consecutiveFailures = previous.consecutiveFailures;
+		failingSinceMs = previous.failingSinceMs;
+		openUntil = previous.openUntil;
+	}
+}
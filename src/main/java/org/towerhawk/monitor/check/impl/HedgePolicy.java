@@ -0,0 +1,31 @@
+package org.towerhawk.monitor.check.impl;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Configures hedged runs of a check. When a run takes longer than the given percentile
+ * of the check's recent successful durations a second attempt is started next to it and
+ * the first attempt to succeed is used. Each attempt gets its own copy of the RunContext.
+ * Only types whose doRun() can be called concurrently accept a hedge policy, which are
+ * http checks and port checks without a localPort.
+ */
+@Getter
+@Setter
+public class HedgePolicy {
+
+	/**
+	 * Percentile of recent successful durations after which a hedged attempt is started
+	 */
+	private double percentile = 95;
+	/**
+	 * How many recent successful runs are needed before hedging. Only as many runs as
+	 * org.towerhawk.check.recentChecks.sizeLimit are kept, so raise that for high
+	 * percentiles to mean much.
+	 */
+	private int minSamples = 5;
+	/**
+	 * Never hedge sooner than this after the run started
+	 */
+	private long minDelayMs = 50;
+}
@@ -4,19 +4,36 @@ import lombok.Getter;
 import lombok.Setter;
 import lombok.experimental.Accessors;
 import lombok.extern.slf4j.Slf4j;
+import org.towerhawk.monitor.check.Check;
 import org.towerhawk.monitor.check.run.CheckRun;
+import org.towerhawk.monitor.check.run.Status;
 
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Deque;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
+/**
+ * Keeps the most recent runs of a check in a ring buffer of parallel primitive arrays
+ * so that thousands of runs can be retained cheaply. Only the newest fullRunsLimit runs
+ * are also kept as the original CheckRun objects with their context and error. Older
+ * runs are rebuilt from the columns when getRecentCheckRuns() is called, without any
+ * context apart from the stale marker.
+ */
 @Slf4j
 @Accessors(chain = true)
 public class RecentCheckRun {
 
 	private static String propertyKey = "org.towerhawk.check.recentChecks.sizeLimit";
+	private static String fullRunsPropertyKey = "org.towerhawk.check.recentChecks.fullRunsLimit";
 	private static int defaultSizeLimit;
+	private static int fullRunsLimit;
 
 	static {
 		try {
@@ -25,48 +42,276 @@ public class RecentCheckRun {
 			log.error("Unable to read property {} defaulting to 10", propertyKey, e);
 			defaultSizeLimit = 10;
 		}
+		try {
+			fullRunsLimit = Math.max(Integer.valueOf(System.getProperty(fullRunsPropertyKey, "10")), 1);
+		} catch (Exception e) {
+			log.error("Unable to read property {} defaulting to 10", fullRunsPropertyKey, e);
+			fullRunsLimit = 10;
+		}
 	}
 
+	private static final byte NO_STATUS = -1;
+	private static final byte TIMED_OUT = 1;
+	private static final byte STALE = 2;
+	private static final long NO_TIME = Long.MIN_VALUE;
+	private static final Status[] STATUSES = Status.values();
+
 	@Getter
 	private int sizeLimit;
-	private Deque<CheckRun> recentCheckRuns;
+	// the oldest run is at head and the columns wrap around at sizeLimit
+	private long[] startEpochMs;
+	private long[] endEpochMs;
+	private long[] durationNanos;
+	private long[] failingSinceEpochMs;
+	private byte[] statuses;
+	private byte[] flags;
+	private int[] messageIds;
+	private int head = 0;
+	private int count = 0;
+	private final MessageTable messages = new MessageTable();
+	// the newest runs as they were added, oldest first
+	private final Deque<CheckRun> fullRuns = new ArrayDeque<>();
 	@Getter
 	@Setter
-	private CheckRun defaultCheckRun;
+	private volatile CheckRun defaultCheckRun;
+	// published separately so the most recent run can be read without any locking
+	private volatile CheckRun lastRun;
 
 	public RecentCheckRun() {
-		sizeLimit = defaultSizeLimit;
-		recentCheckRuns = new ArrayDeque<>(sizeLimit);
+		sizeLimit = Math.max(defaultSizeLimit, 1);
+		allocate(sizeLimit);
+	}
+
+	private void allocate(int capacity) {
+		startEpochMs = new long[capacity];
+		endEpochMs = new long[capacity];
+		durationNanos = new long[capacity];
+		failingSinceEpochMs = new long[capacity];
+		statuses = new byte[capacity];
+		flags = new byte[capacity];
+		messageIds = new int[capacity];
 	}
 
-	public RecentCheckRun setSizeLimit(int newSizelimit) {
-		sizeLimit = Math.max(newSizelimit, 1);
-		while (recentCheckRuns.size() > sizeLimit) {
-			recentCheckRuns.removeFirst().cleanUp();
+	public synchronized RecentCheckRun setSizeLimit(int newSizelimit) {
+		newSizelimit = Math.max(newSizelimit, 1);
+		if (newSizelimit == sizeLimit) {
+			return this;
 		}
+		while (count > newSizelimit) {
+			evictOldest();
+		}
+		long[] oldStart = startEpochMs;
+		long[] oldEnd = endEpochMs;
+		long[] oldDuration = durationNanos;
+		long[] oldFailingSince = failingSinceEpochMs;
+		byte[] oldStatuses = statuses;
+		byte[] oldFlags = flags;
+		int[] oldMessageIds = messageIds;
+		int oldCapacity = sizeLimit;
+		allocate(newSizelimit);
+		for (int i = 0; i < count; i++) {
+			int from = (head + i) % oldCapacity;
+			startEpochMs[i] = oldStart[from];
+			endEpochMs[i] = oldEnd[from];
+			durationNanos[i] = oldDuration[from];
+			failingSinceEpochMs[i] = oldFailingSince[from];
+			statuses[i] = oldStatuses[from];
+			flags[i] = oldFlags[from];
+			messageIds[i] = oldMessageIds[from];
+		}
+		head = 0;
+		sizeLimit = newSizelimit;
+		trimFullRuns();
 		return this;
 	}
 
-	public void addCheckRun(CheckRun checkRun) {
+	public synchronized void addCheckRun(CheckRun checkRun) {
 		if (checkRun != null) {
 			//if size == 1, this prevents returning null
 			defaultCheckRun = checkRun;
-			if (recentCheckRuns.size() >= sizeLimit) {
-				recentCheckRuns.removeFirst().cleanUp();
+			if (count >= sizeLimit) {
+				evictOldest();
 			}
-			recentCheckRuns.addLast(checkRun);
+			int index = (head + count) % sizeLimit;
+			startEpochMs[index] = toEpochMs(checkRun.getStartTime());
+			endEpochMs[index] = toEpochMs(checkRun.getEndTime());
+			durationNanos[index] = checkRun.getDuration() == null ? 0 : checkRun.getDuration().toNanos();
+			failingSinceEpochMs[index] = toEpochMs(checkRun.getFailingSince());
+			statuses[index] = checkRun.getStatus() == null ? NO_STATUS : (byte) checkRun.getStatus().ordinal();
+			flags[index] = (byte) ((checkRun.isTimedOut() ? TIMED_OUT : 0) | (isStale(checkRun) ? STALE : 0));
+			messageIds[index] = messages.intern(checkRun.getMessage());
+			count++;
+			fullRuns.addLast(checkRun);
+			trimFullRuns();
+			lastRun = checkRun;
+		}
+	}
+
+	private void evictOldest() {
+		messages.release(messageIds[head]);
+		head = (head + 1) % sizeLimit;
+		count--;
+	}
+
+	private void trimFullRuns() {
+		while (fullRuns.size() > Math.min(count, fullRunsLimit)) {
+			fullRuns.removeFirst().cleanUp();
 		}
 	}
 
 	public CheckRun getLastRun() {
-		CheckRun checkRun = recentCheckRuns.peekLast();
+		CheckRun checkRun = lastRun;
 		if (checkRun == null) {
 			checkRun = defaultCheckRun;
 		}
 		return checkRun;
 	}
 
-	public List<CheckRun> getRecentCheckRuns() {
-		return new ArrayList<CheckRun>(recentCheckRuns);
+	/**
+	 * @param percentile Between 0 and 100
+	 * @param minSamples How many successful runs are needed for a result
+	 * @return The nearest rank percentile of the durations of recent successful runs that
+	 * were not served stale, or -1 if there are fewer than minSamples of them
+	 */
+	public synchronized long getDurationPercentileMs(double percentile, int minSamples) {
+		long[] durations = new long[count];
+		int samples = 0;
+		byte succeeded = (byte) Status.SUCCEEDED.ordinal();
+		for (int i = 0; i < count; i++) {
+			int index = (head + i) % sizeLimit;
+			if (statuses[index] == succeeded && (flags[index] & STALE) == 0) {
+				durations[samples++] = durationNanos[index] / 1000000;
+			}
+		}
+		if (samples == 0 || samples < minSamples) {
+			return -1;
+		}
+		Arrays.sort(durations, 0, samples);
+		int rank = (int) Math.ceil(Math.min(Math.max(percentile, 0), 100) / 100 * samples);
+		return durations[Math.max(rank, 1) - 1];
+	}
+
+	/**
+	 * @return The mean duration of recent runs that were not served stale, or -1 if
+	 * there are none
+	 */
+	public synchronized long getMeanDurationMs() {
+		long totalNanos = 0;
+		int samples = 0;
+		for (int i = 0; i < count; i++) {
+			int index = (head + i) % sizeLimit;
+			if ((flags[index] & STALE) == 0) {
+				totalNanos += durationNanos[index];
+				samples++;
+			}
+		}
+		return samples == 0 ? -1 : totalNanos / samples / 1000000;
+	}
+
+	/**
+	 * @return The recent runs, oldest first. Runs older than the newest fullRunsLimit are
+	 * rebuilt from the columns so they carry no context or error.
+	 */
+	public synchronized List<CheckRun> getRecentCheckRuns() {
+		List<CheckRun> checkRuns = new ArrayList<>(count);
+		int rebuilt = count - fullRuns.size();
+		Check check = rebuilt > 0 ? fullRuns.peekFirst().getCheck() : null;
+		CheckRun previous = null;
+		for (int i = 0; i < rebuilt; i++) {
+			previous = rebuild((head + i) % sizeLimit, check, previous);
+			checkRuns.add(previous);
+		}
+		checkRuns.addAll(fullRuns);
+		return checkRuns;
+	}
+
+	private CheckRun rebuild(int index, Check check, CheckRun previous) {
+		CheckRun.Builder builder = CheckRun.builder(check, previous)
+			.message(messages.get(messageIds[index]))
+			.startTime(toZonedDateTime(startEpochMs[index]))
+			.endTime(toZonedDateTime(endEpochMs[index]))
+			.durationNanos(durationNanos[index])
+			.failingSince(toZonedDateTime(failingSinceEpochMs[index]))
+			.timedOut((flags[index] & TIMED_OUT) != 0);
+		if (statuses[index] != NO_STATUS) {
+			switch (STATUSES[statuses[index]]) {
+				case SUCCEEDED:
+					builder.forceSucceeded();
+					break;
+				case WARNING:
+					builder.forceWarning();
+					break;
+				case UNKNOWN:
+					builder.forceUnknown().unknownIsCritical(false);
+					break;
+				default:
+					builder.forceCritical();
+			}
+		}
+		if ((flags[index] & STALE) != 0) {
+			builder.addContext(CheckRun.STALE, true);
+		}
+		return builder.build();
+	}
+
+	private static boolean isStale(CheckRun checkRun) {
+		return checkRun.getContext() != null && checkRun.getContext().containsKey(CheckRun.STALE);
+	}
+
+	private static long toEpochMs(ZonedDateTime time) {
+		return time == null ? NO_TIME : time.toInstant().toEpochMilli();
+	}
+
+	private static ZonedDateTime toZonedDateTime(long epochMs) {
+		return epochMs == NO_TIME ? null : ZonedDateTime.ofInstant(Instant.ofEpochMilli(epochMs), ZoneId.systemDefault());
+	}
+
+	/**
+	 * Messages tend to repeat from run to run so each distinct message is stored once
+	 * and referenced by id. Ids are reference counted and reused once no run in the ring
+	 * buffer refers to them anymore.
+	 */
+	static class MessageTable {
+
+		static final int NO_MESSAGE = -1;
+
+		private final Map<String, Integer> ids = new HashMap<>();
+		private final Deque<Integer> freeIds = new ArrayDeque<>();
+		private String[] values = new String[8];
+		private int[] references = new int[8];
+		private int nextId = 0;
+
+		int intern(String message) {
+			if (message == null) {
+				return NO_MESSAGE;
+			}
+			Integer id = ids.get(message);
+			if (id == null) {
+				id = freeIds.isEmpty() ? nextId++ : freeIds.pop();
+				if (id >= values.length) {
+					values = Arrays.copyOf(values, values.length * 2);
+					references = Arrays.copyOf(references, references.length * 2);
+				}
+				values[id] = message;
+				ids.put(message, id);
+			}
+			references[id]++;
+			return id;
+		}
+
+		void release(int id) {
+			if (id == NO_MESSAGE) {
+				return;
+			}
+			if (--references[id] == 0) {
+				ids.remove(values[id]);
+				values[id] = null;
+				freeIds.push(id);
+			}
+		}
+
+		String get(int id) {
+			return id == NO_MESSAGE ? null : values[id];
+		}
 	}
 }
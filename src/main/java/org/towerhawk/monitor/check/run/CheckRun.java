@@ -14,6 +14,11 @@ import java.util.Map;
  */
 public interface CheckRun extends Comparable<CheckRun> {
 
+	/**
+	 * Context key of CheckRuns that were served from an earlier run instead of running
+	 */
+	String STALE = "stale";
+
 	/**
 	 * @return The status of this CheckRun.
 	 */
@@ -133,6 +138,18 @@ public interface CheckRun extends Comparable<CheckRun> {
 		return new Builder(checkRun);
 	}
 
+	/**
+	 * Returns a copy of checkRun with STALE in its context so that callers can tell it was
+	 * served from an earlier run instead of the check actually running.
+	 *
+	 * @param checkRun The CheckRun being served instead of running
+	 * @param reason   Why the check was not run
+	 * @return A copy of checkRun marked as stale
+	 */
+	static CheckRun stale(CheckRun checkRun, String reason) {
+		return builder(checkRun).addContext(STALE, reason).build();
+	}
+
 	class Builder {
 
 		private Status status = null; //Status.SUCCEEDED;
@@ -159,7 +176,10 @@ public interface CheckRun extends Comparable<CheckRun> {
 			this.status = source.getStatus();
 			this.error = source.getError();
 			this.message = source.getMessage();
-			this.context = source.getContext();
+			// copy so that adding context never changes the source CheckRun
+			if (source.getContext() != null) {
+				this.context.putAll(source.getContext());
+			}
 			this.duration = source.getDuration();
 			this.startTime = source.getStartTime();
 			this.endTime = source.getEndTime();
@@ -257,6 +277,16 @@ public interface CheckRun extends Comparable<CheckRun> {
 			return startTime;
 		}
 
+		/**
+		 * Starts this builder at the same time as another one, so the duration covers
+		 * everything since other started.
+		 */
+		public Builder startTime(Builder other) {
+			this.startTime = other.startTime;
+			this.startNanos = other.startNanos;
+			return this;
+		}
+
 		public Builder startTime(ZonedDateTime startTime) {
 			this.startTime = startTime;
 			return this;
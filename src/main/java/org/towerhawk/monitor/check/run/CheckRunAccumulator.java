@@ -1,6 +1,7 @@
 package org.towerhawk.monitor.check.run;
 
 import java.util.List;
+import java.util.concurrent.CompletionStage;
 
 public interface CheckRunAccumulator {
 
@@ -10,4 +11,10 @@ public interface CheckRunAccumulator {
 
 	void cancelChecks();
 
+	/**
+	 * @return A CompletionStage that completes with the same list as getChecks() once
+	 * every check has been accumulated.
+	 */
+	CompletionStage<List<CheckRun>> getCompletionStage();
+
 }
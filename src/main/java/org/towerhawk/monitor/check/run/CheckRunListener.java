@@ -0,0 +1,12 @@
+package org.towerhawk.monitor.check.run;
+
+/**
+ * Notified with each CheckRun as soon as it has been accumulated, before the rest of the
+ * checks in the same run have finished. Implementations are called from the threads that
+ * complete checks so they should return quickly and must be thread safe.
+ */
+@FunctionalInterface
+public interface CheckRunListener {
+
+	void onCheckRun(CheckRun checkRun);
+}
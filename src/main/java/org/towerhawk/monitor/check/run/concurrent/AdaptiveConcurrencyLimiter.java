@@ -0,0 +1,191 @@
+package org.towerhawk.monitor.check.run.concurrent;
+
+import lombok.extern.slf4j.Slf4j;
+import org.towerhawk.monitor.check.Check;
+import org.towerhawk.monitor.check.run.CheckRun;
+import org.towerhawk.spring.config.AdaptiveLimiterConfiguration;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Limits how many checks are in flight at once and adjusts that limit from how checks
+ * behave, AIMD style. Every check that finishes quickly while the limit is being used
+ * raises the limit by 1/limit, so about one per limit checks. A check that times out
+ * multiplies the limit by backoffRatio, at most once per decreaseCooldownMs. Checks that
+ * take longer than slowFraction of their timeout neither raise nor lower the limit.
+ * <p>
+ * Time spent waiting on the executor counts towards a check's latency, so this backs
+ * off when towerhawk itself is saturated as well as when the monitored targets are.
+ * Checks over the limit wait here in priority order without holding a thread, for no
+ * longer than their deadline.
+ */
+@Slf4j
+public class AdaptiveConcurrencyLimiter implements CheckRunDispatcher {
+
+	private final CheckRunDispatcher next;
+	private final AdaptiveLimiterConfiguration configuration;
+	private final PriorityQueue<Waiter> waiting = new PriorityQueue<>();
+	private double limit;
+	private int inFlight = 0;
+	private long sequence = 0;
+	private long lastDecrease = 0;
+	private long samples = 0;
+	private long timeouts = 0;
+	private long slow = 0;
+	private long expired = 0;
+	private long increases = 0;
+	private long decreases = 0;
+	private long lastLatencyMs = 0;
+	private String lastChange = "Started with the initial limit";
+
+	public AdaptiveConcurrencyLimiter(CheckRunDispatcher next, AdaptiveLimiterConfiguration configuration) {
+		this.next = next;
+		this.configuration = configuration;
+		this.limit = bound(configuration.getInitialLimit());
+	}
+
+	@Override
+	public void dispatch(ConcurrentCheckRunHandler handler) {
+		if (!configuration.isEnabled()) {
+			next.dispatch(handler);
+			return;
+		}
+		synchronized (this) {
+			if (inFlight >= (int) limit) {
+				waiting.add(new Waiter(handler, sequence++));
+				return;
+			}
+			inFlight++;
+		}
+		dispatchWithPermit(handler);
+	}
+
+	private void dispatchWithPermit(ConcurrentCheckRunHandler handler) {
+		long start = System.currentTimeMillis();
+		handler.getCompletion().whenComplete((checkRun, t) -> release(handler.getCheck(), checkRun, System.currentTimeMillis() - start));
+		next.dispatch(handler);
+	}
+
+	private void release(Check check, CheckRun checkRun, long latencyMs) {
+		List<ConcurrentCheckRunHandler> handlers;
+		List<ConcurrentCheckRunHandler> expiredHandlers = new ArrayList<>(0);
+		synchronized (this) {
+			onSample(check, checkRun, latencyMs);
+			inFlight--;
+			handlers = pollWaiting(expiredHandlers);
+		}
+		// completing a handler can dispatch others, so never while holding the lock
+		expiredHandlers.forEach(ConcurrentCheckRunHandler::timeout);
+		handlers.forEach(this::dispatchWithPermit);
+	}
+
+	/**
+	 * Handlers only wait here until their deadline, which started when they were
+	 * dispatched. Ones whose deadline passed while waiting are added to expiredHandlers
+	 * to be completed as timed out instead of being run.
+	 *
+	 * @return As many waiting handlers as the limit currently allows, which can be more
+	 * than one right after the limit was raised
+	 */
+	private List<ConcurrentCheckRunHandler> pollWaiting(List<ConcurrentCheckRunHandler> expiredHandlers) {
+		List<ConcurrentCheckRunHandler> handlers = new ArrayList<>(1);
+		while (inFlight < (int) limit && !waiting.isEmpty()) {
+			ConcurrentCheckRunHandler handler = waiting.poll().handler;
+			// handlers cancelled while they were waiting have already been accumulated
+			if (handler.isFinished()) {
+				continue;
+			}
+			if (handler.isExpired()) {
+				expired++;
+				expiredHandlers.add(handler);
+			} else {
+				inFlight++;
+				handlers.add(handler);
+			}
+		}
+		return handlers;
+	}
+
+	private void onSample(Check check, CheckRun checkRun, long latencyMs) {
+		samples++;
+		lastLatencyMs = latencyMs;
+		long now = System.currentTimeMillis();
+		if (checkRun != null && checkRun.isTimedOut()) {
+			timeouts++;
+			if (now - lastDecrease >= configuration.getDecreaseCooldownMs()) {
+				double previous = limit;
+				limit = bound(limit * configuration.getBackoffRatio());
+				lastDecrease = now;
+				decreases++;
+				lastChange = String.format("Decreased from %.1f to %.1f after %s timed out", previous, limit, check.getFullName());
+				log.info(lastChange);
+			}
+		} else if (latencyMs > check.getTimeoutMs() * configuration.getSlowFraction()) {
+			slow++;
+		} else if (inFlight * 2 >= limit) {
+			// only grow when the limit is actually being used
+			double previous = limit;
+			limit = bound(limit + 1.0 / limit);
+			if ((int) limit > (int) previous) {
+				increases++;
+				lastChange = String.format("Increased from %.1f to %.1f after %d fast checks", previous, limit, samples);
+				log.debug(lastChange);
+			}
+		}
+	}
+
+	private double bound(double value) {
+		return Math.max(configuration.getMinLimit(), Math.min(configuration.getMaxLimit(), value));
+	}
+
+	public synchronized int getLimit() {
+		return (int) limit;
+	}
+
+	public synchronized int getWaiting() {
+		return waiting.size();
+	}
+
+	public synchronized Map<String, Object> getStats() {
+		Map<String, Object> stats = new LinkedHashMap<>();
+		stats.put("enabled", configuration.isEnabled());
+		stats.put("limit", (int) limit);
+		stats.put("minLimit", configuration.getMinLimit());
+		stats.put("maxLimit", configuration.getMaxLimit());
+		stats.put("inFlight", inFlight);
+		stats.put("waiting", waiting.size());
+		stats.put("samples", samples);
+		stats.put("timeouts", timeouts);
+		stats.put("slow", slow);
+		stats.put("expiredWaiting", expired);
+		stats.put("increases", increases);
+		stats.put("decreases", decreases);
+		stats.put("lastLatencyMs", lastLatencyMs);
+		stats.put("lastChange", lastChange);
+		return stats;
+	}
+
+	private static class Waiter implements Comparable<Waiter> {
+
+		private final ConcurrentCheckRunHandler handler;
+		private final long sequence;
+
+		private Waiter(ConcurrentCheckRunHandler handler, long sequence) {
+			this.handler = handler;
+			this.sequence = sequence;
+		}
+
+		@Override
+		public int compareTo(Waiter o) {
+			int compare = handler.getCheck().compareTo(o.handler.getCheck());
+			if (compare == 0) {
+				compare = Long.compare(sequence, o.sequence);
+			}
+			return compare;
+		}
+	}
+}
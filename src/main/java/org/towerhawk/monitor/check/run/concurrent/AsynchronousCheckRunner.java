@@ -1,13 +1,30 @@
 package org.towerhawk.monitor.check.run.concurrent;
 
 import org.towerhawk.monitor.check.Check;
+import org.towerhawk.monitor.check.run.CheckRun;
 import org.towerhawk.monitor.check.run.CheckRunAccumulator;
 import org.towerhawk.monitor.check.run.CheckRunner;
 import org.towerhawk.monitor.check.run.context.RunContext;
 
 import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletionStage;
 
 public interface AsynchronousCheckRunner extends CheckRunner {
 
-	CheckRunAccumulator runChecksAsync(Collection<Check> checks, RunContext runContext);
+	/**
+	 * Submits the checks to be run and returns immediately.
+	 *
+	 * @return The accumulator that the CheckRuns will be collected in
+	 */
+	CheckRunAccumulator submitChecks(Collection<Check> checks, RunContext runContext);
+
+	/**
+	 * Runs the checks without holding the calling thread while they complete.
+	 *
+	 * @return A CompletionStage that completes once every check has been accumulated
+	 */
+	default CompletionStage<List<CheckRun>> runChecksAsync(Collection<Check> checks, RunContext runContext) {
+		return submitChecks(checks, runContext).getCompletionStage();
+	}
 }
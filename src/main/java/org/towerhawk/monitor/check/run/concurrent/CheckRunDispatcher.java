@@ -0,0 +1,15 @@
+package org.towerhawk.monitor.check.run.concurrent;
+
+/**
+ * Decides when and where a ConcurrentCheckRunHandler runs. Dispatchers can be chained,
+ * with each one holding on to a handler until it is allowed to continue to the next.
+ */
+public interface CheckRunDispatcher {
+
+	/**
+	 * Eventually runs handler. Implementations must not block the calling thread.
+	 *
+	 * @param handler The handler to run
+	 */
+	void dispatch(ConcurrentCheckRunHandler handler);
+}
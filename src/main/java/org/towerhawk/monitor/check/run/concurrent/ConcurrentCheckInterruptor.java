@@ -2,58 +2,65 @@ package org.towerhawk.monitor.check.run.concurrent;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.towerhawk.monitor.check.run.CheckRun;
 import org.towerhawk.spring.config.ConcurrentCheckInterruptorConfiguration;
 
 import javax.inject.Inject;
 import javax.inject.Named;
-import java.util.concurrent.CancellationException;
-import java.util.concurrent.ExecutionException;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.concurrent.PriorityBlockingQueue;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
 
 @Named
 public class ConcurrentCheckInterruptor implements Runnable, AutoCloseable {
 
 	private Logger log = LoggerFactory.getLogger(getClass());
-	private Thread runningThread;
-	private PriorityBlockingQueue<ConcurrentCheckRunHandler> checkRunHandlerQueue = new PriorityBlockingQueue<>();
-	private boolean running = true;
+	private final TimerWheel timerWheel;
+	private volatile boolean running = true;
 	private ConcurrentCheckInterruptorConfiguration configuration;
 	private ExecutorService interruptorService = Executors.newSingleThreadExecutor();
 
 	@Inject
 	public ConcurrentCheckInterruptor(ConcurrentCheckInterruptorConfiguration configuration) {
 		this.configuration = configuration;
+		this.timerWheel = new TimerWheel(configuration.getTickMs(), configuration.getWheelSize());
 		this.interruptorService.submit(this);
 	}
 
-	private void interrupt() {
-		if (log.isTraceEnabled()) {
-			log.trace("Interrupting thread {}", runningThread.getName());
-		}
-		runningThread.interrupt();
+	/**
+	 * Registers the handler's deadline with the timer wheel. This never blocks or
+	 * interrupts the interruptor thread.
+	 */
+	public void submit(ConcurrentCheckRunHandler handler) {
+		log.debug("Registering deadline for {}", handler.getCheck().getFullName());
+		handler.setTimeout(timerWheel.schedule(handler::timeout, handler.getTimeoutEpoch()));
 	}
 
-	private void submit(ConcurrentCheckRunHandler handler, boolean shouldInterrupt) {
-		log.debug("Adding handler for {}", handler.getCheck().getFullName());
-		boolean success = this.checkRunHandlerQueue.add(handler);
-		if (success && shouldInterrupt) {
-			interrupt();
-		}
+	public boolean remove(ConcurrentCheckRunHandler handler) {
+		log.debug("Removing deadline for {}", handler.getCheck().getFullName());
+		return handler.cancelTimeout();
 	}
 
-	public void submit(ConcurrentCheckRunHandler handler) {
-		submit(handler, true);
+	/**
+	 * Runs task on the interruptor thread once deadlineEpochMs has passed. The task
+	 * should not block since it holds up every other deadline.
+	 */
+	public TimerWheel.Timeout schedule(Runnable task, long deadlineEpochMs) {
+		return timerWheel.schedule(task, deadlineEpochMs);
 	}
 
-	public boolean remove(ConcurrentCheckRunHandler handler) {
-		log.debug("Removing handler for {}", handler.getCheck().getFullName());
-		return this.checkRunHandlerQueue.remove(handler);
+	public Map<String, Object> getStats() {
+		Map<String, Object> stats = new LinkedHashMap<>();
+		stats.put("running", running);
+		stats.put("tickMs", timerWheel.getTickMs());
+		stats.put("wheelSize", timerWheel.getWheelSize());
+		stats.put("pending", timerWheel.getPendingCount());
+		stats.put("scheduled", timerWheel.getScheduledCount());
+		stats.put("cancelled", timerWheel.getCancelledCount());
+		stats.put("expired", timerWheel.getExpiredCount());
+		stats.put("lateExpirations", timerWheel.getLateCount());
+		stats.put("maxLatenessMs", timerWheel.getMaxLatenessMs());
+		return stats;
 	}
 
 	@Override
@@ -62,50 +69,22 @@ public class ConcurrentCheckInterruptor implements Runnable, AutoCloseable {
 		Thread.currentThread().setPriority(configuration.getPriority());
 		log.info("Starting {} on thread {} with priority {}", getClass().getSimpleName(), Thread.currentThread().getName(), Thread.currentThread().getPriority());
 		while (running) {
-			runningThread = Thread.currentThread();
-			ConcurrentCheckRunHandler handler = null;
-			Future<CheckRun> future = null;
 			try {
-				log.trace("Polling for checks to timeout");
-				handler = checkRunHandlerQueue.poll(configuration.getPollMs(), TimeUnit.MILLISECONDS);
-
-				if (handler != null) {
-					future = handler.getCheckRunFuture();
-					if (future != null && !future.isDone()) {
-						long timeout = handler.getTimeUntilTimeout();
-						if (timeout > 0) {
-							log.debug("Waiting for {} to run for {} ms", handler.getCheck().getFullName(), timeout);
-							future.get(timeout, TimeUnit.MILLISECONDS);
-						} else {
-							log.warn("Cancelling {} without waiting", handler.getCheck().getFullName());
-							future.cancel(true);
-						}
-					}
+				long sleepMs = timerWheel.nextTickMs() - System.currentTimeMillis();
+				if (sleepMs > 0) {
+					Thread.sleep(sleepMs);
+				}
+				int expired = timerWheel.advance(System.currentTimeMillis());
+				if (expired > 0) {
+					log.debug("Expired {} deadlines", expired);
 				}
 			} catch (InterruptedException e) {
 				if (log.isTraceEnabled()) {
 					log.trace("Got interrupted on {}", Thread.currentThread().getName());
 				}
-				// either closing down or having an object added or removed so just loop again
-				if (handler != null) {
-					submit(handler, false);
-				}
-			} catch (ExecutionException e) {
-				log.warn("Check {} completed exceptionally", handler.getCheck().getFullName(), e);
-				// Do nothing since execution has finished
-			} catch (TimeoutException e) {
-				//future shouldn't be null since this can only happen when trying to wait for it to finish
-				log.info("Cancelling {} after waiting and getting a TimeoutException", handler.getCheck().getFullName());
-				future.cancel(true);
-			} catch (CancellationException e) {
-				log.warn("Check {} was cancelled while waiting on it", handler.getCheck().getFullName());
+				// only happens when closing down so just loop again to check running
 			} catch (Throwable t) {
-				String id = null;
-				if (handler != null) {
-					id = handler.getCheck().getFullName();
-				}
-				log.error("Caught unexpected exception for check {}", id, t);
-				handler.cancel();
+				log.error("Caught unexpected exception while advancing deadlines", t);
 			}
 		}
 	}
@@ -113,6 +92,6 @@ public class ConcurrentCheckInterruptor implements Runnable, AutoCloseable {
 	@Override
 	public void close() throws Exception {
 		running = false;
-		interrupt();
+		interruptorService.shutdownNow();
 	}
 }
@@ -1,57 +1,142 @@
 package org.towerhawk.monitor.check.run.concurrent;
 
 import lombok.extern.slf4j.Slf4j;
+import org.towerhawk.monitor.app.App;
 import org.towerhawk.monitor.check.Check;
 import org.towerhawk.monitor.check.run.CheckRun;
 import org.towerhawk.monitor.check.run.CheckRunAccumulator;
+import org.towerhawk.monitor.check.run.CheckRunListener;
 
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
+/**
+ * Collects the CheckRuns of a fixed set of checks. Each check gets its own slot, based on
+ * its position in the collection passed to the constructor once duplicates are removed,
+ * that is filled exactly once with a compare-and-set. Nothing is locked and runs that
+ * compare as equal are all kept.
+ */
 @Slf4j
 public class ConcurrentCheckRunAccumulator implements CheckRunAccumulator {
 
-	private Collection<CheckRun> checkRuns = new ConcurrentSkipListSet<>();
-	private Set<Check> checkSet = new LinkedHashSet<>();
-	private CountDownLatch latch;
-	private Collection<ConcurrentCheckRunHandler> handlers = new ConcurrentLinkedQueue<>();
+	private static final Object IGNORED = new Object();
+
+	private final Check[] checks;
+	// holds either a CheckRun or IGNORED once filled
+	private final AtomicReferenceArray<Object> checkRuns;
+	private final CountDownLatch latch;
+	private final Collection<ConcurrentCheckRunHandler> handlers = new ConcurrentLinkedQueue<>();
+	private final CompletableFuture<List<CheckRun>> completion = new CompletableFuture<>();
+	private final CheckRunListener listener;
+
+	public ConcurrentCheckRunAccumulator(Collection<Check> checks) {
+		this(checks, null);
+	}
+
+	public ConcurrentCheckRunAccumulator(Collection<Check> checks, CheckRunListener listener) {
+		this.listener = listener;
+		// duplicate checks would share a slot so only keep the first of each
+		Collection<Check> unique = new LinkedHashSet<>(checks);
+		this.checks = unique.toArray(new Check[unique.size()]);
+		this.checkRuns = new AtomicReferenceArray<>(this.checks.length);
+		latch = new CountDownLatch(this.checks.length);
+		if (this.checks.length == 0) {
+			completion.complete(getChecks());
+		}
+	}
+
+	/**
+	 * @return How many slots there are, one for each distinct check
+	 */
+	public int size() {
+		return checks.length;
+	}
+
+	/**
+	 * @return The check whose CheckRun goes in slot
+	 */
+	public Check getCheck(int slot) {
+		return checks[slot];
+	}
 
 	public void accumulate(CheckRun checkRun) {
-		log.debug("Accumulating CheckRun for {}", checkRun.getCheck().getFullName());
-		// Can throw a null-pointer exception that is difficult to track down
-		// since the main thread can end up waiting on this forever.
+		accumulate(checkRun.getCheck(), checkRun);
+	}
+
+	/**
+	 * Fills the slot of check, which has to be looked up. Prefer accumulate(int, CheckRun)
+	 * when the slot is known.
+	 */
+	public void accumulate(Check check, CheckRun checkRun) {
+		int slot = slotOf(check);
+		if (slot < 0) {
+			log.warn("Ignoring CheckRun for {} which is not part of this run", check.getFullName());
+			return;
+		}
+		accumulate(slot, checkRun);
+	}
+
+	/**
+	 * Fills slot. A null checkRun still fills the slot so that nothing ends up waiting on
+	 * its check forever.
+	 */
+	public void accumulate(int slot, CheckRun checkRun) {
 		try {
-			checkRuns.add(checkRun);
-			checkSet.remove(checkRun.getCheck());
+			if (log.isDebugEnabled()) {
+				log.debug("Accumulating CheckRun for {}", checks[slot].getFullName());
+			}
+			fill(slot, checkRun == null ? IGNORED : checkRun);
 		} catch (Exception e) {
-			log.error("Unable to accumulate check {}", checkRun.getCheck().getFullName());
-		} finally {
-			latch.countDown();
+			log.error("Unable to accumulate check {}", checks[slot].getFullName(), e);
 		}
 	}
 
 	public void ignore(Check check) {
-		try {
-			checkSet.remove(check);
-		} catch (Exception e) {
-			log.error("Unable to remove check {} from accumulator", check.getFullName(), e);
-		} finally {
+		int slot = slotOf(check);
+		if (slot >= 0) {
+			fill(slot, IGNORED);
+		}
+	}
+
+	private int slotOf(Check check) {
+		for (int i = 0; i < checks.length; i++) {
+			if (checks[i].equals(check)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private void fill(int slot, Object checkRun) {
+		if (checkRuns.compareAndSet(slot, null, checkRun)) {
+			// notify before counting down so listeners see every CheckRun before completion
+			if (listener != null && checkRun != IGNORED) {
+				notifyListener((CheckRun) checkRun);
+			}
 			latch.countDown();
+			if (latch.getCount() == 0) {
+				completion.complete(getChecks());
+			}
+		} else {
+			log.debug("Ignoring duplicate CheckRun for {}", checks[slot].getFullName());
 		}
 	}
 
-	public ConcurrentCheckRunAccumulator(Collection<Check> checks) {
-		checkSet.addAll(checks);
-		latch = new CountDownLatch(checkSet.size());
+	private void notifyListener(CheckRun checkRun) {
+		try {
+			listener.onCheckRun(checkRun);
+		} catch (Exception e) {
+			log.warn("CheckRunListener failed for {}", checkRun.getCheck().getFullName(), e);
+		}
 	}
 
 	@Override
@@ -60,7 +145,7 @@ public class ConcurrentCheckRunAccumulator implements CheckRunAccumulator {
 		try {
 			latch.await();
 		} catch (InterruptedException e) {
-			log.warn("Got interrupted waiting for checks {} to complete", checkSet.stream().map(Check::getFullName).collect(Collectors.toList()));
+			log.warn("Got interrupted waiting for checks {} to complete", getPendingChecks());
 			cancelChecks();
 		}
 		return getChecks();
@@ -68,12 +153,55 @@ public class ConcurrentCheckRunAccumulator implements CheckRunAccumulator {
 
 	@Override
 	public List<CheckRun> getChecks() {
-		List<CheckRun> checkRunList = new ArrayList<>(checkSet.size());
-		checkRunList.addAll(checkRuns);
+		List<CheckRun> checkRunList = new ArrayList<>(checkRuns.length());
+		for (int i = 0; i < checkRuns.length(); i++) {
+			Object checkRun = checkRuns.get(i);
+			if (checkRun != null && checkRun != IGNORED) {
+				checkRunList.add((CheckRun) checkRun);
+			}
+		}
 		Collections.sort(checkRunList);
 		return checkRunList;
 	}
 
+	/**
+	 * @return The full names of the checks that have not been accumulated yet
+	 */
+	public List<String> getPendingChecks() {
+		List<String> pending = new ArrayList<>();
+		for (int i = 0; i < checkRuns.length(); i++) {
+			if (checkRuns.get(i) == null) {
+				pending.add(checks[i].getFullName());
+			}
+		}
+		return pending;
+	}
+
+	/**
+	 * Fills the slot of every check that is still pending with its last CheckRun marked
+	 * as stale. The checks keep running and their results are dropped here once they
+	 * complete. Apps are left pending since they aggregate whatever their own checks
+	 * have by then.
+	 *
+	 * @return how many slots were filled
+	 */
+	public int expirePending(String reason) {
+		int expired = 0;
+		for (int i = 0; i < checkRuns.length(); i++) {
+			Check check = checks[i];
+			if (checkRuns.get(i) == null && !(check instanceof App)) {
+				accumulate(i, CheckRun.stale(check.getLastCheckRun(), reason));
+				expired++;
+			}
+		}
+		return expired;
+	}
+
+	@Override
+	public CompletionStage<List<CheckRun>> getCompletionStage() {
+		return completion;
+	}
+
 	public void addHandler(ConcurrentCheckRunHandler handler) {
 		handlers.add(handler);
 	}
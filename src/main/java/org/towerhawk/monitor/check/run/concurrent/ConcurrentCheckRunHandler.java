@@ -8,32 +8,85 @@ import org.towerhawk.monitor.check.run.CheckRun;
 import org.towerhawk.monitor.check.run.context.RunContext;
 
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 @Slf4j
-public class ConcurrentCheckRunHandler implements Callable<CheckRun>, Comparable<ConcurrentCheckRunHandler> {
+public class ConcurrentCheckRunHandler implements Callable<CheckRun> {
 
 	@Getter
 	private Check check;
-	private CheckRun checkRun = null;
+	// the slot of check in the accumulator
+	private final int slot;
+	private volatile CheckRun checkRun = null;
+	private volatile CompletableFuture<CheckRun> checkRunStage = null;
+	private final AtomicBoolean finished = new AtomicBoolean(false);
+	private final CompletableFuture<CheckRun> completion = new CompletableFuture<>();
+	private volatile boolean submitted = false;
+	private volatile boolean started = false;
 	private ConcurrentCheckRunAccumulator accumulator;
 	private ConcurrentCheckInterruptor interruptor;
-	private Future<CheckRun> checkRunFuture = null;
+	private volatile Future<CheckRun> checkRunFuture = null;
+	private volatile boolean cancelRequested = false;
 	private CountDownLatch latch = new CountDownLatch(1);
-	private long timeoutEpoch;
+	@Getter
+	private volatile long timeoutEpoch;
+	private volatile TimerWheel.Timeout timeout;
+	private volatile TimerWheel.Timeout hedgeTimeout;
+	private volatile ConcurrentCheckRunHandler hedge;
+	// the handler this one is a hedged attempt of, or null for a regular handler
+	private final ConcurrentCheckRunHandler hedged;
+	private CheckRunDispatcher dispatcher;
 	private RunContext runContext;
 
 	public ConcurrentCheckRunHandler(
 		@NonNull Check check,
+		int slot,
 		@NonNull ConcurrentCheckRunAccumulator accumulator,
 		@NonNull ConcurrentCheckInterruptor interruptor,
 		@NonNull RunContext runContext
+	) {
+		this(check, slot, accumulator, interruptor, runContext, null);
+	}
+
+	/**
+	 * @param slot       The slot of check in accumulator
+	 * @param dispatcher Hedged attempts of the check are dispatched with this, or never
+	 *                   started if it is null
+	 */
+	public ConcurrentCheckRunHandler(
+		@NonNull Check check,
+		int slot,
+		@NonNull ConcurrentCheckRunAccumulator accumulator,
+		@NonNull ConcurrentCheckInterruptor interruptor,
+		@NonNull RunContext runContext,
+		CheckRunDispatcher dispatcher
 	) {
 		this.check = check;
+		this.slot = slot;
 		this.accumulator = accumulator;
 		this.interruptor = interruptor;
 		this.runContext = runContext;
+		this.dispatcher = dispatcher;
+		this.hedged = null;
+	}
+
+	/**
+	 * Creates the handler of a hedged attempt of hedged. It shares the deadline of hedged
+	 * and hands its result to it instead of accumulating it.
+	 */
+	private ConcurrentCheckRunHandler(ConcurrentCheckRunHandler hedged) {
+		this.check = hedged.check;
+		this.slot = hedged.slot;
+		this.accumulator = hedged.accumulator;
+		this.interruptor = hedged.interruptor;
+		this.runContext = hedged.runContext;
+		this.hedged = hedged;
 	}
 
 	public void setCheckRunFuture(Future<CheckRun> checkRunFuture) {
@@ -41,6 +94,10 @@ public class ConcurrentCheckRunHandler implements Callable<CheckRun>, Comparable
 			log.debug("Setting future for {}", check.getFullName());
 			this.checkRunFuture = checkRunFuture;
 			latch.countDown();
+			// cancel() was called before the executor handed back the future
+			if (cancelRequested) {
+				checkRunFuture.cancel(true);
+			}
 		}
 	}
 
@@ -52,46 +109,227 @@ public class ConcurrentCheckRunHandler implements Callable<CheckRun>, Comparable
 		return this.checkRunFuture;
 	}
 
+	/**
+	 * Submits this handler to executorService. If the executor rejects it the handler
+	 * finishes immediately with the last CheckRun marked as stale so nothing waits on it.
+	 *
+	 * @return false if the executor rejected this handler
+	 */
+	public boolean submitTo(ExecutorService executorService) {
+		submitted = true;
+		try {
+			setCheckRunFuture(executorService.submit(this));
+			return true;
+		} catch (RejectedExecutionException e) {
+			log.warn("Executor rejected check {}, serving its last run", check.getFullName());
+			finish(CheckRun.stale(check.getLastCheckRun(), "Rejected since the check executor is full"));
+			return false;
+		}
+	}
+
+	/**
+	 * @return A stage that completes with the accumulated CheckRun once this handler has
+	 * finished, whether the check completed, timed out or was cancelled
+	 */
+	public CompletionStage<CheckRun> getCompletion() {
+		return completion;
+	}
+
+	public boolean isFinished() {
+		return finished.get();
+	}
+
 	public long getTimeUntilTimeout() {
 		return timeoutEpoch - System.currentTimeMillis();
 	}
 
+	/**
+	 * Starts the deadline of this handler. Called when the handler is dispatched so the
+	 * time it spends waiting in a dispatcher or on the executor counts towards it, and
+	 * a handler that is still waiting once the deadline passes is completed as timed out.
+	 */
+	void startTimeout() {
+		if (timeoutEpoch > 0) {
+			return;
+		}
+		if (hedged != null) {
+			timeoutEpoch = hedged.timeoutEpoch;
+		} else {
+			// never wait on a check past the deadline of the run it is part of
+			timeoutEpoch = System.currentTimeMillis() + Math.min(check.getTimeoutMs(), runContext.getRemainingMs());
+		}
+		log.debug("Submitting handler for check {} to interruptor", check.getFullName());
+		interruptor.submit(this);
+	}
+
+	/**
+	 * @return true once this handler's deadline has passed
+	 */
+	boolean isExpired() {
+		return timeoutEpoch > 0 && getTimeUntilTimeout() <= 0;
+	}
+
+	void setTimeout(TimerWheel.Timeout timeout) {
+		this.timeout = timeout;
+	}
+
+	boolean cancelTimeout() {
+		TimerWheel.Timeout t = timeout;
+		return t != null && t.cancel();
+	}
+
+	/**
+	 * Called by the interruptor once the deadline of this handler has passed.
+	 */
+	void timeout() {
+		log.info("Cancelling {} after reaching its deadline", check.getFullName());
+		cancel();
+	}
+
 	public void cancel() {
+		if (finished.get()) {
+			return;
+		}
 		log.warn("Cancelling check {}", check.getFullName());
-		try {
-			getCheckRunFuture().cancel(true);
-		} catch (InterruptedException e) {
-			log.warn("Got interrupted waiting for future of check {} to return", check.getFullName());
+		ConcurrentCheckRunHandler h = hedge;
+		if (h != null) {
+			h.cancel();
+		}
+		if (!submitted) {
+			// Still waiting to be dispatched so there is nothing to interrupt
+			finishNotStarted();
+			return;
+		}
+		// never wait on the future here since this runs on the interruptor thread, if it is
+		// not set yet setCheckRunFuture() cancels it instead
+		cancelRequested = true;
+		Future<CheckRun> future = checkRunFuture;
+		if (future != null) {
+			future.cancel(true);
+		}
+		if (!started) {
+			// Still queued on the executor so call() will never run
+			finishNotStarted();
+			return;
 		}
+		CompletableFuture<CheckRun> stage = checkRunStage;
+		if (stage != null && !stage.isDone()) {
+			// The thread that ran call() has already returned, so interrupting it does nothing.
+			// Stop waiting on the check and accumulate a timed out CheckRun instead.
+			finish(CheckRun.builder(check).timedOut(true).unknown()
+				.message("Timed out waiting for " + check.getFullName() + " to complete").build());
+		}
+	}
+
+	private void finishNotStarted() {
+		finish(CheckRun.builder(check).timedOut(true).unknown()
+			.message("Cancelled " + check.getFullName() + " before it started").build());
 	}
 
 	@Override
 	public CheckRun call() throws Exception {
-		timeoutEpoch = System.currentTimeMillis() + check.getTimeoutMs();
-		checkRun = null;
+		started = true;
+		if (finished.get()) {
+			log.debug("Not running check {} since it was cancelled", check.getFullName());
+			return checkRun;
+		}
+		if (hedged != null) {
+			runHedge();
+			return checkRun;
+		}
+		long now = System.currentTimeMillis();
 		try {
-			log.debug("Submitting handler for check {} to interruptor", check.getFullName());
-			interruptor.submit(this);
+			startTimeout();
+			scheduleHedge(now);
 			log.debug("Running check {}", check.getFullName());
-			checkRun = check.run(runContext);
+			checkRunStage = check.runAsync(runContext).toCompletableFuture();
 		} catch (Exception e) {
 			log.error("Check {} completed exceptionally", check.getFullName(), e);
-		} finally {
-			log.debug("Accumulating CheckRun for {}", check.getFullName());
-			//TODO figure out how to make this less hackish
-			if (checkRun == null) {
-				//Call getLastCheckRun since that should always be set inside of run()
-				checkRun = check.getLastCheckRun();
-			}
-			accumulator.accumulate(checkRun);
-			log.debug("Removing handler for check {} from interruptor", check.getFullName());
-			interruptor.remove(this);
+			finish(null);
+			return checkRun;
 		}
+		// Checks that complete asynchronously do not hold this thread while they wait
+		checkRunStage.whenComplete((c, t) -> {
+			if (t != null) {
+				log.error("Check {} completed exceptionally", check.getFullName(), t);
+			}
+			finish(c);
+		});
 		return checkRun;
 	}
 
-	@Override
-	public int compareTo(ConcurrentCheckRunHandler o) {
-		return Long.compare(this.timeoutEpoch, o.timeoutEpoch);
+	/**
+	 * Synchronous checks hold this thread until they complete, so the hedged attempt is
+	 * scheduled before the check is run and dispatched like any other handler. That way
+	 * it counts against the limits of the dispatchers and keeps the priority of the check.
+	 */
+	private void scheduleHedge(long now) {
+		long hedgeDelayMs = check.getHedgeDelayMs();
+		if (hedgeDelayMs >= 0 && dispatcher != null && now + hedgeDelayMs < timeoutEpoch) {
+			hedgeTimeout = interruptor.schedule(this::startHedge, now + hedgeDelayMs);
+		}
+	}
+
+	private void startHedge() {
+		if (finished.get()) {
+			return;
+		}
+		ConcurrentCheckRunHandler h = new ConcurrentCheckRunHandler(this);
+		hedge = h;
+		h.startTimeout();
+		dispatcher.dispatch(h);
+	}
+
+	private void runHedge() {
+		if (hedged.isFinished()) {
+			finish(null);
+			return;
+		}
+		CompletionStage<CheckRun> hedgeStage;
+		try {
+			hedgeStage = check.hedge(runContext);
+		} catch (Exception e) {
+			log.error("Hedged attempt of {} completed exceptionally", check.getFullName(), e);
+			finish(null);
+			return;
+		}
+		if (hedgeStage == null) {
+			// the run already completed or is hedged by someone else
+			finish(null);
+			return;
+		}
+		checkRunStage = hedgeStage.toCompletableFuture();
+		checkRunStage.whenComplete((c, t) -> {
+			hedged.finish(c);
+			finish(c);
+		});
+	}
+
+	private void finish(CheckRun run) {
+		if (!finished.compareAndSet(false, true)) {
+			return;
+		}
+		if (hedged != null) {
+			// only hedged accumulates, this just gives back whatever the attempt held
+			checkRun = run;
+			interruptor.remove(this);
+			completion.complete(run);
+			return;
+		}
+		log.debug("Accumulating CheckRun for {}", check.getFullName());
+		//TODO figure out how to make this less hackish
+		if (run == null) {
+			//Call getLastCheckRun since that should always be set inside of run()
+			run = check.getLastCheckRun();
+		}
+		checkRun = run;
+		accumulator.accumulate(slot, run);
+		log.debug("Removing handler for check {} from interruptor", check.getFullName());
+		interruptor.remove(this);
+		TimerWheel.Timeout hedge = hedgeTimeout;
+		if (hedge != null) {
+			hedge.cancel();
+		}
+		completion.complete(run);
 	}
 }
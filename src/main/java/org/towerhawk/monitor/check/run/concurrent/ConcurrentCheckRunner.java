@@ -1,19 +1,23 @@
 package org.towerhawk.monitor.check.run.concurrent;
 
 import lombok.Getter;
+import lombok.Setter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.towerhawk.monitor.app.App;
 import org.towerhawk.monitor.check.Check;
 import org.towerhawk.monitor.check.run.CheckRun;
+import org.towerhawk.monitor.check.run.context.DefaultRunContext;
 import org.towerhawk.monitor.check.run.context.RunContext;
+import org.towerhawk.monitor.check.run.schedule.RunStartHistogram;
 
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Future;
-import java.util.stream.Collectors;
+import java.util.concurrent.RejectedExecutionException;
 
 public class ConcurrentCheckRunner implements AsynchronousCheckRunner {
 
@@ -23,36 +27,143 @@ public class ConcurrentCheckRunner implements AsynchronousCheckRunner {
 	private final ExecutorService checkRunService;
 	@Getter
 	private final ConcurrentCheckInterruptor interruptor;
+	@Getter
+	private final CheckRunDispatcher dispatcher;
+	@Getter
+	private final OverloadGuard overloadGuard;
+	@Getter
+	@Setter
+	private LongestExpectedFirstOrdering ordering = null;
+	/**
+	 * Counts the runs this runner starts, whether a caller or the CheckScheduler asked for them
+	 */
+	@Getter
+	@Setter
+	private RunStartHistogram runStarts = null;
 
 	public ConcurrentCheckRunner(ConcurrentCheckInterruptor interruptor, ExecutorService checkRunService) {
+		this(interruptor, checkRunService, new ExecutorCheckRunDispatcher(checkRunService));
+	}
+
+	public ConcurrentCheckRunner(ConcurrentCheckInterruptor interruptor, ExecutorService checkRunService, CheckRunDispatcher dispatcher) {
+		this(interruptor, checkRunService, dispatcher, null);
+	}
+
+	public ConcurrentCheckRunner(
+		ConcurrentCheckInterruptor interruptor,
+		ExecutorService checkRunService,
+		CheckRunDispatcher dispatcher,
+		OverloadGuard overloadGuard
+	) {
 		this.interruptor = interruptor;
 		this.checkRunService = checkRunService;
+		this.dispatcher = dispatcher;
+		this.overloadGuard = overloadGuard;
+	}
+
+	/**
+	 * Completes the accumulator at budgetDeadline with whatever has finished by then.
+	 * Checks that are still running are not cancelled so they update their recent
+	 * CheckRuns for the next caller. The interruptor only hands the expiry over to the
+	 * check executor since completing the accumulator runs whatever continues from it.
+	 */
+	private void expireAtBudget(ConcurrentCheckRunAccumulator accumulator, long budgetDeadline) {
+		CompletableFuture<List<CheckRun>> completion = accumulator.getCompletionStage().toCompletableFuture();
+		if (completion.isDone()) {
+			return;
+		}
+		Runnable expire = () -> {
+			int expired = accumulator.expirePending("Still running when the budget of the run expired");
+			if (expired > 0) {
+				log.info("Budget expired with {} checks still running", expired);
+			}
+		};
+		TimerWheel.Timeout budget = interruptor.schedule(() -> executeExpiry(expire), budgetDeadline);
+		completion.whenComplete((checkRuns, t) -> budget.cancel());
+	}
+
+	private void executeExpiry(Runnable expire) {
+		try {
+			if (checkRunService instanceof PriorityThreadPoolExecutor) {
+				// ahead of the checks that are queued since callers are waiting on it
+				((PriorityThreadPoolExecutor) checkRunService).execute(expire, Byte.MAX_VALUE);
+			} else {
+				checkRunService.execute(expire);
+			}
+		} catch (RejectedExecutionException e) {
+			log.warn("Check executor rejected the expiry of a budget, running it on the common pool");
+			CompletableFuture.runAsync(expire);
+		}
+	}
+
+	/**
+	 * Reruns check in the background after a stale CheckRun was served for it. The run is
+	 * not tied to the request, so it is neither cut short by its deadline nor streamed
+	 * to its listener, and its result only fills the slot if nothing else did.
+	 */
+	private void revalidate(Check check, int slot, ConcurrentCheckRunAccumulator accumulator, RunContext runContext) {
+		DefaultRunContext revalidateContext = (DefaultRunContext) RunContext.duplicate(runContext);
+		revalidateContext.setDeadline(0).setCheckRunListener(null);
+		log.debug("Revalidating {} in the background", check.getFullName());
+		ConcurrentCheckRunHandler handler = new ConcurrentCheckRunHandler(check, slot, accumulator, interruptor, revalidateContext, dispatcher);
+		handler.startTimeout();
+		dispatcher.dispatch(handler);
 	}
 
 	@Override
-	public ConcurrentCheckRunAccumulator runChecksAsync(Collection<Check> checks, RunContext runContext) {
-		List<Check> checkList = new ArrayList<>(checks);
-		Collections.sort(checkList);
-		ConcurrentCheckRunAccumulator accumulator = new ConcurrentCheckRunAccumulator(checkList);
-		log.debug("Building handlers");
-		Collection<ConcurrentCheckRunHandler> handlers = checkList.stream().map(c -> new ConcurrentCheckRunHandler(c, accumulator, interruptor, runContext)).collect(Collectors.toList());
-		handlers.forEach(h -> {
-			if (h.getCheck().canRun()) {
-				log.debug("Submitting handler for {}", h.getCheck().getFullName());
-				Future<CheckRun> handlerFuture = checkRunService.submit(h);
-				h.setCheckRunFuture(handlerFuture);
-				accumulator.addHandler(h);
+	public ConcurrentCheckRunAccumulator submitChecks(Collection<Check> checks, RunContext runContext) {
+		List<Check> checkList;
+		if (ordering != null) {
+			checkList = ordering.order(checks);
+		} else {
+			checkList = new ArrayList<>(checks);
+			Collections.sort(checkList);
+		}
+		ConcurrentCheckRunAccumulator accumulator = new ConcurrentCheckRunAccumulator(checkList, runContext.getCheckRunListener());
+		long budgetDeadline = runContext.getBudgetDeadline();
+		long now = System.currentTimeMillis();
+		boolean budgetExpired = budgetDeadline > 0 && budgetDeadline <= now;
+		int started = 0;
+		// slots are filled by index so that nothing has to look up the slot of a check
+		for (int slot = 0; slot < accumulator.size(); slot++) {
+			Check check = accumulator.getCheck(slot);
+			// a running check is still submitted so the handler can subscribe to its result
+			boolean canRun = check.canRun(runContext) || (runContext.shouldRun() && check.isRunning());
+			if (canRun && overloadGuard != null && overloadGuard.shouldShed(check)) {
+				accumulator.accumulate(slot, overloadGuard.shed(check));
+			} else if (canRun && budgetExpired && !(check instanceof App)) {
+				// nobody is waiting on this run anymore so do not start it
+				accumulator.accumulate(slot, CheckRun.stale(check.getLastCheckRun(), "Not started since the budget of the run expired"));
+			} else if (canRun && !runContext.refreshCache() && check.canServeStale()) {
+				accumulator.accumulate(slot, CheckRun.stale(check.getLastCheckRun(), "Served while the check is revalidated"));
+				if (!check.isRunning()) {
+					revalidate(check, slot, accumulator, runContext);
+					started++;
+				}
+			} else if (canRun) {
+				log.debug("Dispatching handler for {}", check.getFullName());
+				ConcurrentCheckRunHandler handler = new ConcurrentCheckRunHandler(check, slot, accumulator, interruptor, runContext, dispatcher);
+				accumulator.addHandler(handler);
+				handler.startTimeout();
+				dispatcher.dispatch(handler);
+				started++;
 			} else { //Shortcut calling the shouldRun method just to get a cached result
-				accumulator.accumulate(h.getCheck().getLastCheckRun());
+				accumulator.accumulate(slot, check.getLastCheckRun());
 			}
-		});
+		}
+		if (runStarts != null && started > 0) {
+			runStarts.record(now, started);
+		}
+		if (budgetDeadline > 0 && !budgetExpired) {
+			expireAtBudget(accumulator, budgetDeadline);
+		}
 		log.debug("Returning accumulator");
 		return accumulator;
 	}
 
 	@Override
 	public List<CheckRun> runChecks(Collection<Check> checks, RunContext runContext) {
-		ConcurrentCheckRunAccumulator accumulator = runChecksAsync(checks, runContext);
+		ConcurrentCheckRunAccumulator accumulator = submitChecks(checks, runContext);
 		try {
 			return accumulator.waitForChecks();
 		} catch (InterruptedException e) {
@@ -0,0 +1,28 @@
+package org.towerhawk.monitor.check.run.concurrent;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Submits handlers straight to an ExecutorService. This is the last dispatcher in a chain.
+ */
+public class ExecutorCheckRunDispatcher implements CheckRunDispatcher {
+
+	private final ExecutorService executorService;
+	private final LongAdder rejected = new LongAdder();
+
+	public ExecutorCheckRunDispatcher(ExecutorService executorService) {
+		this.executorService = executorService;
+	}
+
+	@Override
+	public void dispatch(ConcurrentCheckRunHandler handler) {
+		if (!handler.submitTo(executorService)) {
+			rejected.increment();
+		}
+	}
+
+	public long getRejectedCount() {
+		return rejected.sum();
+	}
+}
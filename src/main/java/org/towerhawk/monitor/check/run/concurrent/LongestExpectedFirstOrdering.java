@@ -0,0 +1,124 @@
+package org.towerhawk.monitor.check.run.concurrent;
+
+import lombok.extern.slf4j.Slf4j;
+import org.towerhawk.monitor.check.Check;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Orders checks so that, within a priority, the ones expected to take longest are
+ * submitted first. When there are more checks than threads this keeps a long check from
+ * starting last and stretching the time until every check is done. Checks without any
+ * recorded duration are expected to take their full timeout.
+ * <p>
+ * Each ordering also estimates, from the same expected durations, how long the checks
+ * would take on the executor's threads in both this order and Check.compareTo() order,
+ * and keeps the difference as the time saved.
+ */
+@Slf4j
+public class LongestExpectedFirstOrdering {
+
+	private final ExecutorService executorService;
+	private final boolean enabled;
+	private final LongAdder orderings = new LongAdder();
+	private final LongAdder queuedOrderings = new LongAdder();
+	private final LongAdder baselineMakespanMs = new LongAdder();
+	private final LongAdder orderedMakespanMs = new LongAdder();
+	private final AtomicLong maxSavedMs = new AtomicLong();
+
+	public LongestExpectedFirstOrdering(ExecutorService executorService, boolean enabled) {
+		this.executorService = executorService;
+		this.enabled = enabled;
+	}
+
+	/**
+	 * @return A new list with checks in the order they should be submitted
+	 */
+	public List<Check> order(Collection<Check> checks) {
+		List<Check> baseline = new ArrayList<>(checks);
+		Collections.sort(baseline);
+		if (!enabled || baseline.size() < 2) {
+			return baseline;
+		}
+		Map<Check, Long> expected = new HashMap<>((int) (baseline.size() / 0.75f) + 1);
+		for (Check check : baseline) {
+			long expectedMs = check.getExpectedDurationMs();
+			expected.put(check, expectedMs < 0 ? check.getTimeoutMs() : expectedMs);
+		}
+		List<Check> ordered = new ArrayList<>(baseline);
+		ordered.sort(Comparator.<Check>comparingInt(c -> -c.getPriority())
+			.thenComparingLong(c -> -expected.get(c))
+			.thenComparing(Comparator.naturalOrder()));
+		record(baseline, ordered, expected);
+		return ordered;
+	}
+
+	private void record(List<Check> baseline, List<Check> ordered, Map<Check, Long> expected) {
+		orderings.increment();
+		int workers = getWorkers();
+		if (ordered.size() <= workers) {
+			// every check starts right away so the order cannot change when they finish
+			return;
+		}
+		queuedOrderings.increment();
+		long baselineMs = estimateMakespan(baseline, expected, workers);
+		long orderedMs = estimateMakespan(ordered, expected, workers);
+		baselineMakespanMs.add(baselineMs);
+		orderedMakespanMs.add(orderedMs);
+		maxSavedMs.accumulateAndGet(baselineMs - orderedMs, Math::max);
+		if (log.isDebugEnabled()) {
+			log.debug("Ordering {} checks on {} threads is expected to take {}ms instead of {}ms",
+				ordered.size(), workers, orderedMs, baselineMs);
+		}
+	}
+
+	/**
+	 * Greedy list scheduling, each check starts on the thread that frees up first.
+	 */
+	static long estimateMakespan(List<Check> checks, Map<Check, Long> expected, int workers) {
+		PriorityQueue<Long> threads = new PriorityQueue<>(workers);
+		for (int i = 0; i < workers; i++) {
+			threads.add(0L);
+		}
+		long makespan = 0;
+		for (Check check : checks) {
+			long end = threads.poll() + expected.get(check);
+			makespan = Math.max(makespan, end);
+			threads.add(end);
+		}
+		return makespan;
+	}
+
+	private int getWorkers() {
+		if (executorService instanceof ThreadPoolExecutor) {
+			return Math.max(((ThreadPoolExecutor) executorService).getMaximumPoolSize(), 1);
+		}
+		return Integer.MAX_VALUE;
+	}
+
+	public Map<String, Object> getStats() {
+		Map<String, Object> stats = new LinkedHashMap<>();
+		long baseline = baselineMakespanMs.sum();
+		long ordered = orderedMakespanMs.sum();
+		stats.put("enabled", enabled);
+		stats.put("orderings", orderings.sum());
+		stats.put("orderingsWithQueuedChecks", queuedOrderings.sum());
+		stats.put("estimatedBaselineMakespanMs", baseline);
+		stats.put("estimatedMakespanMs", ordered);
+		stats.put("estimatedSavedMs", baseline - ordered);
+		stats.put("maxEstimatedSavedMs", maxSavedMs.get());
+		return stats;
+	}
+}
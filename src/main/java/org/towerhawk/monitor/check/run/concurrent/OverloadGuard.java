@@ -0,0 +1,122 @@
+package org.towerhawk.monitor.check.run.concurrent;
+
+import lombok.extern.slf4j.Slf4j;
+import org.towerhawk.monitor.check.Check;
+import org.towerhawk.monitor.check.run.CheckRun;
+import org.towerhawk.spring.config.OverloadConfiguration;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decides when towerhawk is overloaded and what gets shed. While the check executor
+ * queue or the adaptive limiter is backed up, checks below shedBelowPriority are served
+ * from their last CheckRun marked as stale instead of being run. Requests that would run
+ * checks once maxConcurrentRequests are already in flight are answered from the last
+ * CheckRun as well, and only refused if there is nothing to answer with.
+ */
+@Slf4j
+public class OverloadGuard {
+
+	private final OverloadConfiguration configuration;
+	private final ExecutorService checkRunService;
+	private final AdaptiveConcurrencyLimiter limiter;
+	private final ExecutorCheckRunDispatcher executorDispatcher;
+	private final AtomicInteger activeRequests = new AtomicInteger();
+	private final LongAdder shedChecks = new LongAdder();
+	private final LongAdder rejectedRequests = new LongAdder();
+	private final LongAdder staleResponses = new LongAdder();
+
+	public OverloadGuard(
+		OverloadConfiguration configuration,
+		ExecutorService checkRunService,
+		AdaptiveConcurrencyLimiter limiter,
+		ExecutorCheckRunDispatcher executorDispatcher
+	) {
+		this.configuration = configuration;
+		this.checkRunService = checkRunService;
+		this.limiter = limiter;
+		this.executorDispatcher = executorDispatcher;
+	}
+
+	public boolean isSaturated() {
+		if (!configuration.isEnabled()) {
+			return false;
+		}
+		if (checkRunService instanceof ThreadPoolExecutor) {
+			BlockingQueue<Runnable> queue = ((ThreadPoolExecutor) checkRunService).getQueue();
+			int size = queue.size();
+			long capacity = (long) size + queue.remainingCapacity();
+			if (capacity > 0 && size >= capacity * configuration.getQueueHighWatermark()) {
+				return true;
+			}
+		}
+		return limiter != null && limiter.getWaiting() >= limiter.getLimit() * configuration.getLimiterWaitingRatio();
+	}
+
+	/**
+	 * @return true if check should be served from its last CheckRun instead of running
+	 */
+	public boolean shouldShed(Check check) {
+		return check.getPriority() < configuration.getShedBelowPriority() && isSaturated();
+	}
+
+	public CheckRun shed(Check check) {
+		shedChecks.increment();
+		log.debug("Shedding {} since towerhawk is overloaded", check.getFullName());
+		return CheckRun.stale(check.getLastCheckRun(), "Served from the last run since towerhawk is overloaded");
+	}
+
+	/**
+	 * Admits a request that will run checks. Every admitted request must be followed by
+	 * a call to releaseRequest().
+	 *
+	 * @return false if the request should not run checks
+	 */
+	public boolean tryAcquireRequest() {
+		if (!configuration.isEnabled()) {
+			return true;
+		}
+		if (activeRequests.incrementAndGet() > configuration.getMaxConcurrentRequests()) {
+			activeRequests.decrementAndGet();
+			rejectedRequests.increment();
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @return checkRun marked as stale, to answer a request that was not admitted with
+	 */
+	public CheckRun staleResponse(CheckRun checkRun) {
+		staleResponses.increment();
+		return CheckRun.stale(checkRun, "Served from the last run since too many requests are running checks");
+	}
+
+	public void releaseRequest() {
+		if (configuration.isEnabled()) {
+			activeRequests.decrementAndGet();
+		}
+	}
+
+	public int getRetryAfterSeconds() {
+		return configuration.getRetryAfterSeconds();
+	}
+
+	public Map<String, Object> getStats() {
+		Map<String, Object> stats = new LinkedHashMap<>();
+		stats.put("enabled", configuration.isEnabled());
+		stats.put("saturated", isSaturated());
+		stats.put("activeRequests", activeRequests.get());
+		stats.put("shedChecks", shedChecks.sum());
+		stats.put("rejectedRequests", rejectedRequests.sum());
+		stats.put("staleResponses", staleResponses.sum());
+		stats.put("rejectedExecutions", executorDispatcher == null ? 0 : executorDispatcher.getRejectedCount());
+		return stats;
+	}
+}
@@ -0,0 +1,210 @@
+package org.towerhawk.monitor.check.run.concurrent;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A ThreadPoolExecutor that takes queued checks in order of Check.getPriority() instead
+ * of the order they were submitted. Each level of priority is worth agingMs of waiting,
+ * so a task that has waited long enough is run before newer tasks of a higher priority
+ * and low priority checks are never starved. Tasks that are not checks have priority 0.
+ * <p>
+ * Must be created with a queue from createQueue(), or a SynchronousQueue if tasks are
+ * never queued.
+ */
+@Slf4j
+public class PriorityThreadPoolExecutor extends ThreadPoolExecutor {
+
+	private final long agingMs;
+	private final AtomicLong sequence = new AtomicLong();
+	private final Map<Byte, WaitStats> waitStats = new ConcurrentHashMap<>();
+
+	public PriorityThreadPoolExecutor(
+		int corePoolSize,
+		int maximumPoolSize,
+		long keepAliveSeconds,
+		BlockingQueue<Runnable> workQueue,
+		ThreadFactory threadFactory,
+		RejectedExecutionHandler handler,
+		long agingMs
+	) {
+		super(corePoolSize, maximumPoolSize, keepAliveSeconds, TimeUnit.SECONDS, workQueue, threadFactory, handler);
+		this.agingMs = agingMs;
+	}
+
+	/**
+	 * PriorityBlockingQueue is unbounded, which would stop the pool from ever growing
+	 * past corePoolSize, so this rejects offers once capacity is reached. The check and
+	 * the offer are not atomic, so concurrent offers can go slightly past capacity.
+	 *
+	 * @param capacity Greater than 0. Without a queue nothing waits to be ordered, so
+	 *                 use a SynchronousQueue instead.
+	 */
+	public static BlockingQueue<Runnable> createQueue(int capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("capacity must be greater than 0");
+		}
+		return new PriorityBlockingQueue<Runnable>() {
+			@Override
+			public boolean offer(Runnable runnable) {
+				return size() < capacity && super.offer(runnable);
+			}
+
+			@Override
+			public int remainingCapacity() {
+				return Math.max(0, capacity - size());
+			}
+		};
+	}
+
+	@Override
+	public void execute(Runnable command) {
+		if (!(command instanceof PriorityTask)) {
+			command = executedTask(command, (byte) 0);
+		}
+		super.execute(command);
+	}
+
+	/**
+	 * Runs command with priority instead of the priority 0 that other tasks get.
+	 */
+	public void execute(Runnable command, byte priority) {
+		super.execute(executedTask(command, priority));
+	}
+
+	/**
+	 * Wraps a Runnable passed to execute(). Nobody holds the Future of these tasks so
+	 * afterExecute() logs their failures.
+	 */
+	private PriorityTask<Void> executedTask(Runnable command, byte priority) {
+		PriorityTask<Void> task = new PriorityTask<>(command, null, priority);
+		task.logFailure = true;
+		return task;
+	}
+
+	@Override
+	protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable) {
+		byte priority = 0;
+		if (callable instanceof ConcurrentCheckRunHandler) {
+			priority = ((ConcurrentCheckRunHandler) callable).getCheck().getPriority();
+		}
+		return new PriorityTask<>(callable, priority);
+	}
+
+	@Override
+	protected <T> RunnableFuture<T> newTaskFor(Runnable runnable, T value) {
+		return new PriorityTask<>(runnable, value, (byte) 0);
+	}
+
+	@Override
+	protected void beforeExecute(Thread t, Runnable r) {
+		super.beforeExecute(t, r);
+		if (r instanceof PriorityTask) {
+			PriorityTask<?> task = (PriorityTask<?>) r;
+			waitStats.computeIfAbsent(task.priority, p -> new WaitStats())
+				.record(System.currentTimeMillis() - task.enqueuedAt);
+		}
+	}
+
+	@Override
+	protected void afterExecute(Runnable r, Throwable t) {
+		super.afterExecute(r, t);
+		if (r instanceof PriorityTask && ((PriorityTask<?>) r).logFailure) {
+			PriorityTask<?> task = (PriorityTask<?>) r;
+			if (task.isDone() && !task.isCancelled()) {
+				try {
+					task.get();
+				} catch (ExecutionException e) {
+					log.error("Task {} failed", task.command, e.getCause());
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+	}
+
+	public Map<String, Object> getStats() {
+		Map<String, Object> stats = new LinkedHashMap<>();
+		stats.put("agingMs", agingMs);
+		stats.put("poolSize", getPoolSize());
+		stats.put("activeCount", getActiveCount());
+		stats.put("queueSize", getQueue().size());
+		Map<Byte, Object> priorities = new TreeMap<>();
+		waitStats.forEach((k, v) -> priorities.put(k, v.getStats()));
+		stats.put("waitByPriority", priorities);
+		return stats;
+	}
+
+	private class PriorityTask<V> extends FutureTask<V> implements Comparable<PriorityTask<?>> {
+
+		private final byte priority;
+		private final long enqueuedAt = System.currentTimeMillis();
+		private final long seq = sequence.getAndIncrement();
+		private final long key;
+		private final Object command;
+		private boolean logFailure = false;
+
+		private PriorityTask(Callable<V> callable, byte priority) {
+			super(callable);
+			this.command = callable;
+			this.priority = priority;
+			this.key = enqueuedAt - priority * agingMs;
+		}
+
+		private PriorityTask(Runnable runnable, V value, byte priority) {
+			super(runnable, value);
+			this.command = runnable;
+			this.priority = priority;
+			this.key = enqueuedAt - priority * agingMs;
+		}
+
+		@Override
+		public int compareTo(PriorityTask<?> o) {
+			int compare = Long.compare(key, o.key);
+			if (compare == 0) {
+				compare = Long.compare(seq, o.seq);
+			}
+			return compare;
+		}
+	}
+
+	private static class WaitStats {
+
+		private final LongAdder count = new LongAdder();
+		private final LongAdder totalWaitMs = new LongAdder();
+		private final AtomicLong maxWaitMs = new AtomicLong();
+
+		private void record(long waitMs) {
+			count.increment();
+			totalWaitMs.add(waitMs);
+			maxWaitMs.accumulateAndGet(waitMs, Math::max);
+		}
+
+		private Map<String, Object> getStats() {
+			Map<String, Object> stats = new LinkedHashMap<>();
+			long c = count.sum();
+			long total = totalWaitMs.sum();
+			stats.put("count", c);
+			stats.put("totalWaitMs", total);
+			stats.put("averageWaitMs", c == 0 ? 0 : total / c);
+			stats.put("maxWaitMs", maxWaitMs.get());
+			return stats;
+		}
+	}
+}
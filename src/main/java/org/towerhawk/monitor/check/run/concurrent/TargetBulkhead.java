@@ -0,0 +1,167 @@
+package org.towerhawk.monitor.check.run.concurrent;
+
+import lombok.extern.slf4j.Slf4j;
+import org.towerhawk.spring.config.TargetBulkheadConfiguration;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Limits how many checks can run against the same target at once. Checks over the limit
+ * wait in a queue for their target instead of holding a thread from the shared executor,
+ * and are passed to the next dispatcher as soon as a check against that target finishes.
+ * Checks without a target are passed straight through.
+ */
+@Slf4j
+public class TargetBulkhead implements CheckRunDispatcher {
+
+	private final CheckRunDispatcher next;
+	private final TargetBulkheadConfiguration configuration;
+	private final Map<String, Target> targets = new ConcurrentHashMap<>();
+
+	public TargetBulkhead(CheckRunDispatcher next, TargetBulkheadConfiguration configuration) {
+		this.next = next;
+		this.configuration = configuration;
+	}
+
+	@Override
+	public void dispatch(ConcurrentCheckRunHandler handler) {
+		String key = handler.getCheck().getTarget();
+		if (!configuration.isEnabled() || key == null || key.isEmpty()) {
+			next.dispatch(handler);
+			return;
+		}
+		Target target = targets.computeIfAbsent(key.toLowerCase(), this::newTarget);
+		if (target.tryAcquire(handler)) {
+			dispatchWithPermit(target, handler);
+		} else {
+			log.debug("Queueing {} behind other checks against {}", handler.getCheck().getFullName(), key);
+		}
+	}
+
+	public Map<String, Object> getStats() {
+		Map<String, Object> stats = new LinkedHashMap<>();
+		stats.put("enabled", configuration.isEnabled());
+		stats.put("permitsPerTarget", configuration.getPermitsPerTarget());
+		Map<String, Object> targetStats = new TreeMap<>();
+		targets.forEach((k, v) -> targetStats.put(k, v.getStats()));
+		stats.put("targets", targetStats);
+		return stats;
+	}
+
+	private Target newTarget(String key) {
+		// targetPermits ignores the case of its keys
+		Integer permits = configuration.getTargetPermits().get(key);
+		if (permits == null) {
+			permits = configuration.getPermitsPerTarget();
+		}
+		return new Target(Math.max(1, permits));
+	}
+
+	private void dispatchWithPermit(Target target, ConcurrentCheckRunHandler handler) {
+		handler.getCompletion().whenComplete((c, t) -> release(target));
+		next.dispatch(handler);
+	}
+
+	private void release(Target target) {
+		ConcurrentCheckRunHandler handler;
+		while ((handler = target.releaseOrPoll()) != null) {
+			// handlers cancelled while they were queued have already been accumulated
+			if (handler.isFinished()) {
+				continue;
+			}
+			if (handler.isExpired()) {
+				// the deadline passed while queued so nobody is waiting on it to run anymore
+				target.expired();
+				handler.timeout();
+				continue;
+			}
+			dispatchWithPermit(target, handler);
+			return;
+		}
+	}
+
+	private static class Target {
+
+		private final int permits;
+		private final Deque<Waiter> waiting = new ArrayDeque<>();
+		private int active = 0;
+		private long dispatched = 0;
+		private long queued = 0;
+		private long expired = 0;
+		private long waited = 0;
+		private int maxQueueDepth = 0;
+		private long totalWaitMs = 0;
+		private long maxWaitMs = 0;
+
+		private Target(int permits) {
+			this.permits = permits;
+		}
+
+		private synchronized boolean tryAcquire(ConcurrentCheckRunHandler handler) {
+			if (active < permits) {
+				active++;
+				dispatched++;
+				return true;
+			}
+			waiting.addLast(new Waiter(handler, System.currentTimeMillis()));
+			queued++;
+			maxQueueDepth = Math.max(maxQueueDepth, waiting.size());
+			return false;
+		}
+
+		/**
+		 * Hands the permit of a finished handler to the next waiting handler, or gives it
+		 * back if nothing is waiting.
+		 *
+		 * @return The handler that now holds the permit or null if the permit was released
+		 */
+		private synchronized ConcurrentCheckRunHandler releaseOrPoll() {
+			Waiter waiter = waiting.pollFirst();
+			if (waiter == null) {
+				active--;
+				return null;
+			}
+			long waitMs = System.currentTimeMillis() - waiter.queuedAt;
+			waited++;
+			totalWaitMs += waitMs;
+			maxWaitMs = Math.max(maxWaitMs, waitMs);
+			dispatched++;
+			return waiter.handler;
+		}
+
+		private synchronized void expired() {
+			expired++;
+		}
+
+		private synchronized Map<String, Object> getStats() {
+			Map<String, Object> stats = new LinkedHashMap<>();
+			stats.put("permits", permits);
+			stats.put("active", active);
+			stats.put("queueDepth", waiting.size());
+			stats.put("maxQueueDepth", maxQueueDepth);
+			stats.put("dispatched", dispatched);
+			stats.put("queued", queued);
+			stats.put("expired", expired);
+			stats.put("totalWaitMs", totalWaitMs);
+			stats.put("maxWaitMs", maxWaitMs);
+			stats.put("averageWaitMs", waited == 0 ? 0 : totalWaitMs / waited);
+			return stats;
+		}
+	}
+
+	private static class Waiter {
+
+		private final ConcurrentCheckRunHandler handler;
+		private final long queuedAt;
+
+		private Waiter(ConcurrentCheckRunHandler handler, long queuedAt) {
+			this.handler = handler;
+			this.queuedAt = queuedAt;
+		}
+	}
+}
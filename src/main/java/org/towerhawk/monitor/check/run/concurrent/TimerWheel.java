@@ -0,0 +1,288 @@
+package org.towerhawk.monitor.check.run.concurrent;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A hashed timer wheel for deadlines. Scheduling and cancelling are O(1) and only touch
+ * lock-free queues so callers never need to wake up the thread that advances the wheel.
+ * All timeouts that fall into the same tick are expired together by advance(), which
+ * must only ever be called by a single thread.
+ */
+@Slf4j
+public class TimerWheel {
+
+	private static final int INIT = 0;
+	private static final int CANCELLED = 1;
+	private static final int EXPIRED = 2;
+
+	private final long tickMs;
+	private final long startMs;
+	private final int mask;
+	private final Bucket[] buckets;
+	private final Queue<Timeout> pendingTimeouts = new ConcurrentLinkedQueue<>();
+	private final Queue<Timeout> cancelledTimeouts = new ConcurrentLinkedQueue<>();
+	// only read and written by the thread calling advance()
+	private long currentTick = 0;
+
+	private final LongAdder scheduledCount = new LongAdder();
+	private final LongAdder cancelledCount = new LongAdder();
+	private final LongAdder expiredCount = new LongAdder();
+	private final LongAdder lateCount = new LongAdder();
+	private final AtomicLong maxLatenessMs = new AtomicLong();
+
+	public TimerWheel(long tickMs, int wheelSize) {
+		this(tickMs, wheelSize, System.currentTimeMillis());
+	}
+
+	public TimerWheel(long tickMs, int wheelSize, long startMs) {
+		if (tickMs <= 0) {
+			throw new IllegalArgumentException("tickMs must be greater than 0");
+		}
+		if (wheelSize <= 0 || wheelSize > (1 << 30)) {
+			throw new IllegalArgumentException("wheelSize must be between 1 and 2^30");
+		}
+		// round up to a power of two so that a mask can be used instead of modulus
+		int size = 1;
+		while (size < wheelSize) {
+			size <<= 1;
+		}
+		this.tickMs = tickMs;
+		this.startMs = startMs;
+		this.mask = size - 1;
+		this.buckets = new Bucket[size];
+		for (int i = 0; i < size; i++) {
+			buckets[i] = new Bucket();
+		}
+	}
+
+	/**
+	 * Schedules task to be run once deadlineEpochMs has passed. The task is run on the
+	 * thread calling advance() so it should not block.
+	 *
+	 * @param task            What to run when the deadline passes
+	 * @param deadlineEpochMs The deadline in milliseconds since the epoch
+	 * @return A Timeout that can be used to cancel the task
+	 */
+	public Timeout schedule(Runnable task, long deadlineEpochMs) {
+		Timeout timeout = new Timeout(task, deadlineEpochMs);
+		pendingTimeouts.add(timeout);
+		scheduledCount.increment();
+		return timeout;
+	}
+
+	/**
+	 * Moves the wheel forward to nowMs and runs every task whose deadline has passed.
+	 * Deadlines are rounded up to the next tick so tasks are never run early.
+	 *
+	 * @param nowMs The current time in milliseconds since the epoch
+	 * @return The number of tasks that were run
+	 */
+	public int advance(long nowMs) {
+		long targetTick = (nowMs - startMs) / tickMs;
+		transferPendingTimeouts();
+		removeCancelledTimeouts();
+		int expired = 0;
+		while (currentTick <= targetTick) {
+			expired += buckets[(int) (currentTick & mask)].expire(nowMs);
+			currentTick++;
+		}
+		return expired;
+	}
+
+	/**
+	 * @return The epoch millisecond at which the next tick should be processed
+	 */
+	public long nextTickMs() {
+		return startMs + currentTick * tickMs;
+	}
+
+	public long getTickMs() {
+		return tickMs;
+	}
+
+	public int getWheelSize() {
+		return buckets.length;
+	}
+
+	public long getPendingCount() {
+		return scheduledCount.sum() - cancelledCount.sum() - expiredCount.sum();
+	}
+
+	public long getScheduledCount() {
+		return scheduledCount.sum();
+	}
+
+	public long getCancelledCount() {
+		return cancelledCount.sum();
+	}
+
+	public long getExpiredCount() {
+		return expiredCount.sum();
+	}
+
+	/**
+	 * @return How many timeouts were run more than one tick after their deadline
+	 */
+	public long getLateCount() {
+		return lateCount.sum();
+	}
+
+	public long getMaxLatenessMs() {
+		return maxLatenessMs.get();
+	}
+
+	private void transferPendingTimeouts() {
+		Timeout timeout;
+		while ((timeout = pendingTimeouts.poll()) != null) {
+			if (timeout.state.get() != INIT) {
+				continue;
+			}
+			long deadlineTick = divideRoundingUp(timeout.deadlineEpochMs - startMs, tickMs);
+			timeout.remainingRounds = (deadlineTick - currentTick) / buckets.length;
+			long tick = Math.max(deadlineTick, currentTick);
+			buckets[(int) (tick & mask)].add(timeout);
+		}
+	}
+
+	private void removeCancelledTimeouts() {
+		Timeout timeout;
+		while ((timeout = cancelledTimeouts.poll()) != null) {
+			if (timeout.bucket != null) {
+				timeout.bucket.remove(timeout);
+			}
+		}
+	}
+
+	private static long divideRoundingUp(long dividend, long divisor) {
+		if (dividend <= 0) {
+			return dividend / divisor;
+		}
+		return (dividend + divisor - 1) / divisor;
+	}
+
+	public class Timeout {
+
+		private final Runnable task;
+		private final long deadlineEpochMs;
+		private final AtomicInteger state = new AtomicInteger(INIT);
+		private long remainingRounds;
+		private Bucket bucket;
+		private Timeout next;
+		private Timeout prev;
+
+		private Timeout(Runnable task, long deadlineEpochMs) {
+			this.task = task;
+			this.deadlineEpochMs = deadlineEpochMs;
+		}
+
+		public long getDeadlineEpochMs() {
+			return deadlineEpochMs;
+		}
+
+		public boolean isCancelled() {
+			return state.get() == CANCELLED;
+		}
+
+		public boolean isExpired() {
+			return state.get() == EXPIRED;
+		}
+
+		/**
+		 * Cancels this timeout. The timeout is only unlinked from the wheel on the next
+		 * call to advance() so this is safe to call from any thread.
+		 *
+		 * @return true if this call cancelled the timeout, false if it had already expired
+		 * or been cancelled
+		 */
+		public boolean cancel() {
+			if (!state.compareAndSet(INIT, CANCELLED)) {
+				return false;
+			}
+			cancelledCount.increment();
+			cancelledTimeouts.add(this);
+			return true;
+		}
+
+		private void expire(long nowMs) {
+			if (!state.compareAndSet(INIT, EXPIRED)) {
+				return;
+			}
+			expiredCount.increment();
+			long latenessMs = nowMs - deadlineEpochMs;
+			if (latenessMs > tickMs) {
+				lateCount.increment();
+			}
+			maxLatenessMs.accumulateAndGet(latenessMs, Math::max);
+			try {
+				task.run();
+			} catch (Throwable t) {
+				log.error("Timeout task threw an exception", t);
+			}
+		}
+	}
+
+	/**
+	 * A doubly linked list so that cancelled timeouts can be removed in constant time.
+	 */
+	private class Bucket {
+
+		private Timeout head;
+		private Timeout tail;
+
+		private void add(Timeout timeout) {
+			timeout.bucket = this;
+			if (head == null) {
+				head = tail = timeout;
+			} else {
+				tail.next = timeout;
+				timeout.prev = tail;
+				tail = timeout;
+			}
+		}
+
+		private Timeout remove(Timeout timeout) {
+			Timeout next = timeout.next;
+			if (timeout.prev != null) {
+				timeout.prev.next = next;
+			}
+			if (timeout.next != null) {
+				timeout.next.prev = timeout.prev;
+			}
+			if (timeout == head) {
+				head = next;
+			}
+			if (timeout == tail) {
+				tail = timeout.prev;
+			}
+			timeout.prev = null;
+			timeout.next = null;
+			timeout.bucket = null;
+			return next;
+		}
+
+		private int expire(long nowMs) {
+			int expired = 0;
+			Timeout timeout = head;
+			while (timeout != null) {
+				if (timeout.remainingRounds <= 0) {
+					Timeout next = remove(timeout);
+					if (timeout.state.get() == INIT) {
+						timeout.expire(nowMs);
+						expired++;
+					}
+					timeout = next;
+				} else {
+					timeout.remainingRounds--;
+					timeout = timeout.next;
+				}
+			}
+			return expired;
+		}
+	}
+}
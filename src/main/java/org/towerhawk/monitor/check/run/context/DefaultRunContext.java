@@ -1,5 +1,7 @@
 package org.towerhawk.monitor.check.run.context;
 
+import org.towerhawk.monitor.check.run.CheckRunListener;
+
 import java.util.HashMap;
 import java.util.Map;
 
@@ -7,8 +9,12 @@ public class DefaultRunContext implements RunContext {
 
 	private boolean run = true;
 	private boolean saveCheckRun = true;
+	private boolean refreshCache = false;
+	private long deadline = 0;
+	private long budgetDeadline = 0;
 	private Map<String, Object> context = new HashMap<>(2);
 	private CompletionManager completionManager;
+	private CheckRunListener checkRunListener;
 
 	@Override
 	public boolean shouldRun() {
@@ -31,6 +37,47 @@ public class DefaultRunContext implements RunContext {
 		return this;
 	}
 
+	@Override
+	public boolean refreshCache() {
+		return refreshCache;
+	}
+
+	public DefaultRunContext setRefreshCache(boolean refreshCache) {
+		this.refreshCache = refreshCache;
+		return this;
+	}
+
+	@Override
+	public long getDeadline() {
+		return deadline;
+	}
+
+	public DefaultRunContext setDeadline(long deadline) {
+		this.deadline = deadline;
+		return this;
+	}
+
+	@Override
+	public long getBudgetDeadline() {
+		return budgetDeadline;
+	}
+
+	@Override
+	public DefaultRunContext setBudgetDeadline(long budgetDeadline) {
+		this.budgetDeadline = budgetDeadline;
+		return this;
+	}
+
+	@Override
+	public CheckRunListener getCheckRunListener() {
+		return checkRunListener;
+	}
+
+	public DefaultRunContext setCheckRunListener(CheckRunListener checkRunListener) {
+		this.checkRunListener = checkRunListener;
+		return this;
+	}
+
 	@Override
 	public CompletionManager getCompletionManager() {
 		return completionManager;
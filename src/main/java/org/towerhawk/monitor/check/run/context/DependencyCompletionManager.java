@@ -0,0 +1,128 @@
+package org.towerhawk.monitor.check.run.context;
+
+import lombok.extern.slf4j.Slf4j;
+import org.towerhawk.monitor.check.Check;
+import org.towerhawk.monitor.check.run.CheckRun;
+import org.towerhawk.monitor.check.run.Status;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Orders the checks of an App by the checks they depend on, as returned by
+ * Check.runAfterSuccess(). Checks are run in waves where every check only depends on
+ * checks from earlier waves, and checks whose dependencies failed are not run at all.
+ */
+@Slf4j
+public class DependencyCompletionManager implements CompletionManager {
+
+	public static final String UPSTREAM = "upstream";
+
+	/**
+	 * @return true if any of checks depends on another check
+	 */
+	public static boolean hasDependencies(Collection<Check> checks) {
+		return checks.stream().anyMatch(c -> !dependencies(c).isEmpty());
+	}
+
+	/**
+	 * Makes sure the dependencies of the checks of an app do not contain a cycle. Nothing
+	 * is kept, the waves are worked out from runAfterSuccess() of the checks being run.
+	 *
+	 * @throws IllegalStateException if the dependencies contain a cycle
+	 */
+	@Override
+	public void registerChecks(String appId, Map<String, Check> checks) {
+		Map<Check, Boolean> visited = new HashMap<>();
+		for (Check check : checks.values()) {
+			visit(appId, check, visited, new ArrayDeque<>());
+		}
+	}
+
+	private void visit(String appId, Check check, Map<Check, Boolean> visited, Deque<String> path) {
+		Boolean finished = visited.get(check);
+		path.addLast(check.getId());
+		if (Boolean.FALSE.equals(finished)) {
+			throw new IllegalStateException("Dependency cycle in app " + appId + ": " + String.join(" -> ", path));
+		}
+		if (finished == null) {
+			visited.put(check, false);
+			for (Check dependency : dependencies(check)) {
+				visit(appId, dependency, visited, path);
+			}
+			visited.put(check, true);
+		}
+		path.removeLast();
+	}
+
+	/**
+	 * Splits checks into waves. Every check in a wave only depends on checks in earlier
+	 * waves or on checks that are not part of checks at all.
+	 *
+	 * @param checks The checks that are being run
+	 * @return The waves in the order they need to be run
+	 */
+	public List<List<Check>> getWaves(Collection<Check> checks) {
+		Set<Check> remaining = new LinkedHashSet<>(checks);
+		List<List<Check>> waves = new ArrayList<>();
+		while (!remaining.isEmpty()) {
+			List<Check> wave = new ArrayList<>();
+			for (Check check : remaining) {
+				if (dependencies(check).stream().noneMatch(remaining::contains)) {
+					wave.add(check);
+				}
+			}
+			if (wave.isEmpty()) {
+				// registerChecks() rejects cycles so this should never happen
+				throw new IllegalStateException("Unable to order checks with cyclic dependencies " + remaining);
+			}
+			remaining.removeAll(wave);
+			waves.add(wave);
+		}
+		return waves;
+	}
+
+	/**
+	 * Determines whether check can run given the CheckRuns of the waves before it.
+	 * Dependencies that were not part of this run are judged by their last CheckRun.
+	 *
+	 * @param check     The check about to be run
+	 * @param completed The CheckRuns of the checks that have run so far
+	 * @return null if check can run, otherwise an UNKNOWN CheckRun naming the dependency
+	 * that failed
+	 */
+	public CheckRun getUpstreamFailure(Check check, Map<Check, CheckRun> completed) {
+		for (Check dependency : dependencies(check)) {
+			CheckRun dependencyRun = completed.get(dependency);
+			if (dependencyRun == null) {
+				dependencyRun = dependency.getLastCheckRun();
+			}
+			if (dependencyRun != null && isFailure(dependencyRun)) {
+				log.debug("Not running {} since {} failed", check.getFullName(), dependency.getFullName());
+				return CheckRun.builder(check).unknownIsCritical(false).unknown()
+					.message("Upstream check " + dependency.getFullName() + " failed")
+					.addContext(UPSTREAM, dependency.getFullName()).build();
+			}
+		}
+		return null;
+	}
+
+	private static boolean isFailure(CheckRun checkRun) {
+		// checks skipped because of their own dependencies fail their dependents too
+		return checkRun.getStatus() == Status.CRITICAL
+			|| (checkRun.getContext() != null && checkRun.getContext().containsKey(UPSTREAM));
+	}
+
+	private static Collection<Check> dependencies(Check check) {
+		Collection<Check> dependencies = check.runAfterSuccess();
+		return dependencies == null ? Collections.emptyList() : dependencies;
+	}
+}
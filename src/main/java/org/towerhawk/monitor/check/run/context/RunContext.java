@@ -1,5 +1,7 @@
 package org.towerhawk.monitor.check.run.context;
 
+import org.towerhawk.monitor.check.run.CheckRunListener;
+
 import java.util.Map;
 
 public interface RunContext {
@@ -32,6 +34,50 @@ public interface RunContext {
 	 */
 	RunContext setSaveCheckRun(boolean saveCheckRun);
 
+	/**
+	 * Whether or not the check should run even if it is still cached. This allows a cache
+	 * to be refreshed before it expires so that callers are served from it instead of
+	 * waiting on a run.
+	 *
+	 * @return true if cached checks should run anyway
+	 */
+	boolean refreshCache();
+
+	/**
+	 * The absolute time in milliseconds since the epoch by which the caller needs a
+	 * result. Checks should not start once the deadline has passed and should size their
+	 * own timeouts so that they finish before it.
+	 *
+	 * @return the deadline or 0 if there is none
+	 */
+	long getDeadline();
+
+	/**
+	 * The absolute time in milliseconds since the epoch by which results should be
+	 * returned even if some checks are still running. Unlike getDeadline() nothing is cut
+	 * short, pending checks are reported with their last CheckRun and finish in the
+	 * background.
+	 *
+	 * @return the budget deadline or 0 if there is none
+	 */
+	long getBudgetDeadline();
+
+	RunContext setBudgetDeadline(long budgetDeadline);
+
+	/**
+	 * @return milliseconds until getDeadline(), or Long.MAX_VALUE if there is no deadline
+	 */
+	default long getRemainingMs() {
+		long deadline = getDeadline();
+		return deadline <= 0 ? Long.MAX_VALUE : deadline - System.currentTimeMillis();
+	}
+
+	/**
+	 * @return A listener to be notified with every CheckRun of this run as soon as it
+	 * completes, or null if nobody is listening
+	 */
+	CheckRunListener getCheckRunListener();
+
 	/**
 	 * @return the CompletionManager for this run
 	 */
@@ -71,8 +117,12 @@ public interface RunContext {
 		DefaultRunContext duplicate = new DefaultRunContext();
 		duplicate.setShouldrun(runContext.shouldRun());
 		duplicate.setSaveCheckRun(runContext.saveCheckRun());
+		duplicate.setRefreshCache(runContext.refreshCache());
 		duplicate.getContext().putAll(runContext.getContext());
 		duplicate.setCompletionContext(runContext.getCompletionManager());
+		duplicate.setCheckRunListener(runContext.getCheckRunListener());
+		duplicate.setDeadline(runContext.getDeadline());
+		duplicate.setBudgetDeadline(runContext.getBudgetDeadline());
 		return duplicate;
 	}
 
@@ -0,0 +1,153 @@
+package org.towerhawk.monitor.check.run.schedule;
+
+import lombok.extern.slf4j.Slf4j;
+import org.towerhawk.monitor.MonitorService;
+import org.towerhawk.monitor.app.App;
+import org.towerhawk.monitor.check.Check;
+import org.towerhawk.monitor.check.run.concurrent.AsynchronousCheckRunner;
+import org.towerhawk.monitor.check.run.concurrent.ConcurrentCheckRunner;
+import org.towerhawk.monitor.check.run.context.DefaultRunContext;
+import org.towerhawk.monitor.check.run.context.RunContext;
+import org.towerhawk.spring.config.CheckSchedulerConfiguration;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the cache of every check warm by running it again shortly before its cacheMs
+ * window runs out. Checks are submitted through the same AsynchronousCheckRunner that
+ * is used for individual checks so timeouts are still enforced by the interruptor.
+ * <p>
+ * When spreading is enabled every check gets a fixed phase offset within its cacheMs
+ * window derived from its full name, and is only refreshed at the start of its own slot.
+ * Checks that were loaded and first run together therefore drift apart after their first
+ * refresh instead of all expiring at the same instant forever.
+ */
+@Slf4j
+@Named
+public class CheckScheduler implements Runnable, AutoCloseable {
+
+	private final MonitorService monitorService;
+	private final AsynchronousCheckRunner checkRunner;
+	private final CheckSchedulerConfiguration configuration;
+	private final RunContext runContext = new DefaultRunContext().setRefreshCache(true);
+	private final RunStartHistogram runStarts;
+	private ScheduledExecutorService schedulerService;
+
+	@Inject
+	public CheckScheduler(MonitorService monitorService,
+												ConcurrentCheckRunner checkCheckRunner,
+												CheckSchedulerConfiguration configuration) {
+		this.monitorService = monitorService;
+		this.checkRunner = checkCheckRunner;
+		this.configuration = configuration;
+		this.runStarts = checkCheckRunner.getRunStarts();
+	}
+
+	@PostConstruct
+	public synchronized void start() {
+		if (configuration.isEnabled() && schedulerService == null) {
+			schedulerService = Executors.newSingleThreadScheduledExecutor(r -> {
+				Thread thread = new Thread(r, configuration.getThreadName());
+				thread.setDaemon(true);
+				thread.setPriority(configuration.getPriority());
+				return thread;
+			});
+			log.info("Starting {} with a tick of {} ms", getClass().getSimpleName(), configuration.getTickMs());
+			schedulerService.scheduleWithFixedDelay(this, configuration.getTickMs(), configuration.getTickMs(), TimeUnit.MILLISECONDS);
+		}
+	}
+
+	public boolean running() {
+		return schedulerService != null && !schedulerService.isShutdown();
+	}
+
+	@Override
+	public void run() {
+		// an exception thrown here would stop all future executions so catch everything
+		try {
+			long now = System.currentTimeMillis();
+			List<Check> dueChecks = new ArrayList<>();
+			for (Check app : monitorService.getChecks().values()) {
+				if (app instanceof App && app.isActive()) {
+					for (Check check : ((App) app).getChecks().values()) {
+						if (isDue(check, now)) {
+							dueChecks.add(check);
+						}
+					}
+				}
+			}
+			if (!dueChecks.isEmpty()) {
+				log.debug("Refreshing {} checks before their cache expires", dueChecks.size());
+				checkRunner.runChecksAsync(dueChecks, runContext.duplicate());
+			}
+		} catch (Exception e) {
+			log.error("Unable to schedule checks", e);
+		}
+	}
+
+	protected boolean isDue(Check check, long now) {
+		long cacheMs = check.getCacheMs();
+		if (cacheMs < configuration.getMinimumCacheMs() || !check.isActive() || check.isRunning()) {
+			return false;
+		}
+		if (configuration.isSpread()) {
+			// due once per slot, starting at the first tick after the slot opens
+			long lastStart = check.getLastCheckRun().getStartTime().toInstant().toEpochMilli();
+			return lastStart < slotStart(check, cacheMs, now);
+		}
+		long leadMs = Math.min(configuration.getRefreshLeadMs(), cacheMs / 2);
+		return check.getCachedForMs() <= leadMs;
+	}
+
+	/**
+	 * @return The start of the most recent slot of check at or before now
+	 */
+	static long slotStart(Check check, long cacheMs, long now) {
+		long phase = phaseOffset(check.getFullName(), cacheMs);
+		return now - Math.floorMod(now - phase, cacheMs);
+	}
+
+	/**
+	 * Deterministically maps key to an offset in [0, periodMs). The hash code is mixed
+	 * first since names like check1 and check2 would otherwise end up 1 ms apart.
+	 */
+	static long phaseOffset(String key, long periodMs) {
+		long h = key.hashCode();
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return Math.floorMod(h, periodMs);
+	}
+
+	public Map<String, Object> getStats() {
+		Map<String, Object> stats = new LinkedHashMap<>();
+		stats.put("running", running());
+		stats.put("spread", configuration.isSpread());
+		if (runStarts != null) {
+			stats.put("runStarts", runStarts.getStats(System.currentTimeMillis()));
+		}
+		return stats;
+	}
+
+	@Override
+	@PreDestroy
+	public synchronized void close() {
+		if (schedulerService != null) {
+			log.info("Stopping {}", getClass().getSimpleName());
+			schedulerService.shutdownNow();
+			schedulerService = null;
+		}
+	}
+}
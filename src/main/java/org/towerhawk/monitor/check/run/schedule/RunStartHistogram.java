@@ -0,0 +1,64 @@
+package org.towerhawk.monitor.check.run.schedule;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Counts how many check runs were started in each second over a sliding window so that
+ * bursts of runs starting at the same time are easy to spot.
+ */
+public class RunStartHistogram {
+
+	private final long[] seconds;
+	private final long[] counts;
+
+	public RunStartHistogram(int windowSeconds) {
+		if (windowSeconds <= 0) {
+			throw new IllegalArgumentException("windowSeconds must be greater than 0");
+		}
+		seconds = new long[windowSeconds];
+		counts = new long[windowSeconds];
+	}
+
+	public synchronized void record(long nowMs, int runs) {
+		long second = nowMs / 1000;
+		int index = (int) (second % seconds.length);
+		if (seconds[index] != second) {
+			seconds[index] = second;
+			counts[index] = 0;
+		}
+		counts[index] += runs;
+	}
+
+	/**
+	 * @param nowMs The current time in milliseconds since the epoch
+	 * @return The number of runs started in each second of the window, oldest first, along
+	 * with the max, mean and standard deviation of those counts
+	 */
+	public synchronized Map<String, Object> getStats(long nowMs) {
+		long now = nowMs / 1000;
+		List<Long> perSecond = new ArrayList<>(seconds.length);
+		long max = 0;
+		long sum = 0;
+		long sumOfSquares = 0;
+		for (long second = now - seconds.length + 1; second <= now; second++) {
+			int index = (int) (second % seconds.length);
+			long count = seconds[index] == second ? counts[index] : 0;
+			perSecond.add(count);
+			max = Math.max(max, count);
+			sum += count;
+			sumOfSquares += count * count;
+		}
+		double mean = (double) sum / seconds.length;
+		Map<String, Object> stats = new LinkedHashMap<>();
+		stats.put("windowSeconds", seconds.length);
+		stats.put("total", sum);
+		stats.put("max", max);
+		stats.put("mean", mean);
+		stats.put("stddev", Math.sqrt(Math.max(0, (double) sumOfSquares / seconds.length - mean * mean)));
+		stats.put("perSecond", perSecond);
+		return stats;
+	}
+}
@@ -21,6 +21,11 @@ import javax.management.remote.JMXConnector;
 import javax.management.remote.JMXConnectorFactory;
 import javax.management.remote.JMXServiceURL;
 import java.io.IOException;
+import java.io.Serializable;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.rmi.server.RMIClientSocketFactory;
+import java.util.HashMap;
 import java.util.Map;
 
 @Slf4j
@@ -30,6 +35,8 @@ import java.util.Map;
 @CheckType("jmx")
 public class JmxCheck extends AbstractCheck {
 
+	private static final String RMI_SOCKET_FACTORY = "com.sun.jndi.rmi.factory.socket";
+
 	/**
 	 * Takes precedences over host and port
 	 */
@@ -37,6 +44,8 @@ public class JmxCheck extends AbstractCheck {
 	private String host;
 	private int port = -1;
 	private transient String connectionString;
+	@Setter(AccessLevel.NONE)
+	private transient String target;
 	private transient JMXServiceURL serviceUrl;
 	private transient JMXConnector jmxConnector = null;
 	private transient MBeanServerConnection mbeanConn = null;
@@ -63,7 +72,11 @@ public class JmxCheck extends AbstractCheck {
 	@Override
 	protected void doRun(CheckRun.Builder builder, RunContext runContext) throws InterruptedException {
 		try {
-			maybeRefreshConnection();
+			if (isCircuitProbing()) {
+				// the connection was kept while the circuit was open, so reconnect to probe
+				connectionCreation = 0;
+			}
+			maybeRefreshConnection(getMsRemaining(true));
 			// now query to get the beans or whatever
 			Object attributeResult = getValueFromPath(mbeanConn.getAttribute(mbean, attribute), path);
 			Object baseAttributeResult = null;
@@ -84,15 +97,17 @@ public class JmxCheck extends AbstractCheck {
 				log.error("Unable to evaluate threshold for {} of class {}", attributeResult, attributeResult.getClass(), e);
 			}
 		} catch (Exception e) {
-			connectionCreation = 0; // force connection retry on next run
+			if (getCircuitBreaker() == null) {
+				connectionCreation = 0; // force connection retry on next run
+			}
 			log.error("Error while communicating with server {}", url, e);
 			builder.critical().error(e);
 		}
 	}
 
-	private void maybeRefreshConnection() {
+	private void maybeRefreshConnection(int timeoutMs) {
 		if (connectionCreation == 0 || System.currentTimeMillis() - connectionCreation > getConfiguration().getJMXConnectionRefreshMs()) {
-			refreshConnection();
+			refreshConnection(timeoutMs);
 		}
 	}
 
@@ -132,8 +147,12 @@ public class JmxCheck extends AbstractCheck {
 	}
 
 	protected final void refreshConnection() {
+		refreshConnection((int) getTimeoutMs());
+	}
+
+	protected final void refreshConnection(int timeoutMs) {
 		closeConnection();
-		createConnection();
+		createConnection(timeoutMs);
 		connectionCreation = System.currentTimeMillis();
 	}
 
@@ -147,9 +166,19 @@ public class JmxCheck extends AbstractCheck {
 		}
 	}
 
-	@SneakyThrows
 	protected final void createConnection() {
-		jmxConnector = JMXConnectorFactory.connect(serviceUrl, null);
+		createConnection((int) getTimeoutMs());
+	}
+
+	/**
+	 * Connects with sockets that give up after timeoutMs so that an unresponsive registry
+	 * cannot hold the check past its timeout or the deadline of the run.
+	 */
+	@SneakyThrows
+	protected final void createConnection(int timeoutMs) {
+		Map<String, Object> env = new HashMap<>();
+		env.put(RMI_SOCKET_FACTORY, new TimeoutRMIClientSocketFactory(timeoutMs));
+		jmxConnector = JMXConnectorFactory.connect(serviceUrl, env);
 		mbeanConn = jmxConnector.getMBeanServerConnection();
 		connectionCreation = System.currentTimeMillis();
 	}
@@ -167,6 +196,17 @@ public class JmxCheck extends AbstractCheck {
 			url = "localhost:" + port;
 		}
 		connectionString = "service:jmx:rmi:///jndi/rmi://" + url + "/jmxrmi";
+		if (host != null && !host.isEmpty()) {
+			target = host;
+		} else if (url != null) {
+			int portSeparator = url.lastIndexOf(':');
+			target = portSeparator > 0 ? url.substring(0, portSeparator) : url;
+		}
+	}
+
+	@Override
+	public String getTarget() {
+		return target;
 	}
 
 	private void resolveMbeanPath(Configuration configuration) {
@@ -214,6 +254,23 @@ public class JmxCheck extends AbstractCheck {
 		}
 	}
 
+	private static class TimeoutRMIClientSocketFactory implements RMIClientSocketFactory, Serializable {
+
+		private final int timeoutMs;
+
+		private TimeoutRMIClientSocketFactory(int timeoutMs) {
+			this.timeoutMs = timeoutMs;
+		}
+
+		@Override
+		public Socket createSocket(String host, int port) throws IOException {
+			Socket socket = new Socket();
+			socket.connect(new InetSocketAddress(host, port), timeoutMs);
+			socket.setSoTimeout(timeoutMs);
+			return socket;
+		}
+	}
+
 	@SneakyThrows
 	protected void setMbean(String name) {
 		this.mbean = new ObjectName(name);
@@ -15,6 +15,7 @@ import org.towerhawk.spring.config.Configuration;
 
 import java.io.IOException;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.Socket;
 
 @Slf4j
@@ -44,19 +45,35 @@ public class PortCheck extends AbstractCheck {
 		}
 	}
 
+	/**
+	 * Two attempts cannot bind the same localPort at once
+	 */
+	@Override
+	protected boolean supportsHedging() {
+		return localPort <= 0;
+	}
+
+	@Override
+	public String getTarget() {
+		return host;
+	}
+
 	@Override
 	protected void doRun(CheckRun.Builder builder, RunContext runContext) throws InterruptedException {
 		Socket socket = null;
 		long start = java.lang.System.currentTimeMillis();
 		try {
+			// connect with whatever is left of the timeout or the deadline of the run
+			int timeoutMs = getMsRemaining(true);
+			socket = new Socket();
 			if (localPort <= 0 || Configuration.DEFAULT_LOCAL_HOST.equals(localHost)) {
 				log.info("Running port check on {}:{}", host, port);
-				socket = new Socket(host, port);
 			} else {
 				log.info("Running port check on {}:{} from {}:{}", host, port, localHost, localPort);
 				InetAddress address = InetAddress.getByName(localHost);
-				socket = new Socket(host, port, address, localPort);
+				socket.bind(new InetSocketAddress(address, localPort));
 			}
+			socket.connect(new InetSocketAddress(host, port), timeoutMs);
 			Status status = getThreshold().evaluate(builder, java.lang.System.currentTimeMillis() - start);
 			if (status == Status.SUCCEEDED) {
 				//Only check output if the port is open and responding in time
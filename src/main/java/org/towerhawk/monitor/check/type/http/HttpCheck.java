@@ -1,5 +1,6 @@
 package org.towerhawk.monitor.check.type.http;
 
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
@@ -10,12 +11,15 @@ import org.apache.http.auth.Credentials;
 import org.apache.http.auth.UsernamePasswordCredentials;
 import org.apache.http.client.CredentialsProvider;
 import org.apache.http.client.HttpClient;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.protocol.HttpClientContext;
 import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.entity.ByteArrayEntity;
 import org.apache.http.impl.client.BasicCredentialsProvider;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.protocol.HttpContext;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.client.ClientHttpRequest;
 import org.springframework.http.client.ClientHttpResponse;
@@ -47,6 +51,10 @@ public class HttpCheck extends AbstractCheck {
 	protected boolean includeResponseInResult = true;
 
 	protected HttpComponentsClientHttpRequestFactory requestFactory;
+	@Setter(AccessLevel.NONE)
+	protected String target;
+	// a hedged attempt can be in flight next to the first one, each on its own thread
+	private final ThreadLocal<Integer> requestTimeoutMs = new ThreadLocal<>();
 
 	protected CloseableHttpClient configureHttpClient() {
 		HttpClientBuilder builder = HttpClients.custom();
@@ -69,8 +77,22 @@ public class HttpCheck extends AbstractCheck {
 		}
 	}
 
+	@Override
+	public String getTarget() {
+		return target;
+	}
+
+	/**
+	 * Each request gets its own timeout through requestTimeoutMs so attempts can overlap
+	 */
+	@Override
+	protected boolean supportsHedging() {
+		return true;
+	}
+
 	@Override
 	protected void doRun(CheckRun.Builder builder, RunContext context) throws InterruptedException {
+		requestTimeoutMs.set(getMsRemaining(true));
 		try (ClientHttpResponse response = getClientHttpRequest().execute(); ){
 			Threshold t = getThreshold();
 			String asString = IOUtils.toString(response.getBody(), StandardCharsets.UTF_8);
@@ -84,6 +106,8 @@ public class HttpCheck extends AbstractCheck {
 			}
 		} catch ( IOException e ) {
 			throw new IllegalStateException(e);
+		} finally {
+			requestTimeoutMs.remove();
 		}
 	}
 
@@ -99,9 +123,31 @@ public class HttpCheck extends AbstractCheck {
 		if ( !StringUtils.hasText(endpoint) ) {
 			endpoint = new StringBuilder("http://").append(configuration.getDefaultHost()).toString();
 		}
+		try {
+			target = new URI(endpoint).getHost();
+		} catch (URISyntaxException e) {
+			log.warn("Unable to determine the host of {} for {}", endpoint, id);
+		}
 
 		HttpClient client = configureHttpClient();
 		requestFactory = new HttpComponentsClientHttpRequestFactory(client) {
+			@Override
+			protected HttpContext createHttpContext(HttpMethod httpMethod, URI uri) {
+				// bound connecting and reading by what is left of the timeout or deadline
+				Integer timeoutMs = requestTimeoutMs.get();
+				if (timeoutMs == null || timeoutMs <= 0) {
+					// without a request config the client would wait forever
+					throw new IllegalStateException("No time left to request " + endpoint);
+				}
+				HttpClientContext context = HttpClientContext.create();
+				context.setRequestConfig(RequestConfig.custom()
+					.setConnectTimeout(timeoutMs)
+					.setConnectionRequestTimeout(timeoutMs)
+					.setSocketTimeout(timeoutMs)
+					.build());
+				return context;
+			}
+
 			@Override
 			protected void postProcessHttpRequest(HttpUriRequest request) {
 				if ( request instanceof HttpEntityEnclosingRequest) {
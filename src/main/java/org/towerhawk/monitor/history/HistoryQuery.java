@@ -0,0 +1,119 @@
+package org.towerhawk.monitor.history;
+
+import lombok.Getter;
+import org.towerhawk.monitor.check.Check;
+import org.towerhawk.monitor.check.run.CheckRun;
+import org.towerhawk.monitor.check.run.Status;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Reads the history of a check in a time range, optionally only the runs with certain
+ * statuses and downsampled to a number of points. The history store is read if it has
+ * a series for the check, otherwise the recent runs the check keeps itself are used.
+ */
+@Getter
+public class HistoryQuery {
+
+	/**
+	 * How many records are read from the history store at a time while streaming them
+	 */
+	static final int PAGE_SIZE = 1000;
+
+	private final long fromEpochMs;
+	private final long toEpochMs;
+	/**
+	 * null to match every status
+	 */
+	private final Set<Status> statuses;
+	/**
+	 * How many records are returned at most, the newest ones are kept
+	 */
+	private final int limit;
+	/**
+	 * How many points to downsample the duration series to, 0 to not downsample
+	 */
+	private final int downsample;
+	/**
+	 * How many records are read at most to downsample from, the newest ones are kept
+	 */
+	private final int maxRecords;
+
+	public HistoryQuery(long fromEpochMs, long toEpochMs, Collection<Status> statuses, int limit, int downsample, int maxRecords) {
+		this.fromEpochMs = fromEpochMs;
+		this.toEpochMs = toEpochMs;
+		this.statuses = statuses == null || statuses.isEmpty() ? null : EnumSet.copyOf(statuses);
+		this.limit = limit;
+		this.downsample = downsample;
+		this.maxRecords = maxRecords;
+	}
+
+	/**
+	 * Passes the matching records of check to consumer, oldest first. If there are more
+	 * than limit of them only the newest ones are passed. Without downsampling they are
+	 * written straight from the history store a page at a time, otherwise the newest
+	 * maxRecords are read and downsampled.
+	 */
+	public void run(Check check, HistoryStore historyStore, Consumer<HistoryRecord> consumer) {
+		if (downsample <= 0) {
+			readNewest(check, historyStore, limit, consumer);
+			return;
+		}
+		List<HistoryRecord> records = new ArrayList<>();
+		readNewest(check, historyStore, maxRecords, records::add);
+		newest(Lttb.downsample(records, downsample), limit).forEach(consumer);
+	}
+
+	/**
+	 * Passes the newest count matching records of check to consumer, oldest first. The
+	 * history store is counted first so the older records can be skipped while reading.
+	 */
+	private void readNewest(Check check, HistoryStore historyStore, int count, Consumer<HistoryRecord> consumer) {
+		String fullName = check.getFullName();
+		long[] matching = {0};
+		boolean stored = historyStore.isEnabled() && historyStore.scan(fullName, fromEpochMs, toEpochMs, record -> {
+			if (matches(record)) {
+				matching[0]++;
+			}
+			return true;
+		});
+		if (stored) {
+			long[] skip = {matching[0] - count};
+			int[] left = {count};
+			historyStore.scanPaged(fullName, fromEpochMs, toEpochMs, PAGE_SIZE, record -> {
+				if (!matches(record)) {
+					return true;
+				}
+				if (skip[0] > 0) {
+					skip[0]--;
+					return true;
+				}
+				consumer.accept(record);
+				return --left[0] > 0;
+			});
+			return;
+		}
+		List<HistoryRecord> records = new ArrayList<>();
+		for (CheckRun checkRun : check.getRecentCheckRuns()) {
+			HistoryRecord record = HistoryRecord.of(checkRun);
+			if (matches(record)) {
+				records.add(record);
+			}
+		}
+		newest(records, count).forEach(consumer);
+	}
+
+	private static List<HistoryRecord> newest(List<HistoryRecord> records, int count) {
+		return records.size() > count ? records.subList(records.size() - count, records.size()) : records;
+	}
+
+	private boolean matches(HistoryRecord record) {
+		return record.getEndEpochMs() >= fromEpochMs && record.getEndEpochMs() < toEpochMs
+			&& (statuses == null || statuses.contains(record.getStatus()));
+	}
+}
@@ -0,0 +1,40 @@
+package org.towerhawk.monitor.history;
+
+import lombok.Getter;
+import org.towerhawk.monitor.check.run.CheckRun;
+import org.towerhawk.monitor.check.run.Status;
+
+/**
+ * One run of a check as it is kept in the history store.
+ */
+@Getter
+public class HistoryRecord {
+
+	private final long endEpochMs;
+	private final long startEpochMs;
+	private final long durationNanos;
+	/**
+	 * null if the CheckRun had no status
+	 */
+	private final Status status;
+	private final boolean timedOut;
+	private final boolean stale;
+
+	public HistoryRecord(long endEpochMs, long startEpochMs, long durationNanos, Status status, boolean timedOut, boolean stale) {
+		this.endEpochMs = endEpochMs;
+		this.startEpochMs = startEpochMs;
+		this.durationNanos = durationNanos;
+		this.status = status;
+		this.timedOut = timedOut;
+		this.stale = stale;
+	}
+
+	public static HistoryRecord of(CheckRun checkRun) {
+		long endEpochMs = checkRun.getEndTime() == null ? System.currentTimeMillis() : checkRun.getEndTime().toInstant().toEpochMilli();
+		long startEpochMs = checkRun.getStartTime() == null ? endEpochMs : checkRun.getStartTime().toInstant().toEpochMilli();
+		boolean stale = checkRun.getContext() != null && checkRun.getContext().containsKey(CheckRun.STALE);
+		return new HistoryRecord(endEpochMs, startEpochMs,
+			checkRun.getDuration() == null ? 0 : checkRun.getDuration().toNanos(),
+			checkRun.getStatus(), checkRun.isTimedOut(), stale);
+	}
+}
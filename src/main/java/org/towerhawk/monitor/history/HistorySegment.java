@@ -0,0 +1,173 @@
+package org.towerhawk.monitor.history;
+
+import org.towerhawk.monitor.check.run.Status;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.Predicate;
+
+/**
+ * A memory mapped file holding a fixed number of fixed width records ordered by the
+ * time the run ended. The header keeps how many records have been written so a segment
+ * can be reopened after a restart. Not thread safe, HistorySeries guards its segments.
+ */
+class HistorySegment {
+
+	private static final int MAGIC = 0x54484853; // THHS
+	private static final int VERSION = 1;
+	static final int HEADER_SIZE = 32;
+	static final int RECORD_SIZE = 32;
+	private static final int COUNT_OFFSET = 12;
+
+	private static final int END_OFFSET = 0;
+	private static final int START_OFFSET = 8;
+	private static final int DURATION_OFFSET = 16;
+	private static final int STATUS_OFFSET = 24;
+	private static final int FLAGS_OFFSET = 25;
+
+	private static final byte NO_STATUS = -1;
+	private static final byte TIMED_OUT = 1;
+	private static final byte STALE = 2;
+	private static final Status[] STATUSES = Status.values();
+
+	private final Path path;
+	private final int capacity;
+	private final MappedByteBuffer buffer;
+	private int count;
+
+	private HistorySegment(Path path, int capacity, MappedByteBuffer buffer, int count) {
+		this.path = path;
+		this.capacity = capacity;
+		this.buffer = buffer;
+		this.count = count;
+	}
+
+	static HistorySegment create(Path path, int capacity) throws IOException {
+		MappedByteBuffer buffer = map(path, capacity);
+		buffer.putInt(0, MAGIC);
+		buffer.putInt(4, VERSION);
+		buffer.putInt(8, capacity);
+		buffer.putInt(COUNT_OFFSET, 0);
+		return new HistorySegment(path, capacity, buffer, 0);
+	}
+
+	static HistorySegment open(Path path) throws IOException {
+		int capacity;
+		try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "r")) {
+			if (file.length() < HEADER_SIZE || file.readInt() != MAGIC || file.readInt() != VERSION) {
+				throw new IOException("Not a history segment " + path);
+			}
+			capacity = file.readInt();
+		}
+		MappedByteBuffer buffer = map(path, capacity);
+		int count = Math.min(Math.max(buffer.getInt(COUNT_OFFSET), 0), capacity);
+		return new HistorySegment(path, capacity, buffer, count);
+	}
+
+	private static MappedByteBuffer map(Path path, int capacity) throws IOException {
+		try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+			return file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) capacity * RECORD_SIZE);
+		}
+	}
+
+	boolean isFull() {
+		return count >= capacity;
+	}
+
+	boolean isEmpty() {
+		return count == 0;
+	}
+
+	int getCount() {
+		return count;
+	}
+
+	Path getPath() {
+		return path;
+	}
+
+	long getSizeBytes() {
+		return HEADER_SIZE + (long) capacity * RECORD_SIZE;
+	}
+
+	long getFirstEndEpochMs() {
+		return count == 0 ? Long.MAX_VALUE : endAt(0);
+	}
+
+	long getLastEndEpochMs() {
+		return count == 0 ? Long.MIN_VALUE : endAt(count - 1);
+	}
+
+	/**
+	 * The record is written before the count in the header is raised so a crash never
+	 * leaves a counted record half written.
+	 */
+	void append(HistoryRecord record) {
+		int offset = HEADER_SIZE + count * RECORD_SIZE;
+		buffer.putLong(offset + END_OFFSET, record.getEndEpochMs());
+		buffer.putLong(offset + START_OFFSET, record.getStartEpochMs());
+		buffer.putLong(offset + DURATION_OFFSET, record.getDurationNanos());
+		buffer.put(offset + STATUS_OFFSET, record.getStatus() == null ? NO_STATUS : (byte) record.getStatus().ordinal());
+		buffer.put(offset + FLAGS_OFFSET, (byte) ((record.isTimedOut() ? TIMED_OUT : 0) | (record.isStale() ? STALE : 0)));
+		count++;
+		buffer.putInt(COUNT_OFFSET, count);
+	}
+
+	/**
+	 * Passes every record that ended in [fromEpochMs, toEpochMs) to consumer, oldest
+	 * first, until it returns false. The first record is found with a binary search.
+	 *
+	 * @return false if consumer asked to stop
+	 */
+	boolean read(long fromEpochMs, long toEpochMs, Predicate<HistoryRecord> consumer) {
+		int low = 0;
+		int high = count;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (endAt(mid) < fromEpochMs) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		for (int i = low; i < count && endAt(i) < toEpochMs; i++) {
+			if (!consumer.test(recordAt(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private long endAt(int index) {
+		return buffer.getLong(HEADER_SIZE + index * RECORD_SIZE + END_OFFSET);
+	}
+
+	private HistoryRecord recordAt(int index) {
+		int offset = HEADER_SIZE + index * RECORD_SIZE;
+		byte status = buffer.get(offset + STATUS_OFFSET);
+		byte flags = buffer.get(offset + FLAGS_OFFSET);
+		return new HistoryRecord(
+			buffer.getLong(offset + END_OFFSET),
+			buffer.getLong(offset + START_OFFSET),
+			buffer.getLong(offset + DURATION_OFFSET),
+			status >= 0 && status < STATUSES.length ? STATUSES[status] : null,
+			(flags & TIMED_OUT) != 0,
+			(flags & STALE) != 0);
+	}
+
+	void force() {
+		buffer.force();
+	}
+
+	/**
+	 * The mapping is released once the buffer is garbage collected, unlinking the file
+	 * before that is fine on the platforms towerhawk runs on.
+	 */
+	void delete() throws IOException {
+		Files.deleteIfExists(path);
+	}
+}
@@ -0,0 +1,179 @@
+package org.towerhawk.monitor.history;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * The history of a single check, kept as a directory of segments named after the end
+ * time of their first record so that they sort oldest first. Only the newest segment
+ * is ever appended to.
+ */
+@Slf4j
+class HistorySeries {
+
+	private static final String SUFFIX = ".seg";
+
+	private final String name;
+	private final Path directory;
+	private final int segmentRecords;
+	private final List<HistorySegment> segments = new ArrayList<>();
+	private long lastEndEpochMs = Long.MIN_VALUE;
+
+	HistorySeries(String name, Path directory, int segmentRecords) throws IOException {
+		this.name = name;
+		this.directory = directory;
+		this.segmentRecords = segmentRecords;
+		Files.createDirectories(directory);
+		List<Path> paths = new ArrayList<>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+			stream.forEach(paths::add);
+		}
+		paths.sort(null);
+		for (Path path : paths) {
+			try {
+				HistorySegment segment = HistorySegment.open(path);
+				segments.add(segment);
+				lastEndEpochMs = Math.max(lastEndEpochMs, segment.getLastEndEpochMs());
+			} catch (IOException e) {
+				log.error("Skipping unreadable history segment {}", path, e);
+			}
+		}
+	}
+
+	String getName() {
+		return name;
+	}
+
+	synchronized void append(HistoryRecord record) throws IOException {
+		// records are searched by end time so they need to stay in order even if the clock goes back
+		if (record.getEndEpochMs() < lastEndEpochMs) {
+			record = new HistoryRecord(lastEndEpochMs, record.getStartEpochMs(), record.getDurationNanos(),
+				record.getStatus(), record.isTimedOut(), record.isStale());
+		}
+		HistorySegment active = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+		if (active == null || active.isFull()) {
+			if (active != null) {
+				active.force();
+			}
+			Path path = directory.resolve(String.format("%019d%s", Math.max(record.getEndEpochMs(), 0), SUFFIX));
+			while (Files.exists(path)) {
+				path = directory.resolve(path.getFileName().toString().replace(SUFFIX, "") + "_" + SUFFIX);
+			}
+			active = HistorySegment.create(path, segmentRecords);
+			segments.add(active);
+			log.debug("Started history segment {} for {}", path, name);
+		}
+		active.append(record);
+		lastEndEpochMs = record.getEndEpochMs();
+	}
+
+	/**
+	 * Passes every record that ended in [fromEpochMs, toEpochMs) to consumer, oldest
+	 * first, until it returns false.
+	 */
+	synchronized void read(long fromEpochMs, long toEpochMs, Predicate<HistoryRecord> consumer) {
+		for (HistorySegment segment : segments) {
+			if (segment.getLastEndEpochMs() >= fromEpochMs && segment.getFirstEndEpochMs() < toEpochMs
+				&& !segment.read(fromEpochMs, toEpochMs, consumer)) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Same as read() except that records are read pageSize at a time and each page is
+	 * only passed to consumer after the series is unlocked again, so consumer may block
+	 * without holding up appends. Each page carries on after the last record of the one
+	 * before, skipping the records with the same end time that were already passed.
+	 */
+	void readPaged(long fromEpochMs, long toEpochMs, int pageSize, Predicate<HistoryRecord> consumer) {
+		long pageFromEpochMs = fromEpochMs;
+		int passed = 0;
+		List<HistoryRecord> page = new ArrayList<>(pageSize);
+		while (true) {
+			page.clear();
+			int[] skip = {passed};
+			read(pageFromEpochMs, toEpochMs, record -> {
+				// records are in order so the ones ending at pageFromEpochMs come first
+				if (skip[0] > 0) {
+					skip[0]--;
+					return true;
+				}
+				page.add(record);
+				return page.size() < pageSize;
+			});
+			for (HistoryRecord record : page) {
+				if (!consumer.test(record)) {
+					return;
+				}
+			}
+			if (page.size() < pageSize) {
+				return;
+			}
+			long lastEndEpochMs = page.get(pageSize - 1).getEndEpochMs();
+			int atLastEnd = 0;
+			for (int i = pageSize - 1; i >= 0 && page.get(i).getEndEpochMs() == lastEndEpochMs; i--) {
+				atLastEnd++;
+			}
+			passed = lastEndEpochMs == pageFromEpochMs ? passed + atLastEnd : atLastEnd;
+			pageFromEpochMs = lastEndEpochMs;
+		}
+	}
+
+	/**
+	 * Deletes segments whose newest record ended before minEndEpochMs, then the oldest
+	 * segments while the series is bigger than maxBytes. The segment being appended to
+	 * is always kept.
+	 *
+	 * @return how many segments were deleted
+	 */
+	synchronized int enforceRetention(long minEndEpochMs, long maxBytes) {
+		long totalBytes = 0;
+		for (HistorySegment segment : segments) {
+			totalBytes += segment.getSizeBytes();
+		}
+		int deleted = 0;
+		Iterator<HistorySegment> iterator = segments.iterator();
+		while (iterator.hasNext() && segments.size() > 1) {
+			HistorySegment segment = iterator.next();
+			boolean expired = !segment.isEmpty() && segment.getLastEndEpochMs() < minEndEpochMs;
+			if (!expired && totalBytes <= maxBytes) {
+				break;
+			}
+			try {
+				segment.delete();
+			} catch (IOException e) {
+				log.error("Unable to delete history segment {}", segment.getPath(), e);
+				break;
+			}
+			iterator.remove();
+			totalBytes -= segment.getSizeBytes();
+			deleted++;
+		}
+		return deleted;
+	}
+
+	synchronized long getSizeBytes() {
+		long totalBytes = 0;
+		for (HistorySegment segment : segments) {
+			totalBytes += segment.getSizeBytes();
+		}
+		return totalBytes;
+	}
+
+	synchronized int getSegmentCount() {
+		return segments.size();
+	}
+
+	synchronized void force() {
+		segments.forEach(HistorySegment::force);
+	}
+}
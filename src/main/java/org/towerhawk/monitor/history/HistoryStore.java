@@ -0,0 +1,232 @@
+package org.towerhawk.monitor.history;
+
+import lombok.extern.slf4j.Slf4j;
+import org.towerhawk.monitor.check.run.CheckRun;
+import org.towerhawk.monitor.check.run.CheckRunListener;
+import org.towerhawk.spring.config.HistoryConfiguration;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * An append only store of the runs of every check, one series per check full name. Runs
+ * are written as fixed width records to memory mapped segment files so weeks of history
+ * can be kept off heap and survive restarts. Segments are deleted once they are older
+ * than maxAgeHours or a series grows beyond maxBytesPerSeries.
+ */
+@Slf4j
+@Named
+public class HistoryStore implements CheckRunListener, AutoCloseable {
+
+	private final HistoryConfiguration configuration;
+	private final Map<String, HistorySeries> series = new ConcurrentHashMap<>();
+	private final LongAdder appended = new LongAdder();
+	private final LongAdder failedAppends = new LongAdder();
+	private final LongAdder deletedSegments = new LongAdder();
+	private Path directory;
+	private ScheduledExecutorService retentionService;
+
+	@Inject
+	public HistoryStore(HistoryConfiguration configuration) {
+		this.configuration = configuration;
+	}
+
+	@PostConstruct
+	public synchronized void start() {
+		if (!configuration.isEnabled() || retentionService != null) {
+			return;
+		}
+		directory = Paths.get(configuration.getDirectory());
+		try {
+			Files.createDirectories(directory);
+			try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, Files::isDirectory)) {
+				for (Path seriesDirectory : stream) {
+					String name = decode(seriesDirectory.getFileName().toString());
+					series.put(name, new HistorySeries(name, seriesDirectory, configuration.getSegmentRecords()));
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("Unable to open history directory " + directory, e);
+		}
+		log.info("Opened history store in {} with {} series", directory, series.size());
+		retentionService = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, configuration.getThreadName());
+			thread.setDaemon(true);
+			return thread;
+		});
+		retentionService.scheduleWithFixedDelay(this::enforceRetention, 0, configuration.getRetentionIntervalMs(), TimeUnit.MILLISECONDS);
+	}
+
+	public boolean isEnabled() {
+		return configuration.isEnabled() && directory != null;
+	}
+
+	/**
+	 * Appends checkRun to the series of its check. Never throws so a full disk cannot
+	 * fail a check run.
+	 */
+	@Override
+	public void onCheckRun(CheckRun checkRun) {
+		if (!isEnabled() || checkRun.getCheck() == null) {
+			return;
+		}
+		try {
+			getOrCreateSeries(checkRun.getCheck().getFullName()).append(HistoryRecord.of(checkRun));
+			appended.increment();
+		} catch (Exception e) {
+			failedAppends.increment();
+			log.warn("Unable to record history of {}", checkRun.getCheck().getFullName(), e);
+		}
+	}
+
+	/**
+	 * Passes every recorded run of the check named fullName that ended in
+	 * [fromEpochMs, toEpochMs) to consumer, oldest first.
+	 *
+	 * @return false if there is no history for fullName
+	 */
+	public boolean read(String fullName, long fromEpochMs, long toEpochMs, Consumer<HistoryRecord> consumer) {
+		return scan(fullName, fromEpochMs, toEpochMs, record -> {
+			consumer.accept(record);
+			return true;
+		});
+	}
+
+	/**
+	 * Same as read() except that consumer can return false to stop reading. The series
+	 * is locked while it is read so consumer must not block.
+	 *
+	 * @return false if there is no history for fullName
+	 */
+	public boolean scan(String fullName, long fromEpochMs, long toEpochMs, Predicate<HistoryRecord> consumer) {
+		HistorySeries historySeries = series.get(fullName);
+		if (historySeries == null) {
+			return false;
+		}
+		historySeries.read(fromEpochMs, toEpochMs, consumer);
+		return true;
+	}
+
+	/**
+	 * Same as scan() except that the series is only locked while a page of pageSize
+	 * records is read, so consumer may block, e.g. on writing to a slow client.
+	 *
+	 * @return false if there is no history for fullName
+	 */
+	public boolean scanPaged(String fullName, long fromEpochMs, long toEpochMs, int pageSize, Predicate<HistoryRecord> consumer) {
+		HistorySeries historySeries = series.get(fullName);
+		if (historySeries == null) {
+			return false;
+		}
+		historySeries.readPaged(fromEpochMs, toEpochMs, pageSize, consumer);
+		return true;
+	}
+
+	public boolean hasSeries(String fullName) {
+		return series.containsKey(fullName);
+	}
+
+	public List<HistoryRecord> read(String fullName, long fromEpochMs, long toEpochMs) {
+		List<HistoryRecord> records = new ArrayList<>();
+		read(fullName, fromEpochMs, toEpochMs, records::add);
+		return records;
+	}
+
+	public Collection<String> getSeriesNames() {
+		return new TreeSet<>(series.keySet());
+	}
+
+	public void enforceRetention() {
+		// an exception thrown here would stop all future executions so catch everything
+		try {
+			long minEndEpochMs = System.currentTimeMillis() - TimeUnit.HOURS.toMillis(configuration.getMaxAgeHours());
+			for (HistorySeries historySeries : series.values()) {
+				int deleted = historySeries.enforceRetention(minEndEpochMs, configuration.getMaxBytesPerSeries());
+				if (deleted > 0) {
+					deletedSegments.add(deleted);
+					log.debug("Deleted {} history segments of {}", deleted, historySeries.getName());
+				}
+			}
+		} catch (Throwable t) {
+			log.error("Unable to enforce history retention", t);
+		}
+	}
+
+	private HistorySeries getOrCreateSeries(String fullName) {
+		return series.computeIfAbsent(fullName, name -> {
+			try {
+				return new HistorySeries(name, directory.resolve(encode(name)), configuration.getSegmentRecords());
+			} catch (IOException e) {
+				throw new UncheckedIOException("Unable to create history series for " + name, e);
+			}
+		});
+	}
+
+	private static String encode(String name) {
+		try {
+			return URLEncoder.encode(name, "UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static String decode(String name) {
+		try {
+			return URLDecoder.decode(name, "UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	public Map<String, Object> getStats() {
+		Map<String, Object> stats = new LinkedHashMap<>();
+		stats.put("enabled", isEnabled());
+		stats.put("series", series.size());
+		long bytes = 0;
+		int segments = 0;
+		for (HistorySeries historySeries : series.values()) {
+			bytes += historySeries.getSizeBytes();
+			segments += historySeries.getSegmentCount();
+		}
+		stats.put("segments", segments);
+		stats.put("bytes", bytes);
+		stats.put("appended", appended.sum());
+		stats.put("failedAppends", failedAppends.sum());
+		stats.put("deletedSegments", deletedSegments.sum());
+		return stats;
+	}
+
+	@Override
+	@PreDestroy
+	public synchronized void close() {
+		if (retentionService != null) {
+			retentionService.shutdownNow();
+			retentionService = null;
+		}
+		series.values().forEach(HistorySeries::force);
+	}
+}
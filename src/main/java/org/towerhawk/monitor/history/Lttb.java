@@ -0,0 +1,70 @@
+package org.towerhawk.monitor.history;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Largest-Triangle-Three-Buckets downsampling of a duration series. The records between
+ * the first and the last one are split into equal buckets and from each bucket the
+ * record forming the largest triangle with the record picked before it and the average
+ * of the next bucket is kept. This keeps the spikes a graph needs to show while
+ * dropping most of the points.
+ */
+public final class Lttb {
+
+	private Lttb() {
+	}
+
+	/**
+	 * @param records   Sorted by end time, oldest first
+	 * @param threshold How many records to keep, at least 3
+	 * @return records itself if it already has no more than threshold records
+	 */
+	public static List<HistoryRecord> downsample(List<HistoryRecord> records, int threshold) {
+		int size = records.size();
+		if (threshold >= size) {
+			return records;
+		}
+		if (threshold < 3) {
+			throw new IllegalArgumentException("threshold must be at least 3");
+		}
+		List<HistoryRecord> sampled = new ArrayList<>(threshold);
+		// end times relative to the first record so the areas keep their precision
+		long origin = records.get(0).getEndEpochMs();
+		double every = (double) (size - 2) / (threshold - 2);
+		int previous = 0;
+		sampled.add(records.get(0));
+		for (int i = 0; i < threshold - 2; i++) {
+			int nextStart = (int) Math.floor((i + 1) * every) + 1;
+			int nextEnd = Math.min((int) Math.floor((i + 2) * every) + 1, size);
+			double nextX = 0;
+			double nextY = 0;
+			for (int j = nextStart; j < nextEnd; j++) {
+				nextX += records.get(j).getEndEpochMs() - origin;
+				nextY += records.get(j).getDurationNanos();
+			}
+			nextX /= nextEnd - nextStart;
+			nextY /= nextEnd - nextStart;
+
+			double previousX = records.get(previous).getEndEpochMs() - origin;
+			double previousY = records.get(previous).getDurationNanos();
+			int start = (int) Math.floor(i * every) + 1;
+			int end = nextStart;
+			double maxArea = -1;
+			int picked = start;
+			for (int j = start; j < end; j++) {
+				double x = records.get(j).getEndEpochMs() - origin;
+				double y = records.get(j).getDurationNanos();
+				double area = Math.abs((previousX - nextX) * (y - previousY) - (previousX - x) * (nextY - previousY));
+				if (area > maxArea) {
+					maxArea = area;
+					picked = j;
+				}
+			}
+			sampled.add(records.get(picked));
+			previous = picked;
+		}
+		sampled.add(records.get(size - 1));
+		return sampled;
+	}
+}
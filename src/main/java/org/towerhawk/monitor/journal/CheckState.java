@@ -0,0 +1,153 @@
+package org.towerhawk.monitor.journal;
+
+import lombok.Getter;
+import org.towerhawk.monitor.check.Check;
+import org.towerhawk.monitor.check.run.CheckRun;
+import org.towerhawk.monitor.check.run.Status;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+
+/**
+ * The state of a check that needs to survive a restart: when it started failing, if it
+ * is restarting and its last run.
+ */
+@Getter
+public class CheckState {
+
+	private static final long NO_TIME = Long.MIN_VALUE;
+	private static final byte NO_STATUS = -1;
+	private static final int MAX_MESSAGE_LENGTH = 4096;
+	private static final Status[] STATUSES = Status.values();
+
+	private final String fullName;
+	private final long failingSinceEpochMs;
+	private final boolean restarting;
+	/**
+	 * 0 if the check has not run yet
+	 */
+	private final long runStartEpochMs;
+	private final long runEndEpochMs;
+	private final long durationNanos;
+	private final Status status;
+	private final boolean timedOut;
+	private final String message;
+
+	public CheckState(String fullName, long failingSinceEpochMs, boolean restarting, long runStartEpochMs, long runEndEpochMs,
+										long durationNanos, Status status, boolean timedOut, String message) {
+		this.fullName = fullName;
+		this.failingSinceEpochMs = failingSinceEpochMs;
+		this.restarting = restarting;
+		this.runStartEpochMs = runStartEpochMs;
+		this.runEndEpochMs = runEndEpochMs;
+		this.durationNanos = durationNanos;
+		this.status = status;
+		this.timedOut = timedOut;
+		this.message = message;
+	}
+
+	public static CheckState of(Check check, CheckRun checkRun) {
+		String message = checkRun.getMessage();
+		if (message != null && message.length() > MAX_MESSAGE_LENGTH) {
+			message = message.substring(0, MAX_MESSAGE_LENGTH);
+		}
+		long runEndEpochMs = checkRun.getEndTime() == null ? System.currentTimeMillis() : checkRun.getEndTime().toInstant().toEpochMilli();
+		return new CheckState(check.getFullName(), toEpochMs(checkRun.getFailingSince()), check.isRestarting(),
+			checkRun.getStartTime() == null ? runEndEpochMs : checkRun.getStartTime().toInstant().toEpochMilli(), runEndEpochMs,
+			checkRun.getDuration() == null ? 0 : checkRun.getDuration().toNanos(), checkRun.getStatus(), checkRun.isTimedOut(), message);
+	}
+
+	/**
+	 * The state of a check that was set to restarting before it ever ran
+	 */
+	public static CheckState restarting(String fullName, boolean restarting) {
+		return new CheckState(fullName, NO_TIME, restarting, 0, 0, 0, null, false, null);
+	}
+
+	public CheckState withRestarting(boolean restarting) {
+		return new CheckState(fullName, failingSinceEpochMs, restarting, runStartEpochMs, runEndEpochMs, durationNanos, status, timedOut, message);
+	}
+
+	public boolean hasRun() {
+		return runEndEpochMs != 0;
+	}
+
+	public ZonedDateTime getFailingSince() {
+		return toZonedDateTime(failingSinceEpochMs);
+	}
+
+	/**
+	 * Rebuilds the last run of check from this state. It carries no context apart from
+	 * a restored marker since the context is not journaled.
+	 */
+	public CheckRun toCheckRun(Check check) {
+		CheckRun.Builder builder = CheckRun.builder(check, null)
+			.message(message)
+			.startTime(runStartEpochMs)
+			.endTime(runEndEpochMs)
+			.durationNanos(durationNanos)
+			.failingSince(getFailingSince())
+			.timedOut(timedOut)
+			.addContext("restored", true);
+		if (status != null) {
+			switch (status) {
+				case SUCCEEDED:
+					builder.forceSucceeded();
+					break;
+				case WARNING:
+					builder.forceWarning();
+					break;
+				case UNKNOWN:
+					builder.forceUnknown().unknownIsCritical(false);
+					break;
+				default:
+					builder.forceCritical();
+			}
+		}
+		return builder.build();
+	}
+
+	void write(DataOutput out) throws IOException {
+		out.writeUTF(fullName);
+		out.writeLong(failingSinceEpochMs);
+		out.writeBoolean(restarting);
+		out.writeLong(runStartEpochMs);
+		out.writeLong(runEndEpochMs);
+		out.writeLong(durationNanos);
+		out.writeByte(status == null ? NO_STATUS : status.ordinal());
+		out.writeBoolean(timedOut);
+		out.writeBoolean(message != null);
+		if (message != null) {
+			out.writeUTF(message);
+		}
+	}
+
+	static CheckState read(DataInput in) throws IOException {
+		String fullName = in.readUTF();
+		long failingSinceEpochMs = in.readLong();
+		boolean restarting = in.readBoolean();
+		long runStartEpochMs = in.readLong();
+		long runEndEpochMs = in.readLong();
+		long durationNanos = in.readLong();
+		byte status = in.readByte();
+		boolean timedOut = in.readBoolean();
+		String message = in.readBoolean() ? in.readUTF() : null;
+		if (status < NO_STATUS || status >= STATUSES.length) {
+			throw new IOException("Unknown status " + status + " for " + fullName);
+		}
+		return new CheckState(fullName, failingSinceEpochMs, restarting, runStartEpochMs, runEndEpochMs, durationNanos,
+			status == NO_STATUS ? null : STATUSES[status], timedOut, message);
+	}
+
+	private static long toEpochMs(ZonedDateTime time) {
+		return time == null ? NO_TIME : time.toInstant().toEpochMilli();
+	}
+
+	private static ZonedDateTime toZonedDateTime(long epochMs) {
+		return epochMs == NO_TIME ? null : ZonedDateTime.ofInstant(Instant.ofEpochMilli(epochMs), ZoneId.systemDefault());
+	}
+}
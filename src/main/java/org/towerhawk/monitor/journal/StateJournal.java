@@ -0,0 +1,443 @@
+package org.towerhawk.monitor.journal;
+
+import lombok.extern.slf4j.Slf4j;
+import org.towerhawk.monitor.check.Check;
+import org.towerhawk.monitor.check.run.CheckRun;
+import org.towerhawk.monitor.check.run.CheckRunListener;
+import org.towerhawk.spring.config.StateJournalConfiguration;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+
+/**
+ * Keeps the state of every check in an append only journal so that failingSince,
+ * restarting and the last run survive a restart of the process. Every saved run and
+ * every change of restarting is appended as a length prefixed, checksummed entry with
+ * a sequence number. The latest state of each check is periodically written to a
+ * snapshot, after which the journal files it covers are deleted.
+ * <p>
+ * On startup the snapshot is loaded and the newer journal entries are replayed on top
+ * of it. A torn entry at the end of a journal file, left by a crash in the middle of a
+ * write, fails its checksum and ends the replay of that file.
+ */
+@Slf4j
+@Named
+public class StateJournal implements CheckRunListener, AutoCloseable {
+
+	private static final String SNAPSHOT = "state.snapshot";
+	private static final String JOURNAL_PREFIX = "journal-";
+	private static final String JOURNAL_SUFFIX = ".log";
+	private static final int SNAPSHOT_MAGIC = 0x54485354;
+	private static final int VERSION = 1;
+	// a single entry can never get near this so anything larger is corruption
+	private static final int MAX_ENTRY_BYTES = 1 << 20;
+
+	private final StateJournalConfiguration configuration;
+	private final Map<String, CheckState> states = new ConcurrentHashMap<>();
+	private final Object writeLock = new Object();
+	private final LongAdder appended = new LongAdder();
+	private final LongAdder failedAppends = new LongAdder();
+	private final LongAdder snapshots = new LongAdder();
+	private Path directory;
+	// guarded by writeLock
+	private FileChannel journal;
+	// set when no journal file could be opened after a failed write, guarded by writeLock
+	private boolean journalLost = false;
+	private long sequence = 0;
+	private volatile long journalBytes = 0;
+	private volatile long lastSnapshotEpochMs;
+	private volatile int replayedStates = 0;
+	private volatile int replayedEntries = 0;
+	private ScheduledExecutorService journalService;
+
+	@Inject
+	public StateJournal(StateJournalConfiguration configuration) {
+		this.configuration = configuration;
+	}
+
+	@PostConstruct
+	public synchronized void start() {
+		if (!configuration.isEnabled() || journalService != null) {
+			return;
+		}
+		directory = Paths.get(configuration.getDirectory());
+		try {
+			Files.createDirectories(directory);
+			replay();
+			synchronized (writeLock) {
+				openJournal(sequence + 1);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("Unable to open state journal in " + directory, e);
+		}
+		lastSnapshotEpochMs = System.currentTimeMillis();
+		log.info("Restored the state of {} checks from {} using {} journal entries", replayedStates, directory, replayedEntries);
+		journalService = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, configuration.getThreadName());
+			thread.setDaemon(true);
+			return thread;
+		});
+		journalService.scheduleWithFixedDelay(this::maintain, configuration.getFlushIntervalMs(), configuration.getFlushIntervalMs(), TimeUnit.MILLISECONDS);
+	}
+
+	public boolean isEnabled() {
+		return configuration.isEnabled() && directory != null;
+	}
+
+	/**
+	 * Journals the state of the check of checkRun. Never throws so a full disk cannot
+	 * fail a check run.
+	 */
+	@Override
+	public void onCheckRun(CheckRun checkRun) {
+		if (!isEnabled() || checkRun.getCheck() == null) {
+			return;
+		}
+		record(CheckState.of(checkRun.getCheck(), checkRun));
+	}
+
+	/**
+	 * Journals that check has been set to restarting or not, which happens outside of a run
+	 */
+	public void onRestartingChanged(Check check) {
+		if (!isEnabled()) {
+			return;
+		}
+		// a run saved in between would be lost if its state was replaced with an older one
+		synchronized (writeLock) {
+			CheckState state = states.get(check.getFullName());
+			record(state == null ? CheckState.restarting(check.getFullName(), check.isRestarting()) : state.withRestarting(check.isRestarting()));
+		}
+	}
+
+	/**
+	 * Restores check to the state it was last journaled with.
+	 *
+	 * @return true if there was a state to restore and check took it over
+	 */
+	public boolean restore(Check check) {
+		if (!isEnabled()) {
+			return false;
+		}
+		CheckState state = states.get(check.getFullName());
+		return state != null && check.restoreState(state);
+	}
+
+	public CheckState getState(String fullName) {
+		return states.get(fullName);
+	}
+
+	void record(CheckState state) {
+		synchronized (writeLock) {
+			if (journal == null && !journalLost) {
+				return;
+			}
+			// kept even if it cannot be journaled so that the next snapshot has it
+			states.put(state.getFullName(), state);
+			if (journal == null) {
+				failedAppends.increment();
+				return;
+			}
+			long goodPosition = journalBytes;
+			try {
+				ByteBuffer entry = ByteBuffer.wrap(encode(sequence + 1, state));
+				while (entry.hasRemaining()) {
+					journal.write(entry);
+				}
+				sequence++;
+				journalBytes = goodPosition + entry.capacity();
+				appended.increment();
+			} catch (IOException e) {
+				failedAppends.increment();
+				log.warn("Unable to journal the state of {}", state.getFullName(), e);
+				discardPartialEntry(goodPosition);
+			}
+		}
+	}
+
+	/**
+	 * Cuts a partly written entry off the end of the journal, since replay stops at the
+	 * first bad entry and would drop every entry appended after it. If that fails the
+	 * journal is rolled to a new file instead.
+	 */
+	private void discardPartialEntry(long goodPosition) {
+		try {
+			journal.truncate(goodPosition);
+			journal.position(goodPosition);
+			return;
+		} catch (IOException e) {
+			log.warn("Unable to truncate the state journal, starting a new one", e);
+		}
+		try {
+			journal.close();
+		} catch (IOException e) {
+			log.debug("Unable to close the state journal", e);
+		}
+		journal = null;
+		reopenJournal();
+	}
+
+	/**
+	 * Opens a new journal file after the last one was lost, retried by maintain() until
+	 * it succeeds.
+	 */
+	private void reopenJournal() {
+		try {
+			openJournal(sequence + 1);
+			journalLost = false;
+		} catch (IOException e) {
+			journalLost = true;
+			log.error("Unable to open a new state journal, states are only kept until the next snapshot", e);
+		}
+	}
+
+	private void maintain() {
+		// an exception thrown here would stop all future executions so catch everything
+		try {
+			synchronized (writeLock) {
+				if (journalLost) {
+					reopenJournal();
+				}
+				if (journal != null) {
+					journal.force(false);
+				}
+			}
+			if (System.currentTimeMillis() - lastSnapshotEpochMs >= configuration.getSnapshotIntervalMs()
+				|| journalBytes >= configuration.getMaxJournalBytes()) {
+				snapshot();
+			}
+		} catch (Throwable t) {
+			log.error("Unable to maintain the state journal", t);
+		}
+	}
+
+	/**
+	 * Writes the state of every check to a new snapshot and deletes the journal files it
+	 * makes redundant. Runs keep being journaled to a new file while the snapshot is written.
+	 */
+	public synchronized void snapshot() throws IOException {
+		List<CheckState> snapshotStates;
+		long snapshotSequence;
+		synchronized (writeLock) {
+			if (journal == null && !journalLost) {
+				return;
+			}
+			snapshotStates = new ArrayList<>(states.values());
+			snapshotSequence = sequence;
+			if (journal != null) {
+				journal.force(false);
+				journal.close();
+				journal = null;
+			}
+			reopenJournal();
+		}
+		long minEndEpochMs = System.currentTimeMillis() - TimeUnit.HOURS.toMillis(configuration.getMaxStateAgeHours());
+		snapshotStates.removeIf(state -> {
+			boolean expired = state.hasRun() && state.getRunEndEpochMs() < minEndEpochMs;
+			if (expired) {
+				states.remove(state.getFullName(), state);
+			}
+			return expired;
+		});
+		Path temp = directory.resolve(SNAPSHOT + ".tmp");
+		try (FileOutputStream file = new FileOutputStream(temp.toFile());
+				 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file))) {
+			out.writeInt(SNAPSHOT_MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(snapshotSequence);
+			out.writeInt(snapshotStates.size());
+			for (CheckState state : snapshotStates) {
+				out.write(encode(snapshotSequence, state));
+			}
+			out.flush();
+			file.getFD().sync();
+		}
+		Files.move(temp, directory.resolve(SNAPSHOT), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		for (Path path : listJournals()) {
+			if (journalStart(path) <= snapshotSequence) {
+				Files.deleteIfExists(path);
+			}
+		}
+		lastSnapshotEpochMs = System.currentTimeMillis();
+		snapshots.increment();
+		log.debug("Wrote a snapshot of {} check states up to entry {}", snapshotStates.size(), snapshotSequence);
+	}
+
+	private void replay() throws IOException {
+		long snapshotSequence = 0;
+		Path snapshot = directory.resolve(SNAPSHOT);
+		if (Files.exists(snapshot)) {
+			try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshot)))) {
+				if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != VERSION) {
+					throw new IOException("Not a state snapshot");
+				}
+				snapshotSequence = in.readLong();
+				int count = in.readInt();
+				for (int i = 0; i < count; i++) {
+					DataInputStream entry = readEntry(in);
+					if (entry == null) {
+						throw new IOException("Snapshot is truncated after " + i + " of " + count + " states");
+					}
+					entry.readLong();
+					CheckState state = CheckState.read(entry);
+					states.put(state.getFullName(), state);
+				}
+			} catch (IOException e) {
+				// snapshots are written to a temp file and moved so this should never happen
+				log.error("Unable to read state snapshot {}, replaying the journal only", snapshot, e);
+				states.clear();
+				snapshotSequence = 0;
+			}
+		}
+		sequence = snapshotSequence;
+		int entries = 0;
+		for (Path path : listJournals()) {
+			try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+				DataInputStream entry;
+				while ((entry = readEntry(in)) != null) {
+					long entrySequence = entry.readLong();
+					if (entrySequence > snapshotSequence) {
+						CheckState state = CheckState.read(entry);
+						states.put(state.getFullName(), state);
+						entries++;
+					}
+					sequence = Math.max(sequence, entrySequence);
+				}
+			}
+		}
+		replayedEntries = entries;
+		replayedStates = states.size();
+	}
+
+	/**
+	 * @return The payload of the next entry, or null at the end of the stream or at an
+	 * entry that was torn by a crash
+	 */
+	private static DataInputStream readEntry(InputStream in) throws IOException {
+		DataInputStream data = new DataInputStream(in);
+		int length;
+		long checksum;
+		byte[] payload;
+		try {
+			length = data.readInt();
+			if (length <= 0 || length > MAX_ENTRY_BYTES) {
+				return null;
+			}
+			checksum = data.readInt() & 0xffffffffL;
+			payload = new byte[length];
+			data.readFully(payload);
+		} catch (EOFException e) {
+			return null;
+		}
+		CRC32 crc = new CRC32();
+		crc.update(payload);
+		if (crc.getValue() != checksum) {
+			log.warn("Ignoring a corrupt state journal entry and everything after it");
+			return null;
+		}
+		return new DataInputStream(new ByteArrayInputStream(payload));
+	}
+
+	private static byte[] encode(long entrySequence, CheckState state) throws IOException {
+		ByteArrayOutputStream payload = new ByteArrayOutputStream(128);
+		DataOutputStream out = new DataOutputStream(payload);
+		out.writeLong(entrySequence);
+		state.write(out);
+		out.flush();
+		CRC32 crc = new CRC32();
+		crc.update(payload.toByteArray());
+		ByteBuffer entry = ByteBuffer.allocate(8 + payload.size());
+		entry.putInt(payload.size());
+		entry.putInt((int) crc.getValue());
+		entry.put(payload.toByteArray());
+		return entry.array();
+	}
+
+	private void openJournal(long firstSequence) throws IOException {
+		Path path = directory.resolve(String.format("%s%019d%s", JOURNAL_PREFIX, firstSequence, JOURNAL_SUFFIX));
+		// a file with this name can only hold a torn entry so it is safe to start over
+		journal = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		journalBytes = 0;
+	}
+
+	private List<Path> listJournals() throws IOException {
+		List<Path> paths = new ArrayList<>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, JOURNAL_PREFIX + "*" + JOURNAL_SUFFIX)) {
+			stream.forEach(paths::add);
+		}
+		// the sequence is zero padded so this sorts oldest first
+		paths.sort(null);
+		return paths;
+	}
+
+	private static long journalStart(Path path) {
+		String name = path.getFileName().toString();
+		return Long.parseLong(name.substring(JOURNAL_PREFIX.length(), name.length() - JOURNAL_SUFFIX.length()));
+	}
+
+	public Map<String, Object> getStats() {
+		Map<String, Object> stats = new LinkedHashMap<>();
+		stats.put("enabled", isEnabled());
+		stats.put("states", states.size());
+		stats.put("replayedStates", replayedStates);
+		stats.put("replayedEntries", replayedEntries);
+		stats.put("appended", appended.sum());
+		stats.put("failedAppends", failedAppends.sum());
+		stats.put("journalBytes", journalBytes);
+		stats.put("snapshots", snapshots.sum());
+		stats.put("lastSnapshotEpochMs", lastSnapshotEpochMs);
+		return stats;
+	}
+
+	@Override
+	@PreDestroy
+	public synchronized void close() {
+		if (journalService != null) {
+			journalService.shutdownNow();
+			journalService = null;
+		}
+		synchronized (writeLock) {
+			if (journal != null) {
+				try {
+					journal.force(false);
+					journal.close();
+				} catch (IOException e) {
+					log.warn("Unable to close the state journal", e);
+				}
+				journal = null;
+			}
+			journalLost = false;
+		}
+	}
+}
@@ -0,0 +1,43 @@
+package org.towerhawk.monitor.rollup;
+
+import lombok.Getter;
+import org.towerhawk.monitor.check.run.Status;
+
+import java.util.Map;
+
+/**
+ * The runs of a check that ended within [startEpochMs, startEpochMs + resolutionMs).
+ */
+@Getter
+public class RollupBucket {
+
+	private final long startEpochMs;
+	private final long resolutionMs;
+	private final int runs;
+	private final Map<Status, Integer> statuses;
+	private final int timedOut;
+	private final long minDurationMs;
+	private final long maxDurationMs;
+	private final long totalDurationMs;
+	/**
+	 * How much of this bucket the check spent in a status other than SUCCEEDED
+	 */
+	private final long failingMs;
+
+	public RollupBucket(long startEpochMs, long resolutionMs, int runs, Map<Status, Integer> statuses, int timedOut,
+											long minDurationMs, long maxDurationMs, long totalDurationMs, long failingMs) {
+		this.startEpochMs = startEpochMs;
+		this.resolutionMs = resolutionMs;
+		this.runs = runs;
+		this.statuses = statuses;
+		this.timedOut = timedOut;
+		this.minDurationMs = minDurationMs;
+		this.maxDurationMs = maxDurationMs;
+		this.totalDurationMs = totalDurationMs;
+		this.failingMs = failingMs;
+	}
+
+	public double getMeanDurationMs() {
+		return runs == 0 ? 0 : (double) totalDurationMs / runs;
+	}
+}
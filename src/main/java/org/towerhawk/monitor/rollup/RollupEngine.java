@@ -0,0 +1,134 @@
+package org.towerhawk.monitor.rollup;
+
+import lombok.extern.slf4j.Slf4j;
+import org.towerhawk.monitor.check.run.CheckRun;
+import org.towerhawk.monitor.check.run.CheckRunListener;
+import org.towerhawk.monitor.history.HistoryStore;
+import org.towerhawk.spring.config.RollupConfiguration;
+
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Rolls the runs of every check up into 1 minute, 5 minute and 1 hour buckets holding
+ * the count of each Status, the min, max and total duration and the time spent failing.
+ * Every resolution is a fixed number of buckets per check so memory stays bounded no
+ * matter how often checks run, which lets months of history be kept at a coarse
+ * resolution next to hours of it at a fine one.
+ * <p>
+ * Rollups are only kept in memory. If the history store is enabled they are rebuilt
+ * from it on startup, otherwise they start out empty after a restart.
+ */
+@Slf4j
+@Named
+public class RollupEngine implements CheckRunListener {
+
+	private final RollupConfiguration configuration;
+	private final HistoryStore historyStore;
+	private final Map<String, RollupSeries> series = new ConcurrentHashMap<>();
+	private final LongAdder added = new LongAdder();
+	private volatile long rebuiltRuns = 0;
+
+	@Inject
+	public RollupEngine(RollupConfiguration configuration, HistoryStore historyStore) {
+		this.configuration = configuration;
+		this.historyStore = historyStore;
+	}
+
+	/**
+	 * Rebuilds the rollups of every check from the runs in the history store that the
+	 * coarsest resolution still covers. This happens before any check runs.
+	 */
+	@PostConstruct
+	public void rebuild() {
+		if (!isEnabled() || !historyStore.isEnabled()) {
+			return;
+		}
+		long start = System.currentTimeMillis();
+		long fromEpochMs = start - TimeUnit.HOURS.toMillis(configuration.getOneHourBuckets());
+		long runs = 0;
+		for (String fullName : historyStore.getSeriesNames()) {
+			RollupSeries rollupSeries = series.computeIfAbsent(fullName, this::newSeries);
+			long[] count = new long[1];
+			historyStore.read(fullName, fromEpochMs, start, record -> {
+				// stale runs were never rolled up in the first place
+				if (!record.isStale()) {
+					rollupSeries.add(record.getEndEpochMs(), record.getStatus(), record.isTimedOut(), record.getDurationNanos());
+					count[0]++;
+				}
+			});
+			runs += count[0];
+		}
+		rebuiltRuns = runs;
+		log.info("Rebuilt rollups of {} checks from {} runs in {}ms", series.size(), runs, System.currentTimeMillis() - start);
+	}
+
+	public boolean isEnabled() {
+		return configuration.isEnabled();
+	}
+
+	@Override
+	public void onCheckRun(CheckRun checkRun) {
+		if (!isEnabled() || checkRun.getCheck() == null) {
+			return;
+		}
+		// stale runs were served from an earlier run that has already been rolled up
+		if (checkRun.getContext() != null && checkRun.getContext().containsKey(CheckRun.STALE)) {
+			return;
+		}
+		long endEpochMs = checkRun.getEndTime() == null ? System.currentTimeMillis() : checkRun.getEndTime().toInstant().toEpochMilli();
+		long durationNanos = checkRun.getDuration() == null ? 0 : checkRun.getDuration().toNanos();
+		series.computeIfAbsent(checkRun.getCheck().getFullName(), this::newSeries)
+			.add(endEpochMs, checkRun.getStatus(), checkRun.isTimedOut(), durationNanos);
+		added.increment();
+	}
+
+	/**
+	 * @return The rollups of the check named fullName that overlap [fromEpochMs, toEpochMs)
+	 * at the finest resolution that covers the range in at most maxBuckets buckets, or null
+	 * if there are no rollups for fullName
+	 */
+	public RollupResult query(String fullName, long fromEpochMs, long toEpochMs, int maxBuckets) {
+		RollupSeries rollupSeries = series.get(fullName);
+		if (rollupSeries == null) {
+			return null;
+		}
+		return rollupSeries.read(fromEpochMs, toEpochMs, maxBuckets, System.currentTimeMillis());
+	}
+
+	public RollupResult query(String fullName, long fromEpochMs, long toEpochMs) {
+		return query(fullName, fromEpochMs, toEpochMs, configuration.getDefaultMaxBuckets());
+	}
+
+	public Collection<String> getSeriesNames() {
+		return new TreeSet<>(series.keySet());
+	}
+
+	private RollupSeries newSeries(String fullName) {
+		RollupRing[] rings = new RollupRing[]{
+			new RollupRing(TimeUnit.MINUTES.toMillis(1), configuration.getOneMinuteBuckets()),
+			new RollupRing(TimeUnit.MINUTES.toMillis(5), configuration.getFiveMinuteBuckets()),
+			new RollupRing(TimeUnit.HOURS.toMillis(1), configuration.getOneHourBuckets())
+		};
+		log.debug("Started rollups of {}", fullName);
+		return new RollupSeries(fullName, rings, configuration.getMaxFailingGapMs());
+	}
+
+	public Map<String, Object> getStats() {
+		Map<String, Object> stats = new LinkedHashMap<>();
+		stats.put("enabled", isEnabled());
+		stats.put("series", series.size());
+		stats.put("added", added.sum());
+		stats.put("rebuiltRuns", rebuiltRuns);
+		stats.put("allocatedBuckets", series.values().stream().mapToLong(RollupSeries::getAllocatedBuckets).sum());
+		return stats;
+	}
+}
@@ -0,0 +1,26 @@
+package org.towerhawk.monitor.rollup;
+
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * The buckets of one check in a time range at the resolution that was picked for it.
+ */
+@Getter
+public class RollupResult {
+
+	private final String fullName;
+	private final long fromEpochMs;
+	private final long toEpochMs;
+	private final long resolutionMs;
+	private final List<RollupBucket> buckets;
+
+	public RollupResult(String fullName, long fromEpochMs, long toEpochMs, long resolutionMs, List<RollupBucket> buckets) {
+		this.fullName = fullName;
+		this.fromEpochMs = fromEpochMs;
+		this.toEpochMs = toEpochMs;
+		this.resolutionMs = resolutionMs;
+		this.buckets = buckets;
+	}
+}
@@ -0,0 +1,205 @@
+package org.towerhawk.monitor.rollup;
+
+import org.towerhawk.monitor.check.run.Status;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A fixed number of buckets of one resolution kept in parallel primitive arrays. A
+ * bucket is reused for a newer time once the ring has wrapped around, so the ring always
+ * covers the size buckets up to the newest one written. The arrays start small and are
+ * doubled until they hold size buckets only once the buckets written need the room, so
+ * a check that has only run for a day does not take months worth of hourly buckets.
+ * Not thread safe.
+ */
+class RollupRing {
+
+	private static final long EMPTY = Long.MIN_VALUE;
+	private static final Status[] STATUSES = Status.values();
+	private static final int INITIAL_CAPACITY = 16;
+
+	private final long resolutionMs;
+	private final int size;
+	// how many buckets the arrays hold right now, never more than size
+	private int capacity;
+	private long[] bucketStarts;
+	// STATUSES.length counts per bucket
+	private int[] statusCounts;
+	private int[] timedOut;
+	private long[] minNanos;
+	private long[] maxNanos;
+	private long[] totalNanos;
+	private long[] failingMs;
+	private long newestStart = EMPTY;
+
+	RollupRing(long resolutionMs, int size) {
+		if (resolutionMs <= 0 || size <= 0) {
+			throw new IllegalArgumentException("resolutionMs and size must be greater than 0");
+		}
+		this.resolutionMs = resolutionMs;
+		this.size = size;
+		allocate(Math.min(size, INITIAL_CAPACITY));
+	}
+
+	private void allocate(int newCapacity) {
+		capacity = newCapacity;
+		bucketStarts = new long[capacity];
+		statusCounts = new int[capacity * STATUSES.length];
+		timedOut = new int[capacity];
+		minNanos = new long[capacity];
+		maxNanos = new long[capacity];
+		totalNanos = new long[capacity];
+		failingMs = new long[capacity];
+		Arrays.fill(bucketStarts, EMPTY);
+	}
+
+	long getResolutionMs() {
+		return resolutionMs;
+	}
+
+	int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * @return The start of the oldest bucket that is still kept once nowEpochMs has been written
+	 */
+	long getOldestEpochMs(long nowEpochMs) {
+		return (Math.floorDiv(nowEpochMs, resolutionMs) - size + 1) * resolutionMs;
+	}
+
+	void addRun(long endEpochMs, Status status, boolean wasTimedOut, long durationNanos) {
+		int index = bucket(endEpochMs);
+		if (index < 0) {
+			return;
+		}
+		if (status != null) {
+			statusCounts[index * STATUSES.length + status.ordinal()]++;
+		}
+		if (wasTimedOut) {
+			timedOut[index]++;
+		}
+		minNanos[index] = Math.min(minNanos[index], durationNanos);
+		maxNanos[index] = Math.max(maxNanos[index], durationNanos);
+		totalNanos[index] += durationNanos;
+	}
+
+	/**
+	 * Spreads [fromEpochMs, toEpochMs) over the buckets it overlaps
+	 */
+	void addFailing(long fromEpochMs, long toEpochMs) {
+		fromEpochMs = Math.max(fromEpochMs, toEpochMs - size * resolutionMs);
+		for (long start = floor(fromEpochMs); start < toEpochMs; start += resolutionMs) {
+			int index = bucket(start);
+			if (index >= 0) {
+				failingMs[index] += Math.min(toEpochMs, start + resolutionMs) - Math.max(fromEpochMs, start);
+			}
+		}
+	}
+
+	/**
+	 * @return The buckets that overlap [fromEpochMs, toEpochMs) and were written to, oldest first
+	 */
+	List<RollupBucket> read(long fromEpochMs, long toEpochMs) {
+		List<RollupBucket> buckets = new ArrayList<>();
+		if (newestStart == EMPTY) {
+			return buckets;
+		}
+		long start = Math.max(floor(fromEpochMs), newestStart - (size - 1) * resolutionMs);
+		for (; start < toEpochMs && start <= newestStart; start += resolutionMs) {
+			int index = index(start);
+			if (bucketStarts[index] == start) {
+				buckets.add(toBucket(index));
+			}
+		}
+		return buckets;
+	}
+
+	private RollupBucket toBucket(int index) {
+		Map<Status, Integer> statuses = new EnumMap<>(Status.class);
+		int runs = 0;
+		for (Status status : STATUSES) {
+			int count = statusCounts[index * STATUSES.length + status.ordinal()];
+			statuses.put(status, count);
+			runs += count;
+		}
+		long nanosPerMs = 1000000;
+		return new RollupBucket(bucketStarts[index], resolutionMs, runs, statuses, timedOut[index],
+			runs == 0 ? 0 : minNanos[index] / nanosPerMs, maxNanos[index] / nanosPerMs, totalNanos[index] / nanosPerMs, failingMs[index]);
+	}
+
+	/**
+	 * @return The index of the bucket of epochMs, cleared first if it still holds an older
+	 * time, or -1 if epochMs is older than what the ring covers
+	 */
+	private int bucket(long epochMs) {
+		long start = floor(epochMs);
+		if (newestStart != EMPTY && start <= newestStart - size * resolutionMs) {
+			return -1;
+		}
+		long newest = newestStart == EMPTY ? start : Math.max(newestStart, start);
+		int index = index(start);
+		// the bucket at index still holds a time the ring covers, so make room for both
+		while (bucketStarts[index] != start && bucketStarts[index] != EMPTY
+			&& bucketStarts[index] > newest - size * resolutionMs && capacity < size) {
+			grow(newest - size * resolutionMs);
+			index = index(start);
+		}
+		if (bucketStarts[index] != start) {
+			bucketStarts[index] = start;
+			for (int i = 0; i < STATUSES.length; i++) {
+				statusCounts[index * STATUSES.length + i] = 0;
+			}
+			timedOut[index] = 0;
+			minNanos[index] = Long.MAX_VALUE;
+			maxNanos[index] = 0;
+			totalNanos[index] = 0;
+			failingMs[index] = 0;
+		}
+		newestStart = newest;
+		return index;
+	}
+
+	/**
+	 * Doubles the arrays, up to size. The buckets the ring still covers are at different
+	 * indexes of the smaller arrays, so they are at different indexes of the larger ones
+	 * as well. The ones it no longer covers are dropped.
+	 *
+	 * @param coveredAfter Buckets starting at or before this are no longer covered
+	 */
+	private void grow(long coveredAfter) {
+		long[] oldStarts = bucketStarts;
+		int[] oldStatusCounts = statusCounts;
+		int[] oldTimedOut = timedOut;
+		long[] oldMinNanos = minNanos;
+		long[] oldMaxNanos = maxNanos;
+		long[] oldTotalNanos = totalNanos;
+		long[] oldFailingMs = failingMs;
+		allocate((int) Math.min(size, capacity * 2L));
+		for (int i = 0; i < oldStarts.length; i++) {
+			if (oldStarts[i] == EMPTY || oldStarts[i] <= coveredAfter) {
+				continue;
+			}
+			int index = index(oldStarts[i]);
+			bucketStarts[index] = oldStarts[i];
+			System.arraycopy(oldStatusCounts, i * STATUSES.length, statusCounts, index * STATUSES.length, STATUSES.length);
+			timedOut[index] = oldTimedOut[i];
+			minNanos[index] = oldMinNanos[i];
+			maxNanos[index] = oldMaxNanos[i];
+			totalNanos[index] = oldTotalNanos[i];
+			failingMs[index] = oldFailingMs[i];
+		}
+	}
+
+	private long floor(long epochMs) {
+		return Math.floorDiv(epochMs, resolutionMs) * resolutionMs;
+	}
+
+	private int index(long start) {
+		return (int) Math.floorMod(Math.floorDiv(start, resolutionMs), (long) capacity);
+	}
+}
@@ -0,0 +1,74 @@
+package org.towerhawk.monitor.rollup;
+
+import org.towerhawk.monitor.check.run.Status;
+
+/**
+ * The rollups of a single check at every resolution, finest first.
+ */
+class RollupSeries {
+
+	private final String name;
+	private final RollupRing[] rings;
+	private final long maxFailingGapMs;
+	private long lastEndEpochMs = Long.MIN_VALUE;
+	private boolean lastFailed = false;
+
+	RollupSeries(String name, RollupRing[] rings, long maxFailingGapMs) {
+		this.name = name;
+		this.rings = rings;
+		this.maxFailingGapMs = maxFailingGapMs;
+	}
+
+	/**
+	 * Adds a run to every resolution. The time since the previous run counts as failing
+	 * if the previous run failed, since that is the status the check was reporting.
+	 */
+	synchronized void add(long endEpochMs, Status status, boolean timedOut, long durationNanos) {
+		if (lastFailed && endEpochMs > lastEndEpochMs) {
+			long fromEpochMs = Math.max(lastEndEpochMs, endEpochMs - maxFailingGapMs);
+			for (RollupRing ring : rings) {
+				ring.addFailing(fromEpochMs, endEpochMs);
+			}
+		}
+		for (RollupRing ring : rings) {
+			ring.addRun(endEpochMs, status, timedOut, durationNanos);
+		}
+		if (endEpochMs >= lastEndEpochMs) {
+			lastEndEpochMs = endEpochMs;
+			lastFailed = status != null && status != Status.SUCCEEDED;
+		}
+	}
+
+	/**
+	 * @return How many buckets the rings of this series have allocated
+	 */
+	synchronized int getAllocatedBuckets() {
+		int buckets = 0;
+		for (RollupRing ring : rings) {
+			buckets += ring.getCapacity();
+		}
+		return buckets;
+	}
+
+	/**
+	 * Reads [fromEpochMs, toEpochMs) from the finest resolution that still covers
+	 * fromEpochMs in at most maxBuckets buckets. If none does, the coarsest resolution
+	 * that covers fromEpochMs is used, or the coarsest one overall.
+	 */
+	synchronized RollupResult read(long fromEpochMs, long toEpochMs, int maxBuckets, long nowEpochMs) {
+		RollupRing picked = null;
+		for (RollupRing ring : rings) {
+			if (ring.getOldestEpochMs(nowEpochMs) > fromEpochMs) {
+				continue;
+			}
+			picked = ring;
+			if ((toEpochMs - fromEpochMs) / ring.getResolutionMs() <= maxBuckets) {
+				break;
+			}
+		}
+		if (picked == null) {
+			picked = rings[rings.length - 1];
+		}
+		return new RollupResult(name, fromEpochMs, toEpochMs, picked.getResolutionMs(), picked.read(fromEpochMs, toEpochMs));
+	}
+}
@@ -1,34 +1,62 @@
 package org.towerhawk.spring.autoConfig;
 
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.FactoryBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.scheduling.concurrent.ThreadPoolExecutorFactoryBean;
+import org.towerhawk.monitor.check.run.concurrent.AdaptiveConcurrencyLimiter;
 import org.towerhawk.monitor.check.run.concurrent.ConcurrentCheckInterruptor;
 import org.towerhawk.monitor.check.run.concurrent.ConcurrentCheckRunner;
+import org.towerhawk.monitor.check.run.concurrent.ExecutorCheckRunDispatcher;
+import org.towerhawk.monitor.check.run.concurrent.LongestExpectedFirstOrdering;
+import org.towerhawk.monitor.check.run.concurrent.OverloadGuard;
+import org.towerhawk.monitor.check.run.concurrent.TargetBulkhead;
+import org.towerhawk.monitor.check.run.schedule.RunStartHistogram;
+import org.towerhawk.spring.config.AdaptiveLimiterConfiguration;
+import org.towerhawk.spring.config.CheckSchedulerConfiguration;
 import org.towerhawk.spring.config.ConcurrentAppRunConfiguration;
 import org.towerhawk.spring.config.ConcurrentCheckRunConfiguration;
+import org.towerhawk.spring.config.OverloadConfiguration;
+import org.towerhawk.spring.config.TargetBulkheadConfiguration;
 
 import java.util.concurrent.ExecutorService;
 
+@Slf4j
 @org.springframework.context.annotation.Configuration
 public class CheckServiceAutoConfiguration {
 
 	@Bean
-	public ThreadPoolExecutorFactoryBean checkRunService(ConcurrentCheckRunConfiguration config) {
-		return getThreadPoolExecutorFactoryBean(config, config.getThreadGroupName(), config.getThreadNamePrefix());
+	public FactoryBean<ExecutorService> checkRunService(ConcurrentCheckRunConfiguration config) {
+		return getExecutorFactoryBean(config, config.getThreadGroupName(), config.getThreadNamePrefix());
 	}
 
 	@Bean
-	public ThreadPoolExecutorFactoryBean appRunService(ConcurrentAppRunConfiguration config) {
-		return getThreadPoolExecutorFactoryBean(config, config.getThreadGroupName(), config.getThreadNamePrefix());
+	public FactoryBean<ExecutorService> appRunService(ConcurrentAppRunConfiguration config) {
+		return getExecutorFactoryBean(config, config.getThreadGroupName(), config.getThreadNamePrefix());
 	}
 
 	@Bean
-	public ThreadPoolExecutorFactoryBean monitorRunService(ConcurrentAppRunConfiguration config) {
-		return getThreadPoolExecutorFactoryBean(config, "MonitorService", "MonitorService - ");
+	public FactoryBean<ExecutorService> monitorRunService(ConcurrentAppRunConfiguration config) {
+		return getExecutorFactoryBean(config, "MonitorService", "MonitorService - ");
+	}
+
+	private FactoryBean<ExecutorService> getExecutorFactoryBean(ConcurrentCheckRunConfiguration config, String threadGroupName, String threadNamePrefix) {
+		if (config.isVirtualThreads()) {
+			if (VirtualThreadExecutorFactoryBean.isSupported()) {
+				return new VirtualThreadExecutorFactoryBean(threadNamePrefix, config.isWaitForTasksToCompleteOnShutdown());
+			}
+			log.warn("Virtual threads were requested for {} but are not supported by this JVM. Falling back to a thread pool.", threadGroupName);
+		}
+		return getThreadPoolExecutorFactoryBean(config, threadGroupName, threadNamePrefix);
 	}
 
 	private ThreadPoolExecutorFactoryBean getThreadPoolExecutorFactoryBean(ConcurrentCheckRunConfiguration config, String threadGroupName, String threadNamePrefix) {
-		ThreadPoolExecutorFactoryBean t = new ThreadPoolExecutorFactoryBean();
+		ThreadPoolExecutorFactoryBean t;
+		if (config.isPrioritized()) {
+			t = new PriorityThreadPoolExecutorFactoryBean(config.getPriorityAgingMs());
+		} else {
+			t = new ThreadPoolExecutorFactoryBean();
+		}
 		t.setCorePoolSize(config.getCorePoolSize());
 		t.setMaxPoolSize(config.getMaxPoolSize());
 		t.setQueueCapacity(config.getQueueCapacity());
@@ -40,12 +68,58 @@ public class CheckServiceAutoConfiguration {
 		return t;
 	}
 
+	@Bean
+	public ExecutorCheckRunDispatcher checkRunDispatcher(ExecutorService checkRunService) {
+		return new ExecutorCheckRunDispatcher(checkRunService);
+	}
+
+	@Bean
+	public AdaptiveConcurrencyLimiter adaptiveConcurrencyLimiter(
+		ExecutorCheckRunDispatcher checkRunDispatcher,
+		AdaptiveLimiterConfiguration config
+	) {
+		return new AdaptiveConcurrencyLimiter(checkRunDispatcher, config);
+	}
+
+	@Bean
+	public OverloadGuard overloadGuard(
+		OverloadConfiguration config,
+		ExecutorService checkRunService,
+		AdaptiveConcurrencyLimiter adaptiveConcurrencyLimiter,
+		ExecutorCheckRunDispatcher checkRunDispatcher
+	) {
+		return new OverloadGuard(config, checkRunService, adaptiveConcurrencyLimiter, checkRunDispatcher);
+	}
+
+	@Bean
+	public TargetBulkhead targetBulkhead(
+		AdaptiveConcurrencyLimiter adaptiveConcurrencyLimiter,
+		TargetBulkheadConfiguration config
+	) {
+		return new TargetBulkhead(adaptiveConcurrencyLimiter, config);
+	}
+
+	@Bean
+	public LongestExpectedFirstOrdering checkOrdering(
+		ExecutorService checkRunService,
+		ConcurrentCheckRunConfiguration config
+	) {
+		return new LongestExpectedFirstOrdering(checkRunService, config.isLongestExpectedFirst());
+	}
+
 	@Bean
 	public ConcurrentCheckRunner checkCheckRunner(
 		ConcurrentCheckInterruptor interruptor,
-		ExecutorService checkRunService
+		ExecutorService checkRunService,
+		TargetBulkhead targetBulkhead,
+		OverloadGuard overloadGuard,
+		LongestExpectedFirstOrdering checkOrdering,
+		CheckSchedulerConfiguration schedulerConfig
 	) {
-		return new ConcurrentCheckRunner(interruptor, checkRunService);
+		ConcurrentCheckRunner runner = new ConcurrentCheckRunner(interruptor, checkRunService, targetBulkhead, overloadGuard);
+		runner.setOrdering(checkOrdering);
+		runner.setRunStarts(new RunStartHistogram(schedulerConfig.getHistogramWindowSeconds()));
+		return runner;
 	}
 
 	@Bean
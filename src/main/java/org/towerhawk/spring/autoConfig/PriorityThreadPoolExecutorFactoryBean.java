@@ -0,0 +1,43 @@
+package org.towerhawk.spring.autoConfig;
+
+import org.springframework.scheduling.concurrent.ThreadPoolExecutorFactoryBean;
+import org.towerhawk.monitor.check.run.concurrent.PriorityThreadPoolExecutor;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Same as ThreadPoolExecutorFactoryBean except that queued tasks are ordered by
+ * priority. See PriorityThreadPoolExecutor.
+ */
+public class PriorityThreadPoolExecutorFactoryBean extends ThreadPoolExecutorFactoryBean {
+
+	private final long agingMs;
+
+	public PriorityThreadPoolExecutorFactoryBean(long agingMs) {
+		this.agingMs = agingMs;
+	}
+
+	/**
+	 * Without a queue capacity the default SynchronousQueue hands tasks straight to idle
+	 * threads, a bounded priority queue would reject every offer instead.
+	 */
+	@Override
+	protected BlockingQueue<Runnable> createQueue(int queueCapacity) {
+		if (queueCapacity <= 0) {
+			return super.createQueue(queueCapacity);
+		}
+		return PriorityThreadPoolExecutor.createQueue(queueCapacity);
+	}
+
+	@Override
+	protected ThreadPoolExecutor createExecutor(
+		int corePoolSize, int maxPoolSize, int keepAliveSeconds, BlockingQueue<Runnable> queue,
+		ThreadFactory threadFactory, RejectedExecutionHandler rejectedExecutionHandler
+	) {
+		return new PriorityThreadPoolExecutor(corePoolSize, maxPoolSize, keepAliveSeconds, queue,
+			threadFactory, rejectedExecutionHandler, agingMs);
+	}
+}
@@ -0,0 +1,94 @@
+package org.towerhawk.spring.autoConfig;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.FactoryBean;
+import org.springframework.beans.factory.InitializingBean;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creates an ExecutorService that starts a new virtual thread for every task. This is
+ * built with reflection so that towerhawk can still be compiled for and run on JVMs
+ * without virtual threads. Use isSupported() before creating one.
+ */
+@Slf4j
+public class VirtualThreadExecutorFactoryBean implements FactoryBean<ExecutorService>, InitializingBean, DisposableBean {
+
+	private final String threadNamePrefix;
+	private final boolean waitForTasksToCompleteOnShutdown;
+	private ExecutorService executorService;
+
+	public VirtualThreadExecutorFactoryBean(String threadNamePrefix, boolean waitForTasksToCompleteOnShutdown) {
+		this.threadNamePrefix = threadNamePrefix;
+		this.waitForTasksToCompleteOnShutdown = waitForTasksToCompleteOnShutdown;
+	}
+
+	/**
+	 * @return true if this JVM can create virtual threads without any extra flags
+	 */
+	public static boolean isSupported() {
+		try {
+			createThreadFactory("VirtualThreadProbe - ");
+			return true;
+		} catch (Exception e) {
+			log.debug("Virtual threads are not supported", e);
+			return false;
+		}
+	}
+
+	private static ThreadFactory createThreadFactory(String threadNamePrefix) throws ReflectiveOperationException {
+		try {
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+			builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, threadNamePrefix, 0L);
+			return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+		} catch (InvocationTargetException e) {
+			// virtual threads are a preview feature on some JVMs and throw when it is not enabled
+			if (e.getCause() instanceof UnsupportedOperationException) {
+				throw new ReflectiveOperationException(e.getCause());
+			}
+			throw e;
+		}
+	}
+
+	@Override
+	public void afterPropertiesSet() throws Exception {
+		ThreadFactory threadFactory = createThreadFactory(threadNamePrefix);
+		Method newThreadPerTaskExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+		executorService = (ExecutorService) newThreadPerTaskExecutor.invoke(null, threadFactory);
+		log.info("Running {} tasks on virtual threads", threadNamePrefix);
+	}
+
+	@Override
+	public ExecutorService getObject() {
+		return executorService;
+	}
+
+	@Override
+	public Class<?> getObjectType() {
+		return ExecutorService.class;
+	}
+
+	@Override
+	public boolean isSingleton() {
+		return true;
+	}
+
+	@Override
+	public void destroy() throws Exception {
+		if (executorService != null) {
+			if (waitForTasksToCompleteOnShutdown) {
+				executorService.shutdown();
+				executorService.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+			} else {
+				executorService.shutdownNow();
+			}
+		}
+	}
+}
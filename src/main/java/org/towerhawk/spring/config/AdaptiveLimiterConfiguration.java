@@ -0,0 +1,31 @@
+package org.towerhawk.spring.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Getter
+@Setter
+@org.springframework.context.annotation.Configuration
+@ConfigurationProperties("towerhawk.limiter")
+public class AdaptiveLimiterConfiguration {
+
+	private boolean enabled = true;
+	private int initialLimit = Runtime.getRuntime().availableProcessors() * 4;
+	private int minLimit = Runtime.getRuntime().availableProcessors();
+	private int maxLimit = 1000;
+	/**
+	 * What the limit is multiplied by when checks are timing out
+	 */
+	private double backoffRatio = 0.9;
+	/**
+	 * A check taking longer than this fraction of its timeoutMs counts as slow, and slow
+	 * checks stop the limit from growing
+	 */
+	private double slowFraction = 0.5;
+	/**
+	 * The limit is decreased at most once in this window so a burst of timeouts from the
+	 * same cause does not collapse it
+	 */
+	private long decreaseCooldownMs = 1000;
+}
@@ -0,0 +1,39 @@
+package org.towerhawk.spring.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Getter
+@Setter
+@org.springframework.context.annotation.Configuration
+@ConfigurationProperties("towerhawk.scheduler")
+public class CheckSchedulerConfiguration {
+
+	private boolean enabled = false;
+	private String threadName = "CheckSchedulerThread";
+	private int priority = 5;
+	/**
+	 * How often the scheduler looks for checks whose cache is about to expire
+	 */
+	private long tickMs = 250;
+	/**
+	 * How long before the cache expires a check should be run again. This is capped
+	 * at half of a check's cacheMs.
+	 */
+	private long refreshLeadMs = 1000;
+	/**
+	 * Checks with a cacheMs lower than this are not kept warm since they would
+	 * effectively be run continuously.
+	 */
+	private long minimumCacheMs = 1000;
+	/**
+	 * Spread refreshes evenly over each check's cacheMs window using a fixed per check
+	 * offset instead of refreshing every check refreshLeadMs before it expires.
+	 */
+	private boolean spread = true;
+	/**
+	 * How many seconds of run start counts are kept for /stats/scheduler
+	 */
+	private int histogramWindowSeconds = 60;
+}
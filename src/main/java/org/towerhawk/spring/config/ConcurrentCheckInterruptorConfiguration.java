@@ -8,7 +8,8 @@ public class ConcurrentCheckInterruptorConfiguration {
 
 	private String threadName = "ConcurrentCheckInterruptorThread";
 	private int priority = 6;
-	private long pollMs = 10000;
+	private long tickMs = 10;
+	private int wheelSize = 512;
 
 	public String getThreadName() {
 		return threadName;
@@ -26,11 +27,19 @@ public class ConcurrentCheckInterruptorConfiguration {
 		this.priority = priority;
 	}
 
-	public long getPollMs() {
-		return pollMs;
+	public long getTickMs() {
+		return tickMs;
 	}
 
-	public void setPollMs(long pollMs) {
-		this.pollMs = pollMs;
+	public void setTickMs(long tickMs) {
+		this.tickMs = tickMs;
+	}
+
+	public int getWheelSize() {
+		return wheelSize;
+	}
+
+	public void setWheelSize(int wheelSize) {
+		this.wheelSize = wheelSize;
 	}
 }
@@ -20,4 +20,25 @@ public class ConcurrentCheckRunConfiguration {
 	private String threadGroupName = "CheckRunner";
 	private String threadNamePrefix = "CheckRunner - ";
 	private boolean waitForTasksToCompleteOnShutdown = false;
+	/**
+	 * Run each task on its own virtual thread instead of a pooled thread. This falls
+	 * back to the thread pool when the JVM does not support virtual threads.
+	 */
+	private boolean virtualThreads = false;
+	/**
+	 * Take queued checks with a higher priority first. Has no effect with virtualThreads
+	 * since tasks are never queued.
+	 */
+	private boolean prioritized = true;
+	/**
+	 * How many milliseconds of waiting one level of priority is worth. A queued check
+	 * is run before a newer check whose priority is higher by less than
+	 * waitedMs / priorityAgingMs.
+	 */
+	private long priorityAgingMs = 100;
+	/**
+	 * Within a priority, submit the checks expected to take longest first based on their
+	 * recent durations
+	 */
+	private boolean longestExpectedFirst = true;
 }
@@ -31,12 +31,13 @@ public class Configuration {
 	 */
 	private String checkDefinitionDir = "/etc/towerhawk";
 	private boolean automaticallyWatchFiles = true;
-	private int recentChecksSizeLimit = 10;
+	private int recentChecksSizeLimit = 1000;
 	private String defaultHost = "localhost";
 	public static final String DEFAULT_LOCAL_HOST = "N/A";
 	private String defaultLocalHost = DEFAULT_LOCAL_HOST;
 	private long defaultCacheMs = 30000;
 	private long defaultTimeoutMs = 30000;
+	private long defaultStaleWhileRevalidateMs = 0;
 	private long defaultAllowedFailureDurationMs = 0;
 	private byte defaultPriority = 0;
 	private String defaultDateFormat = "yyyy-MM-dd'T'HH:mm:ss.SSSZ";
@@ -0,0 +1,40 @@
+package org.towerhawk.spring.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Getter
+@Setter
+@org.springframework.context.annotation.Configuration
+@ConfigurationProperties("towerhawk.history")
+public class HistoryConfiguration {
+
+	private boolean enabled = false;
+	/**
+	 * Every check gets its own directory of segment files under this one
+	 */
+	private String directory = "/var/lib/towerhawk/history";
+	/**
+	 * How many runs fit in one segment file before a new one is started
+	 */
+	private int segmentRecords = 16384;
+	/**
+	 * Segments whose newest run is older than this are deleted
+	 */
+	private long maxAgeHours = 24 * 14;
+	/**
+	 * The oldest segments of a check are deleted while its segments take up more than this
+	 */
+	private long maxBytesPerSeries = 64L * 1024 * 1024;
+	private long retentionIntervalMs = 60000;
+	/**
+	 * How many runs of a check a history query returns when it does not pass a limit
+	 */
+	private int defaultQueryLimit = 10000;
+	/**
+	 * How many runs of a check are read at most to downsample them
+	 */
+	private int maxDownsampleRecords = 1000000;
+	private String threadName = "HistoryRetention";
+}
@@ -0,0 +1,43 @@
+package org.towerhawk.spring.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Getter
+@Setter
+@org.springframework.context.annotation.Configuration
+@ConfigurationProperties("towerhawk.overload")
+public class OverloadConfiguration {
+
+	/**
+	 * Off by default like the history store, journal and rollups, since it answers
+	 * requests with stale CheckRuns or 503s once towerhawk is saturated
+	 */
+	private boolean enabled = false;
+	/**
+	 * Checks with a priority lower than this are served from their last CheckRun while
+	 * towerhawk is saturated. Checks default to priority 0 so nothing is shed unless this
+	 * is raised above the priority of the checks that can be shed.
+	 */
+	private int shedBelowPriority = 0;
+	/**
+	 * How full the check executor queue can get, as a fraction of its capacity, before
+	 * towerhawk counts as saturated
+	 */
+	private double queueHighWatermark = 0.8;
+	/**
+	 * How many checks can wait on the adaptive limiter, as a multiple of its limit,
+	 * before towerhawk counts as saturated
+	 */
+	private double limiterWaitingRatio = 4;
+	/**
+	 * How many requests that run checks can be in flight before new ones are answered
+	 * from the last CheckRun, or get a 503 if there is none yet
+	 */
+	private int maxConcurrentRequests = 64;
+	/**
+	 * Sent as Retry-After on 503 responses
+	 */
+	private int retryAfterSeconds = 5;
+}
@@ -0,0 +1,35 @@
+package org.towerhawk.spring.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Getter
+@Setter
+@org.springframework.context.annotation.Configuration
+@ConfigurationProperties("towerhawk.rollup")
+public class RollupConfiguration {
+
+	private boolean enabled = false;
+	/**
+	 * How many 1 minute buckets are kept per check, 6 hours by default
+	 */
+	private int oneMinuteBuckets = 360;
+	/**
+	 * How many 5 minute buckets are kept per check, 3 days by default
+	 */
+	private int fiveMinuteBuckets = 864;
+	/**
+	 * How many 1 hour buckets are kept per check, 92 days by default
+	 */
+	private int oneHourBuckets = 2208;
+	/**
+	 * A failing check is only counted as failing for up to this long after its previous
+	 * run, so that a check that stops running is not failing forever
+	 */
+	private long maxFailingGapMs = 3600000;
+	/**
+	 * Queries use the finest resolution that covers their range in at most this many buckets
+	 */
+	private int defaultMaxBuckets = 500;
+}
@@ -0,0 +1,37 @@
+package org.towerhawk.spring.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Getter
+@Setter
+@org.springframework.context.annotation.Configuration
+@ConfigurationProperties("towerhawk.journal")
+public class StateJournalConfiguration {
+
+	private boolean enabled = false;
+	/**
+	 * Holds the snapshot and the journal files written since it was taken
+	 */
+	private String directory = "/var/lib/towerhawk/state";
+	/**
+	 * How often the journal is forced to disk. A crash loses at most this much state.
+	 */
+	private long flushIntervalMs = 1000;
+	/**
+	 * How often the state of every check is written to a new snapshot so that older
+	 * journal files can be deleted
+	 */
+	private long snapshotIntervalMs = 300000;
+	/**
+	 * A snapshot is taken early once the journal grows beyond this
+	 */
+	private long maxJournalBytes = 16L * 1024 * 1024;
+	/**
+	 * The state of checks that have not run for this long, usually because they were
+	 * removed from the definitions, is left out of the next snapshot
+	 */
+	private long maxStateAgeHours = 24 * 14;
+	private String threadName = "StateJournal";
+}
@@ -0,0 +1,31 @@
+package org.towerhawk.spring.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+@Getter
+@Setter
+@org.springframework.context.annotation.Configuration
+@ConfigurationProperties("towerhawk.bulkhead")
+public class TargetBulkheadConfiguration {
+
+	private boolean enabled = true;
+	/**
+	 * How many checks can run against the same host at once
+	 */
+	private int permitsPerTarget = 4;
+	/**
+	 * Overrides permitsPerTarget for specific hosts. Hosts are matched ignoring case, the
+	 * same as the targets of checks.
+	 */
+	private Map<String, Integer> targetPermits = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+
+	public void setTargetPermits(Map<String, Integer> targetPermits) {
+		this.targetPermits = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+		this.targetPermits.putAll(targetPermits);
+	}
+}
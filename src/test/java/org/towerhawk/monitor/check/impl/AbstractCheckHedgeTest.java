@@ -0,0 +1,145 @@
+package org.towerhawk.monitor.check.impl;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.towerhawk.monitor.app.App;
+import org.towerhawk.monitor.check.Check;
+import org.towerhawk.monitor.check.TestCheck;
+import org.towerhawk.monitor.check.run.CheckRun;
+import org.towerhawk.monitor.check.run.Status;
+import org.towerhawk.monitor.check.run.context.DefaultRunContext;
+import org.towerhawk.monitor.check.run.context.RunContext;
+import org.towerhawk.monitor.check.type.PortCheck;
+import org.towerhawk.monitor.check.type.constant.SuccessfulCheck;
+import org.towerhawk.spring.config.Configuration;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+public class AbstractCheckHedgeTest {
+
+	private final RunContext runContext = new DefaultRunContext();
+
+	@Test
+	public void testHedgeWins() throws Exception {
+		AttemptCheck check = new AttemptCheck();
+		CompletableFuture<CheckRun> run = check.runAsync(runContext).toCompletableFuture();
+		Thread.sleep(20);
+		Assert.assertSame(run, check.hedge(runContext));
+		Assert.assertNull("Only one hedged attempt per run", check.hedge(runContext));
+
+		check.complete(1, Status.SUCCEEDED);
+		Assert.assertTrue(run.isDone());
+		CheckRun checkRun = run.get();
+		Assert.assertEquals(Status.SUCCEEDED, checkRun.getStatus());
+		Assert.assertEquals(true, checkRun.getContext().get("hedged"));
+		Assert.assertTrue("The duration counts from the first attempt", checkRun.getDuration().toMillis() >= 20);
+
+		check.complete(0, Status.CRITICAL);
+		Assert.assertSame("The losing attempt is dropped", checkRun, check.getLastCheckRun());
+		Assert.assertFalse(check.isRunning());
+	}
+
+	@Test
+	public void testBothFail() throws Exception {
+		AttemptCheck check = new AttemptCheck();
+		CompletableFuture<CheckRun> run = check.runAsync(runContext).toCompletableFuture();
+		check.hedge(runContext);
+
+		check.complete(1, Status.CRITICAL);
+		Assert.assertFalse("Waits on the first attempt to succeed", run.isDone());
+		check.complete(0, Status.CRITICAL);
+		Assert.assertTrue(run.isDone());
+		CheckRun checkRun = run.get();
+		Assert.assertEquals(Status.CRITICAL, checkRun.getStatus());
+		Assert.assertNull("The last attempt to fail decides the run", checkRun.getContext().get("hedged"));
+		Assert.assertSame(checkRun, check.getLastCheckRun());
+	}
+
+	@Test
+	public void testOriginalFailsFirst() throws Exception {
+		AttemptCheck check = new AttemptCheck();
+		CompletableFuture<CheckRun> run = check.runAsync(runContext).toCompletableFuture();
+		check.hedge(runContext);
+
+		check.complete(0, Status.CRITICAL);
+		Assert.assertFalse(run.isDone());
+		Assert.assertTrue(check.isRunning());
+		check.complete(1, Status.SUCCEEDED);
+		CheckRun checkRun = run.get();
+		Assert.assertEquals(Status.SUCCEEDED, checkRun.getStatus());
+		Assert.assertEquals(true, checkRun.getContext().get("hedged"));
+		Assert.assertNull(check.getFailingSince());
+	}
+
+	@Test
+	public void testAttemptsDoNotShareTheRunContext() {
+		AttemptCheck check = new AttemptCheck();
+		check.runAsync(runContext);
+		check.hedge(runContext);
+		Assert.assertSame(runContext, check.contexts.get(0));
+		Assert.assertNotSame("The hedged attempt gets its own copy", runContext, check.contexts.get(1));
+	}
+
+	@Test
+	public void testHedgeIsOnlyAcceptedByTypesThatCanOverlap() {
+		PortCheck portCheck = new PortCheck();
+		portCheck.setHedge(new HedgePolicy());
+		initApp(portCheck);
+		Assert.assertTrue(portCheck.isActive());
+
+		PortCheck boundPortCheck = new PortCheck();
+		boundPortCheck.setHedge(new HedgePolicy());
+		boundPortCheck.setLocalPort(40000);
+		try {
+			initApp(boundPortCheck);
+			Assert.fail("Two attempts cannot bind the same localPort");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+
+		SuccessfulCheck successfulCheck = new SuccessfulCheck();
+		successfulCheck.setHedge(new HedgePolicy());
+		try {
+			initApp(successfulCheck);
+			Assert.fail("Types have to opt in to hedging");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+	}
+
+	private void initApp(Check check) {
+		App app = new App();
+		app.setChecks(Collections.singletonMap("check", check));
+		app.init(null, new Configuration(), app, "app");
+	}
+
+	private static class AttemptCheck extends TestCheck {
+
+		private final List<CheckRun.Builder> builders = new ArrayList<>();
+		private final List<CompletableFuture<Void>> attempts = new ArrayList<>();
+		private final List<RunContext> contexts = new ArrayList<>();
+
+		@Override
+		protected CompletionStage<Void> doRunAsync(CheckRun.Builder builder, RunContext context) {
+			CompletableFuture<Void> attempt = new CompletableFuture<>();
+			builders.add(builder);
+			contexts.add(context);
+			attempts.add(attempt);
+			return attempt;
+		}
+
+		private void complete(int attempt, Status status) {
+			CheckRun.Builder builder = builders.get(attempt);
+			if (status == Status.SUCCEEDED) {
+				builder.succeeded();
+			} else {
+				builder.critical();
+			}
+			attempts.get(attempt).complete(null);
+		}
+	}
+}
@@ -0,0 +1,74 @@
+package org.towerhawk.monitor.check.impl;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.towerhawk.monitor.check.TestCheck;
+import org.towerhawk.monitor.check.run.CheckRun;
+import org.towerhawk.monitor.check.run.context.DefaultRunContext;
+import org.towerhawk.monitor.check.run.context.RunContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+public class AbstractCheckInFlightTest {
+
+	@Test
+	public void testConcurrentCallersShareTheRunInFlight() {
+		BlockingCheck check = new BlockingCheck(true);
+		CompletableFuture<CheckRun> first = check.runAsync(new DefaultRunContext().setRefreshCache(true)).toCompletableFuture();
+		CompletableFuture<CheckRun> second = check.runAsync(new DefaultRunContext().setRefreshCache(true)).toCompletableFuture();
+		Assert.assertSame(first, second);
+		Assert.assertEquals(1, check.contexts.size());
+	}
+
+	@Test
+	public void testChecksThatDoNotShareRunAgainWithTheirOwnContext() {
+		BlockingCheck check = new BlockingCheck(false);
+		RunContext firstContext = new DefaultRunContext().setRefreshCache(true);
+		RunContext secondContext = new DefaultRunContext().setRefreshCache(true);
+		CompletableFuture<CheckRun> first = check.runAsync(firstContext).toCompletableFuture();
+		CompletableFuture<CheckRun> second = check.runAsync(secondContext).toCompletableFuture();
+		Assert.assertEquals("The second caller waits for the run in flight", 1, check.contexts.size());
+
+		check.complete(0);
+		Assert.assertTrue(first.isDone());
+		Assert.assertFalse(second.isDone());
+		Assert.assertEquals(2, check.contexts.size());
+		Assert.assertSame(secondContext, check.contexts.get(1));
+
+		check.complete(1);
+		Assert.assertTrue(second.isDone());
+		Assert.assertNotSame(first.join(), second.join());
+	}
+
+	private static class BlockingCheck extends TestCheck {
+
+		private final boolean sharesInFlightRun;
+		private final List<RunContext> contexts = new ArrayList<>();
+		private final List<CompletableFuture<Void>> attempts = new ArrayList<>();
+
+		private BlockingCheck(boolean sharesInFlightRun) {
+			this.sharesInFlightRun = sharesInFlightRun;
+		}
+
+		@Override
+		protected boolean sharesInFlightRun() {
+			return sharesInFlightRun;
+		}
+
+		@Override
+		protected CompletionStage<Void> doRunAsync(CheckRun.Builder builder, RunContext context) {
+			CompletableFuture<Void> attempt = new CompletableFuture<>();
+			builder.succeeded();
+			contexts.add(context);
+			attempts.add(attempt);
+			return attempt;
+		}
+
+		private void complete(int attempt) {
+			attempts.get(attempt).complete(null);
+		}
+	}
+}
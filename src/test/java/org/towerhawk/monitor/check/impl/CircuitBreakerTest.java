@@ -0,0 +1,74 @@
+package org.towerhawk.monitor.check.impl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CircuitBreakerTest {
+
+	@Test
+	public void testOpensAtThresholdWithGrowingBackoff() {
+		CircuitBreaker breaker = new CircuitBreaker();
+		Assert.assertEquals(0, breaker.recordFailure(1000, 1000));
+		Assert.assertEquals(0, breaker.recordFailure(1000, 2000));
+		Assert.assertFalse("Stays closed below the threshold", breaker.isOpen(2000));
+
+		Assert.assertEquals(3000 + 5000, breaker.recordFailure(1000, 3000));
+		Assert.assertTrue(breaker.isOpen(7999));
+		Assert.assertTrue(breaker.isProbing());
+		Assert.assertFalse("Probes again once the backoff passed", breaker.isOpen(8000));
+		Assert.assertEquals(8000 + 10000, breaker.recordFailure(1000, 8000));
+		Assert.assertEquals(18000 + 20000, breaker.recordFailure(1000, 18000));
+
+		breaker.recordSuccess();
+		Assert.assertFalse(breaker.isOpen(18000));
+		Assert.assertFalse(breaker.isProbing());
+		Assert.assertEquals(0, breaker.getConsecutiveFailures());
+		Assert.assertEquals("A success starts counting from scratch", 0, breaker.recordFailure(40000, 40000));
+	}
+
+	@Test
+	public void testBackoffIsCapped() {
+		CircuitBreaker breaker = new CircuitBreaker();
+		breaker.setFailureThreshold(1);
+		long now = 0;
+		for (int i = 0; i < 100; i++) {
+			long openUntil = breaker.recordFailure(1000, now);
+			Assert.assertTrue("Backoff must not overflow", openUntil > now);
+			Assert.assertTrue(openUntil - now <= breaker.getMaxBackoffMs());
+			now = openUntil;
+		}
+		Assert.assertEquals(now + 300000, breaker.recordFailure(1000, now));
+	}
+
+	@Test
+	public void testThresholdBelowOneOpensOnFirstFailure() {
+		CircuitBreaker breaker = new CircuitBreaker();
+		breaker.setFailureThreshold(0);
+		Assert.assertEquals(5000, breaker.recordFailure(1000, 0));
+	}
+
+	@Test
+	public void testCopyStateKeepsTheCircuitOpen() {
+		CircuitBreaker previous = new CircuitBreaker();
+		for (int i = 0; i < 4; i++) {
+			previous.recordFailure(1000, 1000);
+		}
+		CircuitBreaker reloaded = new CircuitBreaker();
+		reloaded.copyState(previous);
+		Assert.assertEquals(4, reloaded.getConsecutiveFailures());
+		Assert.assertEquals(previous.getOpenUntil(), reloaded.getOpenUntil());
+		Assert.assertTrue(reloaded.isOpen(1000));
+		Assert.assertEquals("The backoff carries on where it left off", 1000 + 20000, reloaded.recordFailure(1000, 1000));
+	}
+
+	@Test
+	public void testOnlyFailuresOfTheSameOutageCount() {
+		CircuitBreaker breaker = new CircuitBreaker();
+		breaker.recordFailure(1000, 1000);
+		breaker.recordFailure(1000, 2000);
+		Assert.assertEquals("A new failingSince starts counting from scratch", 0, breaker.recordFailure(3000, 3000));
+		Assert.assertEquals(1, breaker.getConsecutiveFailures());
+		breaker.recordFailure(3000, 4000);
+		Assert.assertEquals(5000 + 5000, breaker.recordFailure(3000, 5000));
+	}
+}
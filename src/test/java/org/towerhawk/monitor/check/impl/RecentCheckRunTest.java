@@ -10,6 +10,8 @@ import org.towerhawk.monitor.check.run.CheckRun;
 import org.towerhawk.monitor.check.type.constant.SuccessfulCheck;
 import org.towerhawk.spring.config.Configuration;
 
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.stream.IntStream;
@@ -49,6 +51,126 @@ public class RecentCheckRunTest {
 		Assert.assertEquals("CheckRun 9 should be last", "9", checkRuns.get(9).getMessage());
 	}
 
+	@Test
+	public void testDurationPercentile() {
+		RecentCheckRun recentCheckRun = new RecentCheckRun().setDefaultCheckRun(checkRun).setSizeLimit(20);
+		Assert.assertEquals("No samples should not give a percentile", -1, recentCheckRun.getDurationPercentileMs(95, 1));
+		IntStream.rangeClosed(1, 10).forEach(i -> recentCheckRun.addCheckRun(
+			CheckRun.builder(check).succeeded().duration(Duration.ofMillis(i * 10)).build()));
+		recentCheckRun.addCheckRun(CheckRun.builder(check).critical().duration(Duration.ofMillis(1000)).build());
+		Assert.assertEquals("p90 of successful runs", 90, recentCheckRun.getDurationPercentileMs(90, 5));
+		Assert.assertEquals("p100 should ignore failed runs", 100, recentCheckRun.getDurationPercentileMs(100, 5));
+		Assert.assertEquals("Too few samples should not give a percentile", -1, recentCheckRun.getDurationPercentileMs(90, 11));
+	}
+
+	@Test
+	public void testRebuiltRunsKeepTheirColumns() {
+		RecentCheckRun recentCheckRun = new RecentCheckRun().setDefaultCheckRun(checkRun).setSizeLimit(50);
+		List<CheckRun> added = new ArrayList<>();
+		for (int i = 0; i < 40; i++) {
+			CheckRun.Builder builder = CheckRun.builder(check)
+				.message(i % 3 == 0 ? null : "message " + i % 3)
+				.startTime(1000000L + i * 1000)
+				.endTime(1000000L + i * 1000 + i)
+				.durationNanos(i * 1000000L)
+				.timedOut(i % 4 == 0);
+			if (i % 2 == 0) {
+				builder.succeeded();
+			} else {
+				builder.warning();
+			}
+			if (i % 5 == 0) {
+				builder.addContext(CheckRun.STALE, true);
+			}
+			added.add(builder.build());
+			recentCheckRun.addCheckRun(added.get(i));
+		}
+		List<CheckRun> checkRuns = recentCheckRun.getRecentCheckRuns();
+		Assert.assertEquals(40, checkRuns.size());
+		for (int i = 0; i < 40; i++) {
+			CheckRun expected = added.get(i);
+			CheckRun actual = checkRuns.get(i);
+			if (i >= 30) {
+				Assert.assertSame("The newest runs are kept as they were added", expected, actual);
+				continue;
+			}
+			Assert.assertNotSame("Older runs are rebuilt", expected, actual);
+			Assert.assertEquals(expected.getMessage(), actual.getMessage());
+			Assert.assertEquals(expected.getStatus(), actual.getStatus());
+			Assert.assertEquals(expected.getStartTime().toInstant(), actual.getStartTime().toInstant());
+			Assert.assertEquals(expected.getEndTime().toInstant(), actual.getEndTime().toInstant());
+			Assert.assertEquals(expected.getDuration(), actual.getDuration());
+			Assert.assertEquals(expected.isTimedOut(), actual.isTimedOut());
+			Assert.assertEquals(i % 5 == 0, actual.getContext() != null && actual.getContext().containsKey(CheckRun.STALE));
+			Assert.assertSame(check, actual.getCheck());
+		}
+	}
+
+	@Test
+	public void testWrapAroundAfterResize() {
+		RecentCheckRun recentCheckRun = new RecentCheckRun().setDefaultCheckRun(checkRun).setSizeLimit(15);
+		addCheckRuns(recentCheckRun, 0, 20);
+		assertMessages(recentCheckRun, 5, 20);
+		recentCheckRun.setSizeLimit(25);
+		assertMessages(recentCheckRun, 5, 20);
+		addCheckRuns(recentCheckRun, 20, 35);
+		assertMessages(recentCheckRun, 10, 35);
+		recentCheckRun.setSizeLimit(12);
+		assertMessages(recentCheckRun, 23, 35);
+		addCheckRuns(recentCheckRun, 35, 40);
+		assertMessages(recentCheckRun, 28, 40);
+	}
+
+	@Test
+	public void testMessageTableReusesReleasedIds() {
+		RecentCheckRun.MessageTable messages = new RecentCheckRun.MessageTable();
+		Assert.assertEquals(RecentCheckRun.MessageTable.NO_MESSAGE, messages.intern(null));
+		Assert.assertNull(messages.get(RecentCheckRun.MessageTable.NO_MESSAGE));
+		int a = messages.intern("a");
+		Assert.assertEquals("Equal messages share an id", a, messages.intern(new String("a")));
+		int b = messages.intern("b");
+		Assert.assertNotEquals(a, b);
+		messages.release(a);
+		Assert.assertEquals("a is still referenced once", "a", messages.get(a));
+		messages.release(a);
+		Assert.assertNull(messages.get(a));
+		Assert.assertEquals("The released id is reused", a, messages.intern("c"));
+		Assert.assertEquals("c", messages.get(a));
+		Assert.assertEquals("b", messages.get(b));
+		for (int i = 0; i < 20; i++) {
+			messages.intern("message " + i);
+		}
+		Assert.assertEquals("Growing keeps the existing messages", "c", messages.get(a));
+		Assert.assertEquals("b", messages.get(b));
+	}
+
+	@Test
+	public void testEvictedMessagesAreReleased() {
+		RecentCheckRun recentCheckRun = new RecentCheckRun().setDefaultCheckRun(checkRun).setSizeLimit(12);
+		for (int i = 0; i < 100; i++) {
+			recentCheckRun.addCheckRun(CheckRun.builder(check).message("message " + i % 4).succeeded().build());
+		}
+		List<CheckRun> checkRuns = recentCheckRun.getRecentCheckRuns();
+		Assert.assertEquals(12, checkRuns.size());
+		for (int i = 0; i < 12; i++) {
+			Assert.assertEquals("message " + (88 + i) % 4, checkRuns.get(i).getMessage());
+		}
+	}
+
+	private void addCheckRuns(RecentCheckRun recentCheckRun, int from, int to) {
+		for (int i = from; i < to; i++) {
+			recentCheckRun.addCheckRun(CheckRun.builder(check).message(String.valueOf(i)).build());
+		}
+	}
+
+	private void assertMessages(RecentCheckRun recentCheckRun, int from, int to) {
+		List<CheckRun> checkRuns = recentCheckRun.getRecentCheckRuns();
+		Assert.assertEquals(to - from, checkRuns.size());
+		for (int i = from; i < to; i++) {
+			Assert.assertEquals(String.valueOf(i), checkRuns.get(i - from).getMessage());
+		}
+	}
+
 	private List<CheckRun> generateCheckRuns(int sizeLimit, int count) {
 		RecentCheckRun recentCheckRun = new RecentCheckRun().setDefaultCheckRun(checkRun).setSizeLimit(sizeLimit);
 		IntStream.range(0, count).forEach(i -> {
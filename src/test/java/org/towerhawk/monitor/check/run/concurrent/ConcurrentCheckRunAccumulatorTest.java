@@ -0,0 +1,98 @@
+package org.towerhawk.monitor.check.run.concurrent;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.towerhawk.monitor.check.Check;
+import org.towerhawk.monitor.check.TestCheck;
+import org.towerhawk.monitor.check.run.CheckRun;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class ConcurrentCheckRunAccumulatorTest {
+
+	@Test
+	public void testKeepsEveryRunFromManyThreads() throws Exception {
+		int checkCount = 200;
+		List<Check> checks = new ArrayList<>();
+		for (int i = 0; i < checkCount; i++) {
+			checks.add(new TestCheck("check" + i));
+		}
+		ConcurrentCheckRunAccumulator accumulator = new ConcurrentCheckRunAccumulator(checks);
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		CountDownLatch start = new CountDownLatch(1);
+		try {
+			for (Check check : checks) {
+				executor.submit(() -> {
+					start.await();
+					accumulator.accumulate(CheckRun.builder(check).succeeded().build());
+					return null;
+				});
+			}
+			start.countDown();
+			List<CheckRun> checkRuns = accumulator.getCompletionStage().toCompletableFuture().get(10, TimeUnit.SECONDS);
+			Assert.assertEquals("No CheckRun should be lost", checkCount, checkRuns.size());
+			for (int i = 1; i < checkRuns.size(); i++) {
+				Assert.assertTrue("CheckRuns should be sorted", checkRuns.get(i - 1).compareTo(checkRuns.get(i)) <= 0);
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testDuplicateRunIsOnlyCountedOnce() {
+		Check first = new TestCheck("first");
+		Check second = new TestCheck("second");
+		ConcurrentCheckRunAccumulator accumulator = new ConcurrentCheckRunAccumulator(Arrays.asList(first, second));
+		accumulator.accumulate(CheckRun.builder(first).succeeded().build());
+		accumulator.accumulate(CheckRun.builder(first).critical().build());
+		Assert.assertFalse(accumulator.getCompletionStage().toCompletableFuture().isDone());
+		Assert.assertEquals(Arrays.asList(second.getFullName()), accumulator.getPendingChecks());
+		accumulator.accumulate(CheckRun.builder(second).succeeded().build());
+		Assert.assertTrue(accumulator.getCompletionStage().toCompletableFuture().isDone());
+		Assert.assertEquals(2, accumulator.getChecks().size());
+	}
+
+	@Test
+	public void testDuplicateChecksShareASlot() {
+		Check first = new TestCheck("first");
+		Check second = new TestCheck("second");
+		ConcurrentCheckRunAccumulator accumulator = new ConcurrentCheckRunAccumulator(Arrays.asList(first, second, first));
+		Assert.assertEquals(2, accumulator.size());
+		Assert.assertSame(second, accumulator.getCheck(1));
+		accumulator.accumulate(0, CheckRun.builder(first).succeeded().build());
+		accumulator.accumulate(1, CheckRun.builder(second).succeeded().build());
+		Assert.assertTrue(accumulator.getCompletionStage().toCompletableFuture().isDone());
+		Assert.assertEquals(2, accumulator.getChecks().size());
+	}
+
+	@Test
+	public void testNullRunStillCompletes() {
+		Check check = new TestCheck();
+		ConcurrentCheckRunAccumulator accumulator = new ConcurrentCheckRunAccumulator(Arrays.asList(check));
+		accumulator.accumulate(check, null);
+		Assert.assertTrue(accumulator.getCompletionStage().toCompletableFuture().isDone());
+		Assert.assertTrue(accumulator.getChecks().isEmpty());
+	}
+
+	@Test
+	public void testExpirePendingServesLastRun() {
+		Check done = new TestCheck("done");
+		Check straggler = new TestCheck("straggler");
+		ConcurrentCheckRunAccumulator accumulator = new ConcurrentCheckRunAccumulator(Arrays.asList(done, straggler));
+		accumulator.accumulate(CheckRun.builder(done).succeeded().build());
+		Assert.assertEquals(1, accumulator.expirePending("budget expired"));
+		Assert.assertTrue(accumulator.getCompletionStage().toCompletableFuture().isDone());
+		CheckRun stale = accumulator.getChecks().stream().filter(c -> c.getCheck() == straggler).findFirst().get();
+		Assert.assertEquals("budget expired", stale.getContext().get(CheckRun.STALE));
+		accumulator.accumulate(CheckRun.builder(straggler).critical().build());
+		Assert.assertEquals("A late CheckRun should be dropped", stale, accumulator.getChecks().stream()
+			.filter(c -> c.getCheck() == straggler).findFirst().get());
+	}
+}
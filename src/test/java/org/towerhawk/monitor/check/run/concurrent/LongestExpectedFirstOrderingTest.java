@@ -0,0 +1,94 @@
+package org.towerhawk.monitor.check.run.concurrent;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.towerhawk.monitor.check.Check;
+import org.towerhawk.monitor.check.TestCheck;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+public class LongestExpectedFirstOrderingTest {
+
+	@Test
+	public void testLongestFirstShortensMakespan() {
+		Check shortA = new TestCheck("shortA");
+		Check shortB = new TestCheck("shortB");
+		Check longest = new TestCheck("longest");
+		Map<Check, Long> expected = new HashMap<>();
+		expected.put(shortA, 10L);
+		expected.put(shortB, 10L);
+		expected.put(longest, 100L);
+		List<Check> shortFirst = Arrays.asList(shortA, shortB, longest);
+		List<Check> longestFirst = Arrays.asList(longest, shortA, shortB);
+		Assert.assertEquals(110, LongestExpectedFirstOrdering.estimateMakespan(shortFirst, expected, 2));
+		Assert.assertEquals(100, LongestExpectedFirstOrdering.estimateMakespan(longestFirst, expected, 2));
+	}
+
+	@Test
+	public void testOrdersByPriorityThenLongestExpected() {
+		Check a = new OrderedCheck("a", 1, 10, 1000);
+		Check b = new OrderedCheck("b", 0, 500, 400);
+		Check c = new OrderedCheck("c", 1, 100, 2000);
+		// without history a check is expected to take its timeout
+		Check d = new OrderedCheck("d", 1, -1, 50);
+		// tied on priority and expected duration so compareTo() puts the shorter timeout first
+		Check e = new OrderedCheck("e", 0, 20, 300);
+		Check f = new OrderedCheck("f", 0, 20, 200);
+		List<Check> checks = Arrays.asList(a, b, c, d, e, f);
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 2, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>());
+		try {
+			LongestExpectedFirstOrdering ordering = new LongestExpectedFirstOrdering(executor, true);
+			Assert.assertEquals(Arrays.asList(c, d, a, b, f, e), ordering.order(checks));
+
+			Map<String, Object> stats = ordering.getStats();
+			Assert.assertEquals(1L, stats.get("orderings"));
+			Assert.assertEquals(1L, stats.get("orderingsWithQueuedChecks"));
+			// compareTo() order d, a, c, f, e, b on two threads
+			Assert.assertEquals(590L, stats.get("estimatedBaselineMakespanMs"));
+			Assert.assertEquals(560L, stats.get("estimatedMakespanMs"));
+			Assert.assertEquals(30L, stats.get("estimatedSavedMs"));
+			Assert.assertEquals(30L, stats.get("maxEstimatedSavedMs"));
+
+			LongestExpectedFirstOrdering disabled = new LongestExpectedFirstOrdering(executor, false);
+			Assert.assertEquals(Arrays.asList(d, a, c, f, e, b), disabled.order(checks));
+			Assert.assertEquals(0L, disabled.getStats().get("orderings"));
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private static class OrderedCheck extends TestCheck {
+
+		private final byte priority;
+		private final long expectedDurationMs;
+		private final long timeoutMs;
+
+		private OrderedCheck(String checkId, int priority, long expectedDurationMs, long timeoutMs) {
+			super(checkId);
+			this.priority = (byte) priority;
+			this.expectedDurationMs = expectedDurationMs;
+			this.timeoutMs = timeoutMs;
+		}
+
+		@Override
+		public byte getPriority() {
+			return priority;
+		}
+
+		@Override
+		public long getExpectedDurationMs() {
+			return expectedDurationMs;
+		}
+
+		@Override
+		public long getTimeoutMs() {
+			return timeoutMs;
+		}
+	}
+}
@@ -0,0 +1,66 @@
+package org.towerhawk.monitor.check.run.concurrent;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class TimerWheelTest {
+
+	private static final long START = 1_000_000L;
+	private TimerWheel timerWheel;
+	private List<String> fired;
+
+	@Before
+	public void setup() {
+		timerWheel = new TimerWheel(10, 8, START);
+		fired = new ArrayList<>();
+	}
+
+	@Test
+	public void testNeverExpiresEarly() {
+		timerWheel.schedule(() -> fired.add("a"), START + 15);
+		timerWheel.advance(START + 10);
+		Assert.assertTrue("Timeout should not fire before its deadline", fired.isEmpty());
+		timerWheel.advance(START + 20);
+		Assert.assertEquals("Timeout should fire on the first tick after its deadline", 1, fired.size());
+	}
+
+	@Test
+	public void testCancel() {
+		TimerWheel.Timeout timeout = timerWheel.schedule(() -> fired.add("a"), START + 15);
+		timerWheel.advance(START);
+		Assert.assertTrue("First cancel should succeed", timeout.cancel());
+		Assert.assertFalse("Second cancel should fail", timeout.cancel());
+		timerWheel.advance(START + 100);
+		Assert.assertTrue("Cancelled timeout should not fire", fired.isEmpty());
+		Assert.assertEquals(1, timerWheel.getCancelledCount());
+		Assert.assertEquals(0, timerWheel.getPendingCount());
+	}
+
+	@Test
+	public void testMultipleRounds() {
+		// the wheel covers 80ms so this needs to go around more than once
+		timerWheel.schedule(() -> fired.add("a"), START + 205);
+		timerWheel.schedule(() -> fired.add("b"), START + 45);
+		timerWheel.advance(START + 50);
+		Assert.assertEquals("Only b should have fired", 1, fired.size());
+		timerWheel.advance(START + 200);
+		Assert.assertEquals("a should not fire until the third round", 1, fired.size());
+		timerWheel.advance(START + 210);
+		Assert.assertEquals("a should fire after its deadline", 2, fired.size());
+		Assert.assertEquals("a", fired.get(1));
+	}
+
+	@Test
+	public void testLateExpirations() {
+		timerWheel.schedule(() -> fired.add("a"), START + 10);
+		timerWheel.schedule(() -> fired.add("b"), START + 10);
+		timerWheel.advance(START + 100);
+		Assert.assertEquals("Both timeouts should expire in the same batch", 2, fired.size());
+		Assert.assertEquals(2, timerWheel.getLateCount());
+		Assert.assertEquals(90, timerWheel.getMaxLatenessMs());
+	}
+}
@@ -0,0 +1,235 @@
+package org.towerhawk.monitor.check.run.schedule;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.towerhawk.monitor.MonitorService;
+import org.towerhawk.monitor.check.Check;
+import org.towerhawk.monitor.check.TestCheck;
+import org.towerhawk.monitor.check.run.CheckRun;
+import org.towerhawk.monitor.check.run.concurrent.ConcurrentCheckRunner;
+import org.towerhawk.monitor.check.run.context.RunContext;
+import org.towerhawk.monitor.history.HistoryStore;
+import org.towerhawk.monitor.journal.StateJournal;
+import org.towerhawk.monitor.rollup.RollupEngine;
+import org.towerhawk.spring.config.CheckSchedulerConfiguration;
+import org.towerhawk.spring.config.Configuration;
+import org.towerhawk.spring.config.HistoryConfiguration;
+import org.towerhawk.spring.config.RollupConfiguration;
+import org.towerhawk.spring.config.StateJournalConfiguration;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+public class CheckSchedulerTest {
+
+	private static final long NOW = 1500000000000L;
+
+	private CheckSchedulerConfiguration configuration;
+	private RecordingCheckRunner checkRunner;
+	private MonitorService monitorService;
+	private CheckScheduler scheduler;
+
+	@Before
+	public void setup() {
+		configuration = new CheckSchedulerConfiguration();
+		checkRunner = new RecordingCheckRunner();
+		HistoryStore historyStore = new HistoryStore(new HistoryConfiguration());
+		monitorService = new MonitorService(new Configuration(), checkRunner, checkRunner, historyStore,
+			new StateJournal(new StateJournalConfiguration()), new RollupEngine(new RollupConfiguration(), historyStore));
+		scheduler = new CheckScheduler(monitorService, checkRunner, configuration);
+	}
+
+	@After
+	public void tearDown() {
+		scheduler.close();
+	}
+
+	@Test
+	public void testDueWithinRefreshLeadWhenNotSpread() {
+		configuration.setSpread(false);
+		configuration.setRefreshLeadMs(1000);
+		ScheduledCheck check = new ScheduledCheck("check", 10000);
+		check.cachedForMs = 5000;
+		Assert.assertFalse(scheduler.isDue(check, NOW));
+		check.cachedForMs = 1000;
+		Assert.assertTrue(scheduler.isDue(check, NOW));
+		check.cachedForMs = -1;
+		Assert.assertTrue("Expired caches are due as well", scheduler.isDue(check, NOW));
+
+		ScheduledCheck shortCache = new ScheduledCheck("shortCache", 1500);
+		shortCache.cachedForMs = 800;
+		Assert.assertFalse("The lead is capped at half of cacheMs", scheduler.isDue(shortCache, NOW));
+		shortCache.cachedForMs = 750;
+		Assert.assertTrue(scheduler.isDue(shortCache, NOW));
+	}
+
+	@Test
+	public void testDueOncePerSlotWhenSpread() {
+		ScheduledCheck check = new ScheduledCheck("check", 10000);
+		long slotStart = CheckScheduler.slotStart(check, 10000, NOW);
+		check.lastStartEpochMs = slotStart - 1;
+		Assert.assertTrue(scheduler.isDue(check, NOW));
+		check.lastStartEpochMs = slotStart;
+		Assert.assertFalse("Already refreshed in this slot", scheduler.isDue(check, NOW));
+		Assert.assertFalse(scheduler.isDue(check, slotStart + 9999));
+		Assert.assertTrue("Due again once the next slot opens", scheduler.isDue(check, slotStart + 10000));
+	}
+
+	@Test
+	public void testPhaseOffsetsAreSpreadOverThePeriod() {
+		long periodMs = 60000;
+		int[] tenths = new int[10];
+		for (int i = 0; i < 1000; i++) {
+			long offset = CheckScheduler.phaseOffset("app:check" + i, periodMs);
+			Assert.assertTrue(offset >= 0 && offset < periodMs);
+			Assert.assertEquals("Offsets have to be stable", offset, CheckScheduler.phaseOffset("app:check" + i, periodMs));
+			tenths[(int) (offset * 10 / periodMs)]++;
+		}
+		for (int count : tenths) {
+			Assert.assertTrue("Similar names should not cluster, got " + count + " in a tenth", count > 60 && count < 140);
+		}
+	}
+
+	@Test
+	public void testSlotsSpreadChecksStartedTogether() {
+		long cacheMs = 60000;
+		List<Check> checks = new ArrayList<>();
+		long[] lastStarts = new long[600];
+		for (int i = 0; i < lastStarts.length; i++) {
+			checks.add(new TestCheck("app", "check" + i));
+			lastStarts[i] = NOW;
+		}
+		RunStartHistogram runStarts = new RunStartHistogram(120);
+		long now = NOW;
+		for (; now < NOW + 2 * cacheMs; now += configuration.getTickMs()) {
+			int started = 0;
+			for (int i = 0; i < checks.size(); i++) {
+				long slotStart = CheckScheduler.slotStart(checks.get(i), cacheMs, now);
+				Assert.assertTrue(slotStart <= now && now - slotStart < cacheMs);
+				if (lastStarts[i] < slotStart) {
+					lastStarts[i] = now;
+					started++;
+				}
+			}
+			runStarts.record(now, started);
+		}
+		Map<String, Object> stats = runStarts.getStats(now - configuration.getTickMs());
+		Assert.assertEquals("Every check is refreshed once per cache window", 1200L, stats.get("total"));
+		long max = (Long) stats.get("max");
+		Assert.assertTrue("600 checks over 60 seconds should not start in bursts, got " + max, max < 30);
+	}
+
+	@Test
+	public void testChecksThatCannotBeRefreshedAreNeverDue() {
+		configuration.setSpread(false);
+		ScheduledCheck shortCache = new ScheduledCheck("shortCache", configuration.getMinimumCacheMs() - 1);
+		shortCache.cachedForMs = -1;
+		Assert.assertFalse(scheduler.isDue(shortCache, NOW));
+
+		ScheduledCheck running = new ScheduledCheck("running", 10000);
+		running.cachedForMs = -1;
+		running.running = true;
+		Assert.assertFalse(scheduler.isDue(running, NOW));
+	}
+
+	@Test
+	public void testRunRefreshesDueChecks() {
+		configuration.setSpread(false);
+		ScheduledCheck due = new ScheduledCheck("due", 10000);
+		due.cachedForMs = 0;
+		ScheduledCheck cached = new ScheduledCheck("cached", 10000);
+		cached.cachedForMs = 9000;
+		Map<String, Check> apps = new LinkedHashMap<>();
+		apps.put(due.getApp().getId(), due.getApp());
+		apps.put(cached.getApp().getId(), cached.getApp());
+		monitorService.setChecks(apps);
+
+		scheduler.run();
+		Assert.assertEquals(1, checkRunner.runs.size());
+		Assert.assertEquals(Collections.singletonList(due), new ArrayList<>(checkRunner.runs.get(0)));
+		RunContext runContext = checkRunner.runContexts.get(0);
+		Assert.assertTrue("Refreshes have to bypass the cache", runContext.refreshCache());
+
+		cached.cachedForMs = 0;
+		scheduler.run();
+		Assert.assertEquals(2, checkRunner.runs.size());
+		Assert.assertEquals(2, checkRunner.runs.get(1).size());
+		Assert.assertNotSame("Every refresh gets its own context", runContext, checkRunner.runContexts.get(1));
+
+		due.cachedForMs = 5000;
+		cached.cachedForMs = 5000;
+		scheduler.run();
+		Assert.assertEquals("Nothing is submitted when no check is due", 2, checkRunner.runs.size());
+	}
+
+	@Test
+	public void testOnlyStartsWhenEnabled() {
+		configuration.setEnabled(false);
+		scheduler.start();
+		Assert.assertFalse(scheduler.running());
+
+		configuration.setEnabled(true);
+		scheduler.start();
+		Assert.assertTrue(scheduler.running());
+		scheduler.close();
+		Assert.assertFalse(scheduler.running());
+	}
+
+	private static class ScheduledCheck extends TestCheck {
+
+		private final long cacheMs;
+		private long cachedForMs = 0;
+		private long lastStartEpochMs = 0;
+		private boolean running = false;
+
+		private ScheduledCheck(String checkId, long cacheMs) {
+			super(checkId + "App", checkId);
+			this.cacheMs = cacheMs;
+		}
+
+		@Override
+		public long getCacheMs() {
+			return cacheMs;
+		}
+
+		@Override
+		public long getCachedForMs() {
+			return cachedForMs;
+		}
+
+		@Override
+		public boolean isRunning() {
+			return running;
+		}
+
+		@Override
+		public CheckRun getLastCheckRun() {
+			return CheckRun.builder(this).startTime(lastStartEpochMs).succeeded().build();
+		}
+	}
+
+	private static class RecordingCheckRunner extends ConcurrentCheckRunner {
+
+		private final List<Collection<Check>> runs = new ArrayList<>();
+		private final List<RunContext> runContexts = new ArrayList<>();
+
+		private RecordingCheckRunner() {
+			super(null, null);
+		}
+
+		@Override
+		public CompletionStage<List<CheckRun>> runChecksAsync(Collection<Check> checks, RunContext runContext) {
+			runs.add(checks);
+			runContexts.add(runContext);
+			return CompletableFuture.completedFuture(Collections.emptyList());
+		}
+	}
+}
@@ -0,0 +1,69 @@
+package org.towerhawk.monitor.history;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.towerhawk.monitor.check.run.Status;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+public class HistorySeriesTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testRangeReadAcrossSegmentsAndReopen() throws Exception {
+		Path directory = folder.newFolder("series").toPath();
+		HistorySeries series = new HistorySeries("app:check", directory, 4);
+		for (int i = 0; i < 10; i++) {
+			series.append(new HistoryRecord(1000 + i * 10, 995 + i * 10, 5000000, i % 2 == 0 ? Status.SUCCEEDED : Status.CRITICAL, false, false));
+		}
+		Assert.assertEquals("Every 4 records should start a new segment", 3, series.getSegmentCount());
+		List<HistoryRecord> records = new ArrayList<>();
+		series.read(1030, 1070, records::add);
+		Assert.assertEquals(4, records.size());
+		Assert.assertEquals(1030, records.get(0).getEndEpochMs());
+		Assert.assertEquals(Status.CRITICAL, records.get(0).getStatus());
+		Assert.assertEquals(1060, records.get(3).getEndEpochMs());
+
+		HistorySeries reopened = new HistorySeries("app:check", directory, 4);
+		List<HistoryRecord> all = new ArrayList<>();
+		reopened.read(Long.MIN_VALUE, Long.MAX_VALUE, all::add);
+		Assert.assertEquals("Records should survive reopening", 10, all.size());
+	}
+
+	@Test
+	public void testPagedReadCarriesOnAcrossEqualEndTimes() throws Exception {
+		HistorySeries series = new HistorySeries("app:check", folder.newFolder("paged").toPath(), 4);
+		for (int i = 0; i < 10; i++) {
+			// 1000 x4, 1010 x4, 1020 x2 so pages of 3 end in the middle of equal end times
+			series.append(new HistoryRecord(1000 + (i / 4) * 10, 990, i, Status.SUCCEEDED, false, false));
+		}
+		List<HistoryRecord> records = new ArrayList<>();
+		series.readPaged(Long.MIN_VALUE, Long.MAX_VALUE, 3, records::add);
+		Assert.assertEquals(10, records.size());
+		for (int i = 0; i < 10; i++) {
+			Assert.assertEquals("Every record should be passed once, in order", i, records.get(i).getDurationNanos());
+		}
+
+		List<HistoryRecord> first = new ArrayList<>();
+		series.readPaged(1010, Long.MAX_VALUE, 1, record -> first.add(record) && first.size() < 5);
+		Assert.assertEquals(5, first.size());
+		Assert.assertEquals(8, first.get(4).getDurationNanos());
+	}
+
+	@Test
+	public void testRetentionKeepsActiveSegment() throws Exception {
+		HistorySeries series = new HistorySeries("app:check", folder.newFolder("retention").toPath(), 2);
+		for (int i = 0; i < 6; i++) {
+			series.append(new HistoryRecord(1000 + i, 1000 + i, 0, Status.SUCCEEDED, false, false));
+		}
+		Assert.assertEquals("Segments that ended before 1004 should be deleted", 2, series.enforceRetention(1004, Long.MAX_VALUE));
+		Assert.assertEquals(0, series.enforceRetention(Long.MAX_VALUE, 0));
+		Assert.assertEquals("The active segment is never deleted", 1, series.getSegmentCount());
+	}
+}
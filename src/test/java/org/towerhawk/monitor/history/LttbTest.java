@@ -0,0 +1,40 @@
+package org.towerhawk.monitor.history;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.towerhawk.monitor.check.run.Status;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class LttbTest {
+
+	private List<HistoryRecord> series(int size, int spikeAt) {
+		List<HistoryRecord> records = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			long durationNanos = i == spikeAt ? 900000000 : 10000000 + (i % 7) * 100000;
+			records.add(new HistoryRecord(1000 + i * 1000, 990 + i * 1000, durationNanos, Status.SUCCEEDED, false, false));
+		}
+		return records;
+	}
+
+	@Test
+	public void testDownsampleKeepsEndsAndSpike() {
+		List<HistoryRecord> records = series(100000, 43210);
+		List<HistoryRecord> sampled = Lttb.downsample(records, 300);
+		Assert.assertEquals(300, sampled.size());
+		Assert.assertSame(records.get(0), sampled.get(0));
+		Assert.assertSame(records.get(records.size() - 1), sampled.get(sampled.size() - 1));
+		Assert.assertTrue("The spike should survive downsampling", sampled.contains(records.get(43210)));
+		for (int i = 1; i < sampled.size(); i++) {
+			Assert.assertTrue(sampled.get(i).getEndEpochMs() > sampled.get(i - 1).getEndEpochMs());
+		}
+	}
+
+	@Test
+	public void testSmallSeriesIsReturnedAsIs() {
+		List<HistoryRecord> records = series(10, -1);
+		Assert.assertSame(records, Lttb.downsample(records, 10));
+		Assert.assertSame(records, Lttb.downsample(records, 500));
+	}
+}
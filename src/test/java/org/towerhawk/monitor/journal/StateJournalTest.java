@@ -0,0 +1,83 @@
+package org.towerhawk.monitor.journal;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.towerhawk.monitor.check.run.Status;
+import org.towerhawk.spring.config.StateJournalConfiguration;
+
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+public class StateJournalTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private StateJournal open(Path directory) {
+		StateJournalConfiguration configuration = new StateJournalConfiguration();
+		configuration.setEnabled(true);
+		configuration.setDirectory(directory.toString());
+		configuration.setSnapshotIntervalMs(Long.MAX_VALUE);
+		StateJournal journal = new StateJournal(configuration);
+		journal.start();
+		return journal;
+	}
+
+	private CheckState state(String fullName, long runEndEpochMs, Status status) {
+		long failingSince = status == Status.SUCCEEDED ? Long.MIN_VALUE : 1000;
+		return new CheckState(fullName, failingSince, false, runEndEpochMs - 10, runEndEpochMs, 10000000, status, false, "run " + runEndEpochMs);
+	}
+
+	@Test
+	public void testReplayIgnoresTornEntry() throws Exception {
+		Path directory = folder.newFolder("state").toPath();
+		StateJournal journal = open(directory);
+		long now = System.currentTimeMillis();
+		journal.record(state("app:a", now, Status.CRITICAL));
+		journal.record(state("app:b", now, Status.SUCCEEDED));
+		journal.record(state("app:a", now + 1, Status.WARNING));
+		journal.close();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "journal-*")) {
+			for (Path path : stream) {
+				Files.write(path, new byte[]{0, 0, 0, 40, 1, 2, 3}, StandardOpenOption.APPEND);
+			}
+		}
+
+		journal = open(directory);
+		CheckState a = journal.getState("app:a");
+		Assert.assertEquals(now + 1, a.getRunEndEpochMs());
+		Assert.assertEquals(Status.WARNING, a.getStatus());
+		Assert.assertEquals(1000, a.getFailingSinceEpochMs());
+		Assert.assertEquals("run " + (now + 1), a.getMessage());
+		Assert.assertNull(journal.getState("app:b").getFailingSince());
+		journal.record(state("app:b", now + 2, Status.CRITICAL));
+		journal.close();
+
+		journal = open(directory);
+		Assert.assertEquals("Entries after a torn entry should survive another restart", Status.CRITICAL, journal.getState("app:b").getStatus());
+		journal.close();
+	}
+
+	@Test
+	public void testSnapshotReplacesJournal() throws Exception {
+		Path directory = folder.newFolder("state").toPath();
+		StateJournal journal = open(directory);
+		long now = System.currentTimeMillis();
+		journal.record(state("app:a", now, Status.CRITICAL));
+		journal.record(state("app:b", now, Status.SUCCEEDED));
+		journal.snapshot();
+		journal.record(state("app:a", now + 1, Status.SUCCEEDED).withRestarting(true));
+		journal.close();
+
+		journal = open(directory);
+		Assert.assertEquals("Replay should only need the entry after the snapshot", 1, journal.getStats().get("replayedEntries"));
+		Assert.assertEquals(2, journal.getStats().get("replayedStates"));
+		Assert.assertTrue(journal.getState("app:a").isRestarting());
+		Assert.assertEquals(Status.SUCCEEDED, journal.getState("app:b").getStatus());
+		journal.close();
+	}
+}
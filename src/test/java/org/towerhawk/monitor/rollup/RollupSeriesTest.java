@@ -0,0 +1,87 @@
+package org.towerhawk.monitor.rollup;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.towerhawk.monitor.check.run.Status;
+
+import java.util.List;
+
+public class RollupSeriesTest {
+
+	private static final long MINUTE = 60000;
+	private static final long FIVE_MINUTES = 5 * MINUTE;
+	private static final long HOUR = 60 * MINUTE;
+	// aligned to 5 minutes
+	private static final long BASE = 1000 * MINUTE;
+
+	private RollupSeries series() {
+		RollupRing[] rings = new RollupRing[]{
+			new RollupRing(MINUTE, 5),
+			new RollupRing(FIVE_MINUTES, 12),
+			new RollupRing(HOUR, 24)
+		};
+		RollupSeries series = new RollupSeries("app:check", rings, HOUR);
+		series.add(BASE + 30000, Status.CRITICAL, true, 2000000);
+		series.add(BASE + 90000, Status.SUCCEEDED, false, 4000000);
+		return series;
+	}
+
+	@Test
+	public void testFailingTimeIsSplitAcrossBuckets() {
+		RollupResult result = series().read(BASE, BASE + 2 * MINUTE, 10, BASE + 2 * MINUTE);
+		Assert.assertEquals(MINUTE, result.getResolutionMs());
+		List<RollupBucket> buckets = result.getBuckets();
+		Assert.assertEquals(2, buckets.size());
+
+		RollupBucket first = buckets.get(0);
+		Assert.assertEquals(BASE, first.getStartEpochMs());
+		Assert.assertEquals(1, first.getRuns());
+		Assert.assertEquals(Integer.valueOf(1), first.getStatuses().get(Status.CRITICAL));
+		Assert.assertEquals(1, first.getTimedOut());
+		Assert.assertEquals("Failing from the critical run to the end of its bucket", 30000, first.getFailingMs());
+
+		RollupBucket second = buckets.get(1);
+		Assert.assertEquals(Integer.valueOf(1), second.getStatuses().get(Status.SUCCEEDED));
+		Assert.assertEquals("Failing until the succeeded run", 30000, second.getFailingMs());
+		Assert.assertEquals(4, second.getMaxDurationMs());
+	}
+
+	@Test
+	public void testResolutionIsPickedByCoverageAndMaxBuckets() {
+		long now = BASE + 2 * MINUTE;
+		RollupResult result = series().read(BASE, now, 1, now);
+		Assert.assertEquals("1 minute buckets would need 2 buckets", FIVE_MINUTES, result.getResolutionMs());
+		RollupBucket bucket = result.getBuckets().get(0);
+		Assert.assertEquals(2, bucket.getRuns());
+		Assert.assertEquals(2, bucket.getMinDurationMs());
+		Assert.assertEquals(4, bucket.getMaxDurationMs());
+		Assert.assertEquals(3.0, bucket.getMeanDurationMs(), 0.001);
+		Assert.assertEquals(60000, bucket.getFailingMs());
+
+		result = series().read(BASE - HOUR, now, 1000, now);
+		Assert.assertEquals("Only the hourly buckets go back an hour", HOUR, result.getResolutionMs());
+	}
+
+	@Test
+	public void testRingGrowsOnlyAsFarAsItIsUsed() {
+		RollupRing ring = new RollupRing(MINUTE, 100);
+		ring.addRun(BASE, Status.SUCCEEDED, false, 1000000);
+		Assert.assertEquals(16, ring.getCapacity());
+		for (int i = 1; i < 40; i++) {
+			ring.addRun(BASE + i * MINUTE, Status.SUCCEEDED, false, 1000000);
+		}
+		Assert.assertEquals(64, ring.getCapacity());
+		List<RollupBucket> buckets = ring.read(BASE, BASE + 40 * MINUTE);
+		Assert.assertEquals("Growing should keep every bucket", 40, buckets.size());
+		Assert.assertEquals(BASE, buckets.get(0).getStartEpochMs());
+
+		ring.addRun(BASE + 500 * MINUTE, Status.CRITICAL, false, 1000000);
+		Assert.assertEquals("Buckets the ring no longer covers are reused", 64, ring.getCapacity());
+		Assert.assertEquals(1, ring.read(BASE, BASE + 501 * MINUTE).size());
+		ring.addRun(BASE + 450 * MINUTE, Status.CRITICAL, false, 1000000);
+		Assert.assertEquals(2, ring.read(BASE, BASE + 501 * MINUTE).size());
+		ring.addRun(BASE + 436 * MINUTE, Status.CRITICAL, false, 1000000);
+		Assert.assertEquals(100, ring.getCapacity());
+		Assert.assertEquals(3, ring.read(BASE, BASE + 501 * MINUTE).size());
+	}
+}